@@ -379,12 +379,15 @@ public class BaseProject extends BuildExecutor {
      * Standard build commands
      */
 
-    private final ArtifactRetriever retriever_ = ArtifactRetriever.cachingInstance();
+    private final ArtifactRetriever retriever_ = ArtifactRetriever.cachingInstance(properties());
 
     /**
      * Returns the artifact retriever that is used.
+     * <p>
+     * The retriever is configured by the project's properties.
      *
      * @return the artifact retriever
+     * @see ArtifactRetriever#cachingInstance(rife.ioc.HierarchicalProperties)
      * @since 1.5.21
      */
     public ArtifactRetriever artifactRetriever() {
@@ -1666,6 +1669,24 @@ public class BaseProject extends BuildExecutor {
         return dependencies;
     }
 
+    /**
+     * Returns the lock of the project's resolved dependencies.
+     * <p>
+     * The lock is stored in the {@code bld.lock} file of
+     * {@link #libBldDirectory()}, which is meant to be committed with the
+     * project, and is only used when the "{@code bld.dependencyLock}"
+     * property is {@code true}.
+     *
+     * @return the dependency lock; or {@code null} when it isn't enabled
+     * @since 2.4.0
+     */
+    public DependencyLock dependencyLock() {
+        if (!DependencyLock.isEnabled(properties())) {
+            return null;
+        }
+        return new DependencyLock(new File(libBldDirectory(), DependencyLock.BLD_LOCK));
+    }
+
     private ExtensionClasspath extensionClasspath_ = null;
 
     /**
@@ -288,35 +288,7 @@ public class BldCache {
      * @see #writeCache()
      */
     public void cacheDependenciesHash(List<Repository> repositories, DependencyScopes dependencies) {
-        var finger_print = new StringBuilder();
-        finger_print.append(String.join("\n", resolution_.versionOverrides().entrySet().stream().map(e -> e.getKey() + ":" + e.getValue()).toList()));
-        for (var repository : repositories) {
-            finger_print.append(repository.toString());
-            finger_print.append('\n');
-        }
-        for (var entry : dependencies.entrySet()) {
-            finger_print.append(entry.getKey());
-            finger_print.append('\n');
-            if (entry.getValue() != null) {
-                for (var bom : entry.getValue().boms()) {
-                    finger_print.append(bom.toString());
-                    finger_print.append('\n');
-                }
-                for (var dependency : entry.getValue()) {
-                    finger_print.append(dependency.toString());
-                    finger_print.append('\n');
-                }
-            }
-        }
-
-        try {
-            var digest = MessageDigest.getInstance("SHA-1");
-            digest.update(finger_print.toString().getBytes(StandardCharsets.UTF_8));
-            dependenciesHash_ = StringUtils.encodeHexLower(digest.digest());
-        } catch (NoSuchAlgorithmException e) {
-            // should not happen
-            throw new RuntimeException(e);
-        }
+        dependenciesHash_ = dependencies.fingerprint(resolution_, repositories);
     }
 
     /**
@@ -4,25 +4,31 @@
  */
 package rife.bld.dependencies;
 
-import rife.bld.BldVersion;
+import rife.ioc.HierarchicalProperties;
 import rife.tools.FileUtils;
-import rife.tools.HttpUtils;
-import rife.tools.Product;
 import rife.tools.exceptions.FileUtilsErrorException;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
-import static rife.tools.HttpUtils.HEADER_AUTHORIZATION;
-import static rife.tools.HttpUtils.basicAuthorizationHeader;
 import static rife.tools.StringUtils.encodeHexLower;
 
 /**
@@ -31,14 +37,81 @@ import static rife.tools.StringUtils.encodeHexLower;
  * To instantiate, use either {@link #instance()} for direct retrieval of
  * each request, or {@link #cachingInstance()} where previous retrievals
  * of remote string content will be cached for faster future retrieval.
+ * <p>
+ * A caching instance can also be configured by the {@code bld} properties
+ * with {@link #cachingInstance(HierarchicalProperties)}, like the content
+ * that it keeps in memory, a cache directory that is shared across builds,
+ * and the requests that are in progress for each repository:
+ * <pre>
+ * bld.persistentCache=true
+ * bld.memoryCacheSize=16777216
+ * bld.repositoryConcurrency=16
+ * bld.repo.myrepo.requestsPerSecond=10
+ * </pre>
  *
  * @author Geert Bevin (gbevin[remove] at uwyn dot com)
  * @since 1.5.18
  */
 public abstract class ArtifactRetriever {
+    /**
+     * The property key that enables the persistent cache of
+     * {@link #cachingInstance(HierarchicalProperties)}.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_PERSISTENT_CACHE = "bld.persistentCache";
+
+    /**
+     * The property key that determines the directory of the persistent
+     * cache, it defaults to {@code ~/.bld/cache}.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_PERSISTENT_CACHE_DIRECTORY = "bld.persistentCacheDirectory";
+
+    /**
+     * The property key that determines for how many seconds persistently
+     * cached Maven metadata and non-unique snapshots are reused.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_METADATA_CACHE_TTL = "bld.metadataCacheTtl";
+    private static final long DEFAULT_METADATA_CACHE_TTL = 600;
+
+    /**
+     * The property key that determines the maximum number of bytes of
+     * string content that caching instances keep in memory, it defaults to
+     * 64 MiB. The dependencies that they resolved and the versions that
+     * BOMs manage are each kept within the same number of bytes.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_MEMORY_CACHE_SIZE = "bld.memoryCacheSize";
+    private static final long DEFAULT_MEMORY_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The property key that enables the compression of the string content
+     * that caching instances keep in memory.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_MEMORY_CACHE_COMPRESSED = "bld.memoryCacheCompressed";
+
+    /**
+     * The property key that determines the maximum number of requests that
+     * are in progress for each repository, it defaults to 64.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_REPOSITORY_CONCURRENCY = "bld.repositoryConcurrency";
+    private static final int DEFAULT_REPOSITORY_CONCURRENCY = 64;
+
+    private static final String ROUTES_FILENAME = "routes.properties";
+    private static final String CHECKSUMS_FILENAME = "checksums.properties";
+    private static final String STORE_DIRECTORY = "store";
+
+    // throttled requests are only retried when the repository doesn't ask for a longer delay
+    private static final int MAX_THROTTLED_RETRIES = 3;
+    private static final long MAX_THROTTLED_DELAY = 60_000;
+
     private static final int TRANSFER_CHUNK_SIZE = 128 * 1024;
+    private static final String PART_SUFFIX = ".part";
 
-    private final static ArtifactRetriever UNCACHED = new ArtifactRetriever() {
+    private final static ArtifactRetriever UNCACHED = new ArtifactRetriever(new RepositoryPermits(DEFAULT_REPOSITORY_CONCURRENCY)) {
         String getCached(RepositoryArtifact artifact) {
             return null;
         }
@@ -46,9 +119,60 @@ public abstract class ArtifactRetriever {
         void cache(RepositoryArtifact artifact, String content) {
         }
 
+        HttpTransport.Content getRevalidatable(RepositoryArtifact artifact) {
+            return null;
+        }
+
+        void cache(RepositoryArtifact artifact, HttpTransport.Content content) {
+        }
+
         boolean isCaching() {
             return false;
         }
+
+        boolean isMissing(RepositoryArtifact artifact) {
+            return false;
+        }
+
+        void cacheMissing(RepositoryArtifact artifact) {
+        }
+
+        List<RepositoryArtifact> route(String groupId, List<RepositoryArtifact> artifacts) {
+            return artifacts;
+        }
+
+        void routed(String groupId, Repository repository, List<Repository> missed, List<Repository> declared) {
+        }
+
+        String verifiedChecksum(RepositoryArtifact artifact, File file) {
+            return null;
+        }
+
+        void verified(RepositoryArtifact artifact, File file, String checksum) {
+        }
+
+        void saveLearned() {
+        }
+
+        String linkStored(RepositoryArtifact artifact, File file) {
+            return null;
+        }
+
+        void store(RepositoryArtifact artifact, File file, String hash) {
+        }
+
+        MemoryArtifactCache memoryCache() {
+            return null;
+        }
+
+        DependencyClosureCache closureCache() {
+            return null;
+        }
+
+        // a new index for every use, only caching retrievers share one
+        BomIndex bomIndex() {
+            return new BomIndex(DEFAULT_MEMORY_CACHE_SIZE);
+        }
     };
 
     /**
@@ -69,32 +193,425 @@ public abstract class ArtifactRetriever {
      * @since 1.5.18
      */
     public static ArtifactRetriever cachingInstance() {
-        return new ArtifactRetriever() {
-            private final Map<RepositoryArtifact, String> artifactCache = new ConcurrentHashMap<>();
+        return new MemoryCachingRetriever(new RepositoryPermits(DEFAULT_REPOSITORY_CONCURRENCY), new MemoryArtifactCache(DEFAULT_MEMORY_CACHE_SIZE, false));
+    }
 
-            String getCached(RepositoryArtifact artifact) {
-                return artifactCache.get(artifact);
+    /**
+     * Creates a caching artifact retriever that is configured by the
+     * provided properties.
+     * <p>
+     * When the "{@code bld.persistentCache}" property is {@code true}, the
+     * retrieved content is also persisted on disk so that future builds can
+     * reuse it. The "{@code bld.memoryCacheSize}" and
+     * "{@code bld.memoryCacheCompressed}" properties configure the content
+     * that is kept in memory, and "{@code bld.repositoryConcurrency}" the
+     * number of requests that are in progress for each repository. The
+     * "{@code bld.repo.<name>.maxConcurrentRequests}" and
+     * "{@code bld.repo.<name>.requestsPerSecond}" properties limit the
+     * requests to individual named repositories.
+     *
+     * @param properties the hierarchical properties to configure the cache with
+     * @return a caching instance
+     * @since 2.4.0
+     */
+    public static ArtifactRetriever cachingInstance(HierarchicalProperties properties) {
+        if (properties == null) {
+            return cachingInstance();
+        }
+
+        var permits = new RepositoryPermits(parseRepositoryConcurrency(properties.getValueString(PROPERTY_REPOSITORY_CONCURRENCY)),
+            VersionResolution.isAdaptiveParallelism(properties), RepositoryPermits.parseLimits(properties));
+        var memory_cache = new MemoryArtifactCache(parseMemoryCacheSize(properties.getValueString(PROPERTY_MEMORY_CACHE_SIZE)),
+            Boolean.parseBoolean(properties.getValueString(PROPERTY_MEMORY_CACHE_COMPRESSED)));
+        if (!Boolean.parseBoolean(properties.getValueString(PROPERTY_PERSISTENT_CACHE))) {
+            return new MemoryCachingRetriever(permits, memory_cache);
+        }
+
+        var directory = properties.getValueString(PROPERTY_PERSISTENT_CACHE_DIRECTORY);
+        if (directory == null || directory.isBlank()) {
+            var user_home = properties.getValueString("user.home");
+            if (user_home == null) {
+                user_home = System.getProperty("user.home");
+            }
+            directory = Path.of(user_home, ".bld", "cache").toString();
+        }
+
+        var ttl = DEFAULT_METADATA_CACHE_TTL;
+        var ttl_property = properties.getValueString(PROPERTY_METADATA_CACHE_TTL);
+        if (ttl_property != null && !ttl_property.isBlank()) {
+            try {
+                ttl = Math.max(0, Long.parseLong(ttl_property.trim()));
+            } catch (NumberFormatException e) {
+                Logger.getLogger("rife.bld").warning("Unable to parse the " + PROPERTY_METADATA_CACHE_TTL + " property as an integer: '" + ttl_property + "', using " + DEFAULT_METADATA_CACHE_TTL + " instead");
             }
+        }
+
+        return persistentInstance(new File(directory), ttl, permits, memory_cache);
+    }
+
+    private static int parseRepositoryConcurrency(String concurrency) {
+        if (concurrency == null || concurrency.isBlank()) {
+            return DEFAULT_REPOSITORY_CONCURRENCY;
+        }
+
+        try {
+            return Math.max(1, Integer.parseInt(concurrency.trim()));
+        } catch (NumberFormatException e) {
+            Logger.getLogger("rife.bld").warning("Unable to parse the " + PROPERTY_REPOSITORY_CONCURRENCY + " property as an integer: '" + concurrency + "', using " + DEFAULT_REPOSITORY_CONCURRENCY + " instead");
+            return DEFAULT_REPOSITORY_CONCURRENCY;
+        }
+    }
+
+    private static long parseMemoryCacheSize(String size) {
+        if (size == null || size.isBlank()) {
+            return DEFAULT_MEMORY_CACHE_SIZE;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(size.trim()));
+        } catch (NumberFormatException e) {
+            Logger.getLogger("rife.bld").warning("Unable to parse the " + PROPERTY_MEMORY_CACHE_SIZE + " property as an integer: '" + size + "', using " + DEFAULT_MEMORY_CACHE_SIZE + " instead");
+            return DEFAULT_MEMORY_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * Creates a caching artifact retriever that also persists the
+     * retrieved remote string content in a directory, so that it can be
+     * reused across builds.
+     * <p>
+     * Released POMs and checksums are kept permanently since they never
+     * change, Maven metadata and non-unique snapshots are reused for the
+     * provided number of seconds.
+     *
+     * @param directory          the directory to persist the cached content in
+     * @param metadataTtlSeconds the number of seconds that persisted Maven
+     *                           metadata and non-unique snapshots are reused
+     * @return a persistent caching instance
+     * @since 2.4.0
+     */
+    public static ArtifactRetriever persistentInstance(File directory, long metadataTtlSeconds) {
+        return persistentInstance(directory, metadataTtlSeconds, new RepositoryPermits(DEFAULT_REPOSITORY_CONCURRENCY), new MemoryArtifactCache(DEFAULT_MEMORY_CACHE_SIZE, false));
+    }
+
+    private static ArtifactRetriever persistentInstance(File directory, long metadataTtlSeconds, RepositoryPermits permits, MemoryArtifactCache memoryCache) {
+        return new PersistentCachingRetriever(permits, memoryCache, new PersistentArtifactCache(directory, metadataTtlSeconds),
+            new RepositoryRoutes(new File(directory, ROUTES_FILENAME)),
+            new ChecksumIndex(new File(directory, CHECKSUMS_FILENAME)),
+            new ContentStore(new File(directory, STORE_DIRECTORY)));
+    }
+
+    private static class MemoryCachingRetriever extends ArtifactRetriever {
+        private final MemoryArtifactCache artifactCache_;
+        // falling through the repositories only probes each of them once for an
+        // artifact, only definite not-found responses are remembered
+        private final Set<RepositoryArtifact> missingArtifacts_ = ConcurrentHashMap.newKeySet();
+        private final RepositoryRoutes routes_;
+        private final ChecksumIndex checksums_;
+        private final DependencyClosureCache closureCache_;
+        private final BomIndex bomIndex_;
+
+        MemoryCachingRetriever(RepositoryPermits permits, MemoryArtifactCache artifactCache) {
+            this(permits, artifactCache, new RepositoryRoutes(null), new ChecksumIndex(null));
+        }
+
+        MemoryCachingRetriever(RepositoryPermits permits, MemoryArtifactCache artifactCache, RepositoryRoutes routes, ChecksumIndex checksums) {
+            super(permits);
+            artifactCache_ = artifactCache;
+            // the resolved dependencies and the indexed BOMs are bounded
+            // by the same number of bytes as the content
+            closureCache_ = new DependencyClosureCache(artifactCache.maximumSize());
+            bomIndex_ = new BomIndex(artifactCache.maximumSize());
+            routes_ = routes;
+            checksums_ = checksums;
+        }
+
+        String getCached(RepositoryArtifact artifact) {
+            return artifactCache_.get(artifact);
+        }
+
+        void cache(RepositoryArtifact artifact, String content) {
+            artifactCache_.put(artifact, content);
+        }
+
+        HttpTransport.Content getRevalidatable(RepositoryArtifact artifact) {
+            return null;
+        }
+
+        void cache(RepositoryArtifact artifact, HttpTransport.Content content) {
+            cache(artifact, content.body());
+        }
+
+        boolean isCaching() {
+            return true;
+        }
+
+        boolean isMissing(RepositoryArtifact artifact) {
+            return missingArtifacts_.contains(artifact);
+        }
+
+        void cacheMissing(RepositoryArtifact artifact) {
+            missingArtifacts_.add(artifact);
+        }
+
+        List<RepositoryArtifact> route(String groupId, List<RepositoryArtifact> artifacts) {
+            return routes_.order(groupId, artifacts);
+        }
+
+        void routed(String groupId, Repository repository, List<Repository> missed, List<Repository> declared) {
+            routes_.served(groupId, repository, missed, declared);
+        }
+
+        String verifiedChecksum(RepositoryArtifact artifact, File file) {
+            return checksums_.verifiedChecksum(artifact, file);
+        }
+
+        void verified(RepositoryArtifact artifact, File file, String checksum) {
+            checksums_.verified(artifact, file, checksum);
+        }
+
+        void saveLearned() {
+            checksums_.save();
+            routes_.save();
+        }
+
+        String linkStored(RepositoryArtifact artifact, File file) {
+            return null;
+        }
+
+        void store(RepositoryArtifact artifact, File file, String hash) {
+        }
+
+        MemoryArtifactCache memoryCache() {
+            return artifactCache_;
+        }
+
+        DependencyClosureCache closureCache() {
+            return closureCache_;
+        }
+
+        BomIndex bomIndex() {
+            return bomIndex_;
+        }
+    }
 
-            void cache(RepositoryArtifact artifact, String content) {
-                artifactCache.put(artifact, content);
+    private static class PersistentCachingRetriever extends MemoryCachingRetriever {
+        private final PersistentArtifactCache persistentCache_;
+        private final ContentStore store_;
+
+        PersistentCachingRetriever(RepositoryPermits permits, MemoryArtifactCache memoryCache, PersistentArtifactCache persistentCache, RepositoryRoutes routes, ChecksumIndex checksums, ContentStore store) {
+            super(permits, memoryCache, routes, checksums);
+            persistentCache_ = persistentCache;
+            store_ = store;
+        }
+
+        String getCached(RepositoryArtifact artifact) {
+            var cached = super.getCached(artifact);
+            if (cached == null) {
+                cached = persistentCache_.get(artifact);
+                if (cached != null) {
+                    super.cache(artifact, cached);
+                }
             }
+            return cached;
+        }
 
-            boolean isCaching() {
+        HttpTransport.Content getRevalidatable(RepositoryArtifact artifact) {
+            return persistentCache_.getRevalidatable(artifact);
+        }
+
+        void cache(RepositoryArtifact artifact, HttpTransport.Content content) {
+            super.cache(artifact, content);
+            persistentCache_.put(artifact, content);
+        }
+
+        boolean isMissing(RepositoryArtifact artifact) {
+            if (super.isMissing(artifact)) {
+                return true;
+            }
+            if (persistentCache_.isMissing(artifact)) {
+                super.cacheMissing(artifact);
                 return true;
             }
-        };
+            return false;
+        }
+
+        void cacheMissing(RepositoryArtifact artifact) {
+            super.cacheMissing(artifact);
+            persistentCache_.putMissing(artifact);
+        }
+
+        String linkStored(RepositoryArtifact artifact, File file) {
+            return store_.link(artifact, file);
+        }
+
+        void store(RepositoryArtifact artifact, File file, String hash) {
+            store_.add(artifact, file, hash);
+        }
     }
 
-    private ArtifactRetriever() {
+    private record TransferTarget(RepositoryArtifact artifact, File file) {
+    }
+
+    private final InFlightRequests<RepositoryArtifact, String> retrievals_ = new InFlightRequests<>();
+    private final InFlightRequests<TransferTarget, String> transfers_ = new InFlightRequests<>();
+    private final RepositoryPermits permits_;
+
+    private ArtifactRetriever(RepositoryPermits permits) {
+        permits_ = permits;
     }
 
     abstract String getCached(RepositoryArtifact artifact);
 
     abstract void cache(RepositoryArtifact artifact, String content);
 
+    abstract HttpTransport.Content getRevalidatable(RepositoryArtifact artifact);
+
+    abstract void cache(RepositoryArtifact artifact, HttpTransport.Content content);
+
     abstract boolean isCaching();
 
+    abstract boolean isMissing(RepositoryArtifact artifact);
+
+    abstract void cacheMissing(RepositoryArtifact artifact);
+
+    abstract List<RepositoryArtifact> route(String groupId, List<RepositoryArtifact> artifacts);
+
+    abstract void routed(String groupId, Repository repository, List<Repository> missed, List<Repository> declared);
+
+    abstract String verifiedChecksum(RepositoryArtifact artifact, File file);
+
+    abstract void verified(RepositoryArtifact artifact, File file, String checksum);
+
+    // the verified artifacts and the learned routes are saved once per
+    // resolution or transfer batch
+    abstract void saveLearned();
+
+    abstract String linkStored(RepositoryArtifact artifact, File file);
+
+    abstract void store(RepositoryArtifact artifact, File file, String hash);
+
+    abstract MemoryArtifactCache memoryCache();
+
+    // the transitive dependencies of roots are only reused by caching
+    // retrievers, for as long as the retriever is used
+    abstract DependencyClosureCache closureCache();
+
+    // caching retrievers index the BOMs once for as long as the retriever
+    // is used, otherwise each use of the index retrieves them again
+    abstract BomIndex bomIndex();
+
+    /**
+     * Returns the number of remote string retrievals that waited for an
+     * identical retrieval that was already in progress, instead of
+     * performing the same request again.
+     *
+     * @return the number of shared retrievals
+     * @since 2.4.0
+     */
+    public long sharedRetrievals() {
+        return retrievals_.shared();
+    }
+
+    /**
+     * Returns the number of artifact transfers that waited for an
+     * identical transfer into the same file that was already in progress,
+     * instead of performing the same transfer again.
+     *
+     * @return the number of shared transfers
+     * @since 2.4.0
+     */
+    public long sharedTransfers() {
+        return transfers_.shared();
+    }
+
+    /**
+     * Returns the number of times that string content was found in the
+     * memory cache of this retriever.
+     *
+     * @return the number of memory cache hits; or {@code 0} when this
+     * retriever doesn't cache
+     * @since 2.4.0
+     */
+    public long memoryCacheHits() {
+        var cache = memoryCache();
+        return cache == null ? 0 : cache.hits();
+    }
+
+    /**
+     * Returns the number of times that string content wasn't found in the
+     * memory cache of this retriever.
+     *
+     * @return the number of memory cache misses; or {@code 0} when this
+     * retriever doesn't cache
+     * @since 2.4.0
+     */
+    public long memoryCacheMisses() {
+        var cache = memoryCache();
+        return cache == null ? 0 : cache.misses();
+    }
+
+    /**
+     * Returns the number of entries that were evicted from the memory
+     * cache of this retriever to stay within its maximum size.
+     *
+     * @return the number of memory cache evictions; or {@code 0} when this
+     * retriever doesn't cache
+     * @since 2.4.0
+     */
+    public long memoryCacheEvictions() {
+        var cache = memoryCache();
+        return cache == null ? 0 : cache.evictions();
+    }
+
+    /**
+     * Returns the approximate number of bytes that the memory cache of this
+     * retriever currently holds.
+     *
+     * @return the size of the memory cache in bytes; or {@code 0} when this
+     * retriever doesn't cache
+     * @since 2.4.0
+     */
+    public long memoryCacheSize() {
+        var cache = memoryCache();
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * Returns the number of requests that can currently be in progress for
+     * each repository that this retriever used, these are tuned during the
+     * build when the parallelism is adaptive.
+     *
+     * @return the request limits by repository location
+     * @since 2.4.0
+     */
+    public Map<String, Integer> repositoryConcurrency() {
+        return permits_.limits();
+    }
+
+    /**
+     * Returns the average number of milliseconds that the requests to each
+     * repository that this retriever used were in progress.
+     *
+     * @return the average request latencies by repository location
+     * @since 2.4.0
+     */
+    public Map<String, Long> repositoryLatency() {
+        return permits_.latencies();
+    }
+
+    /**
+     * Returns whether the number of requests to each repository is tuned
+     * during the build.
+     *
+     * @return {@code true} when the concurrency is adaptive; or
+     * {@code false} otherwise
+     * @since 2.4.0
+     */
+    public boolean isAdaptiveConcurrency() {
+        return permits_.isAdaptive();
+    }
+
     /**
      * Reads the contents of an artifact as a string.
      *
@@ -112,29 +629,85 @@ public abstract class ArtifactRetriever {
             if (cached != null) {
                 return cached;
             }
+            // a thread that holds a permit of the repository, like while it
+            // downloads the artifact that it retrieves the checksum of, never
+            // waits for a retrieval of another thread, since that one could be
+            // waiting for the permit that this thread is holding
+            if (!isCaching() || permits_.isHeld(artifact.repository())) {
+                return retrieveString(artifact);
+            }
 
+            // concurrent retrievals of the same artifact share a single request,
+            // the ones that arrive after it finished find it in the cache
             try {
-                var connection = openUrlConnection(artifact);
-                if (artifact.repository().username() != null && artifact.repository().password() != null) {
-                    connection.setRequestProperty(
-                        HEADER_AUTHORIZATION,
-                        basicAuthorizationHeader(artifact.repository().username(), artifact.repository().password()));
-                }
-                try (var input_stream = connection.getInputStream()) {
-                    var result = FileUtils.readString(input_stream);
-                    cache(artifact, result);
-                    return result;
-                }
-            } catch (IOException e) {
+                return retrievals_.perform(artifact, () -> {
+                    var content = getCached(artifact);
+                    if (content != null) {
+                        return content;
+                    }
+                    return retrieveString(artifact);
+                });
+            } catch (FileUtilsErrorException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
                 throw new FileUtilsErrorException("Error while reading URL '" + artifact.location() + ".", e);
             }
         }
     }
 
+    private String retrieveString(RepositoryArtifact artifact)
+    throws FileUtilsErrorException {
+        if (isMissing(artifact)) {
+            throw new FileUtilsErrorException("Error while reading URL '" + artifact.location() + ".", new FileNotFoundException(artifact.location()));
+        }
+
+        try {
+            // expired content with validators is retrieved conditionally
+            // and reused when the repository reports it as not modified
+            var previous = getRevalidatable(artifact);
+            var content = send(artifact, permits_.acquire(artifact.repository()), permit -> {
+                try {
+                    return HttpTransport.readString(artifact, previous);
+                } catch (IOException e) {
+                    permit.failed(e);
+                    throw e;
+                } finally {
+                    permit.close();
+                }
+            });
+            if (content.isNotModified()) {
+                content = new HttpTransport.Content(previous.body(), content.etag(), content.lastModified());
+            }
+            cache(artifact, content);
+            return content.body();
+        } catch (IOException e) {
+            if (e instanceof FileNotFoundException) {
+                cacheMissing(artifact);
+            }
+            throw new FileUtilsErrorException("Error while reading URL '" + artifact.location() + ".", e);
+        }
+    }
+
     /**
      * Transfers artifact into the provided directory.
      * <p>
      * The destination directory must exist and be writable.
+     * <p>
+     * Remote artifacts are verified against the strongest checksum that the
+     * repository provides, SHA-256, SHA-1 or MD5. The digest is computed
+     * while the artifact is transferred into a partial file, which only
+     * replaces the destination once it was verified. When the transfer of
+     * a released artifact is interrupted, the next transfer resumes the
+     * partial file with a range request.
+     * <p>
+     * Caching instances remember the released artifacts that they verified,
+     * as long as their file isn't modified it's trusted without any request
+     * to the repository.
+     * <p>
+     * Large artifacts are transferred in segments that are retrieved in
+     * parallel, according to the defaults of {@link VersionResolution}.
      *
      * @param artifact  the artifact to transfer
      * @param directory the directory to transfer the artifact into
@@ -145,13 +718,49 @@ public abstract class ArtifactRetriever {
      * @since 1.5.18
      */
     public boolean transferIntoDirectory(RepositoryArtifact artifact, File directory)
+    throws IOException, FileUtilsErrorException {
+        try {
+            return transferIntoDirectory(artifact, directory, VersionResolution.dummy());
+        } finally {
+            saveLearned();
+        }
+    }
+
+    boolean transferIntoDirectory(RepositoryArtifact artifact, File directory, VersionResolution resolution)
+    throws IOException, FileUtilsErrorException {
+        return transferVerifiedIntoDirectory(artifact, directory, resolution, null) != null;
+    }
+
+    // a locked checksum replaces the checksum of the repository, returns the checksum that
+    // a remote released artifact was verified against or an empty string for the other
+    // artifacts; or null when the artifact couldn't be found
+    String transferVerifiedIntoDirectory(RepositoryArtifact artifact, File directory, VersionResolution resolution, String lockedChecksum)
     throws IOException, FileUtilsErrorException {
         if (directory == null) throw new IllegalArgumentException("directory can't be null");
         if (!directory.exists()) throw new IllegalArgumentException("directory '" + directory + "' doesn't exit");
         if (!directory.canWrite()) throw new IllegalArgumentException("directory '" + directory + "' can't be written to");
         if (!directory.isDirectory()) throw new IllegalArgumentException("directory '" + directory + "' is not a directory");
 
-        var download_filename = artifact.location().substring(artifact.location().lastIndexOf("/") + 1);
+        // concurrent transfers of the same artifact into the same file share a single transfer
+        try {
+            var target = new File(directory, downloadFilename(artifact)).getAbsoluteFile();
+            return transfers_.perform(new TransferTarget(artifact, target), () -> transfer(artifact, directory, resolution, lockedChecksum));
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String downloadFilename(RepositoryArtifact artifact) {
+        return artifact.location().substring(artifact.location().lastIndexOf("/") + 1);
+    }
+
+    private String transfer(RepositoryArtifact artifact, File directory, VersionResolution resolution, String lockedChecksum)
+    throws IOException, FileUtilsErrorException {
+        var download_filename = downloadFilename(artifact);
         var download_file = new File(directory, download_filename);
         var transfer = TransferOutput.instance().start(artifact.location());
         var status = "";
@@ -159,48 +768,102 @@ public abstract class ArtifactRetriever {
             if (artifact.repository().isLocal()) {
                 var source = new File(artifact.location());
                 if (source.exists()) {
-                    FileUtils.copy(source, download_file);
+                    // the file is replaced instead of written to, since it
+                    // could be linked to other files
+                    var temp = Files.createTempFile(directory.toPath(), download_filename, ".tmp");
+                    try {
+                        Files.copy(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+                        PersistentArtifactCache.moveAtomically(temp, download_file);
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
                     status = "done";
-                    return true;
+                    return "";
                 } else {
                     status = "not found";
-                    return false;
+                    return null;
                 }
             } else {
                 try {
-                    if (download_file.exists() && download_file.canRead()) {
-                        if (checkHash(artifact, download_file, ".sha256", "SHA-256") ||
-                            checkHash(artifact, download_file, ".md5", "MD5")) {
+                    // released artifacts never change, a file that was verified
+                    // before and wasn't modified since doesn't need to be checked again
+                    var immutable = !PersistentArtifactCache.isMutable(artifact);
+                    var locked = (immutable && lockedChecksum != null) ? Checksum.parse(lockedChecksum) : null;
+                    if (immutable) {
+                        var verified = verifiedChecksum(artifact, download_file);
+                        if (verified != null && (locked == null || locked.toString().equals(verified))) {
                             status = "exists";
-                            return true;
+                            return verified;
                         }
                     }
 
-                    var connection = openUrlConnection(artifact);
-                    if (artifact.repository().username() != null && artifact.repository().password() != null) {
-                        connection.setRequestProperty(
-                            HEADER_AUTHORIZATION,
-                            basicAuthorizationHeader(artifact.repository().username(), artifact.repository().password()));
-                    }
-                    var content_length = connection.getContentLengthLong();
-                    try (var input_stream = connection.getInputStream()) {
-                        var readableByteChannel = Channels.newChannel(input_stream);
-                        try (var fileOutputStream = new FileOutputStream(download_file)) {
-                            var fileChannel = fileOutputStream.getChannel();
-                            var position = 0L;
-                            long transferred;
-                            while ((transferred = fileChannel.transferFrom(readableByteChannel, position, TRANSFER_CHUNK_SIZE)) > 0) {
-                                position += transferred;
-                                transfer.progress(position, content_length);
+                    if (immutable) {
+                        var stored = linkStored(artifact, download_file);
+                        if (stored != null) {
+                            var stored_checksum = new Checksum(CONTENT_HASH_ALGORITHM, stored);
+                            if (locked == null || locked.equals(stored_checksum) || matchesFile(locked, download_file)) {
+                                verified(artifact, download_file, stored_checksum.toString());
+                                status = "linked";
+                                return stored_checksum.toString();
                             }
+                        }
+                    }
+
+                    if (isMissing(artifact)) {
+                        status = "not found";
+                        return null;
+                    }
 
-                            status = "done";
-                            return true;
+                    // the locked checksum is known without asking the repository
+                    Checksum checksum = locked;
+                    var checked = (locked != null);
+                    if (download_file.exists() && download_file.canRead()) {
+                        if (!checked) {
+                            checksum = expectedChecksum(artifact);
+                            checked = true;
+                        }
+                        if (checksum != null && matchesFile(checksum, download_file)) {
+                            if (immutable) {
+                                verified(artifact, download_file, checksum.toString());
+                                store(artifact, download_file, checksum.sha256());
+                            }
+                            status = "exists";
+                            return immutable ? checksum.toString() : "";
                         }
                     }
+
+                    // released artifacts never change, so the partial file of an interrupted
+                    // transfer can be resumed, it's started over when it turns out to be wrong
+                    var part_file = new File(directory, download_filename + PART_SUFFIX);
+                    var resume = immutable && part_file.isFile() && part_file.length() > 0;
+                    var download = download(artifact, part_file, resume, checked, checksum, resolution, transfer);
+                    if (!download.verified() && resume) {
+                        download = download(artifact, part_file, false, true, download.checksum(), resolution, transfer);
+                    }
+                    checksum = download.checksum();
+                    if (!download.verified()) {
+                        status = "checksum mismatch";
+                        throw new IOException("Checksum mismatch for '" + artifact.location() + "', expected " + checksum.algorithm() + " '" + checksum.hash() + "'" +
+                                              (locked != null ? " by the dependency lock" : ""));
+                    }
+
+                    PersistentArtifactCache.moveAtomically(part_file.toPath(), download_file);
+                    status = "done";
+                    if (!immutable) {
+                        return "";
+                    }
+                    if (checksum == null) {
+                        // the repository doesn't provide a checksum, the content
+                        // is still identified for the dependency lock
+                        return new Checksum(CONTENT_HASH_ALGORITHM, fileHash(download_file)).toString();
+                    }
+                    verified(artifact, download_file, checksum.toString());
+                    store(artifact, download_file, download.contentHash());
+                    return checksum.toString();
                 } catch (FileNotFoundException e) {
+                    cacheMissing(artifact);
                     status = "not found";
-                    return false;
+                    return null;
                 }
             }
         } finally {
@@ -208,22 +871,317 @@ public abstract class ArtifactRetriever {
         }
     }
 
-    private static URLConnection openUrlConnection(RepositoryArtifact artifact) throws IOException {
-        var connection = new URL(artifact.location()).openConnection();
-        connection.setUseCaches(false);
-        connection.setRequestProperty(HttpUtils.HEADER_USER_AGENT, Product.BLD.toUserAgent(BldVersion.getVersion()));
-        return connection;
+    private record Download(Checksum checksum, boolean verified, String contentHash) {
     }
 
-    private boolean checkHash(RepositoryArtifact artifact, File downloadFile, String extension, String algorithm) {
+    // the digest is computed while the bytes flow into the partial file, which is
+    // deleted when it doesn't match and kept for resuming when the transfer fails,
+    // the SHA-256 hash that the content is stored by is computed alongside a weaker checksum
+    private Download download(RepositoryArtifact artifact, File partFile, boolean resume, boolean checked, Checksum checksum, VersionResolution resolution, TransferOutput.Transfer transfer)
+    throws IOException {
+        var offset = resume ? partFile.length() : 0;
+        var response = send(artifact, permits_.acquire(artifact.repository()), permit -> open(artifact, offset, -1, permit));
+        var segmented = false;
+        try (var body = response.body()) {
+            // only look for the checksum once the artifact is known to exist
+            if (!checked) {
+                checksum = expectedChecksum(artifact);
+            }
+            var digest = checksum == null ? null : checksum.createDigest();
+            MessageDigest content_digest = null;
+            if (digest != null && checksum.sha256() == null && !PersistentArtifactCache.isMutable(artifact)) {
+                content_digest = createDigest(CONTENT_HASH_ALGORITHM);
+            }
+
+            try (var channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    lock = null;
+                }
+                if (lock == null) {
+                    throw new IOException("'" + partFile + "' is already being transferred");
+                }
+
+                // the server could have ignored the range and start from the beginning
+                var position = response.offset();
+                var total = response.contentLength();
+                segmented = position == 0 && response.acceptsRanges() &&
+                            resolution.transferSegments() > 1 &&
+                            total >= Math.max(resolution.segmentedTransferThreshold(), resolution.transferSegments());
+                if (segmented) {
+                    // the segments arrive out of order, the digest is computed once they're complete
+                    transferSegments(artifact, body, channel, total, resolution.transferSegments(), transfer);
+                    if (digest != null) {
+                        digestPart(channel, total, digest);
+                    }
+                    if (content_digest != null) {
+                        digestPart(channel, total, content_digest);
+                    }
+                } else {
+                    if (position > channel.size()) {
+                        throw new IOException("'" + partFile + "' changed while it was being transferred");
+                    }
+                    channel.truncate(position);
+                    if (digest != null) {
+                        digestPart(channel, position, digest);
+                    }
+                    if (content_digest != null) {
+                        digestPart(channel, position, content_digest);
+                    }
+
+                    var input_stream = digest == null ? body : new DigestInputStream(body, digest);
+                    if (content_digest != null) {
+                        input_stream = new DigestInputStream(input_stream, content_digest);
+                    }
+                    var readableByteChannel = Channels.newChannel(input_stream);
+                    long transferred;
+                    while ((transferred = channel.transferFrom(readableByteChannel, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                        position += transferred;
+                        transfer.progress(position, total);
+                    }
+                    if (total >= 0 && position != total) {
+                        throw new IOException("Incomplete transfer of '" + artifact.location() + "', " + position + " of " + total + " bytes");
+                    }
+                }
+            }
+
+            if (digest != null && !checksum.matches(digest.digest())) {
+                Files.deleteIfExists(partFile.toPath());
+                return new Download(checksum, false, null);
+            }
+            var content_hash = content_digest == null ? (checksum == null ? null : checksum.sha256()) : encodeHexLower(content_digest.digest());
+            return new Download(checksum, true, content_hash);
+        } catch (IOException e) {
+            // the segments of a partial file aren't contiguous, it can't be resumed
+            if (segmented) {
+                Files.deleteIfExists(partFile.toPath());
+            }
+            throw e;
+        }
+    }
+
+    private interface Request<T> {
+        T send(RepositoryPermits.Permit permit)
+        throws IOException;
+    }
+
+    // each request closes its permit, throttled requests are sent again with a new
+    // permit once the pause of the repository that they caused has passed
+    private <T> T send(RepositoryArtifact artifact, RepositoryPermits.Permit permit, Request<T> request)
+    throws IOException {
+        for (var retries = 0; ; ++retries) {
+            try {
+                return request.send(permit);
+            } catch (HttpTransport.ThrottledException e) {
+                if (retries >= MAX_THROTTLED_RETRIES || e.retryAfter() > MAX_THROTTLED_DELAY) {
+                    throw e;
+                }
+                permit = permits_.acquire(artifact.repository());
+            }
+        }
+    }
+
+    // the response body holds on to the permit of the repository until it's closed
+    private static HttpTransport.Response open(RepositoryArtifact artifact, long offset, long last, RepositoryPermits.Permit permit)
+    throws IOException {
         try {
-            var hash_sum = readString(artifact.appendPath(extension));
-            var digest = MessageDigest.getInstance(algorithm);
-            digest.update(FileUtils.readBytes(downloadFile));
-            return hash_sum.equals(encodeHexLower(digest.digest()));
-        } catch (Exception e) {
-            // no-op, the hash file couldn't be found or calculated, so it couldn't be checked
+            var response = HttpTransport.open(artifact, offset, last);
+            return new HttpTransport.Response(permit.holdUntilClosed(response.body()), response.contentLength(), response.offset(), response.acceptsRanges());
+        } catch (IOException e) {
+            permit.failed(e);
+            permit.close();
+            throw e;
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    // the first segment continues from the response that's already open, the others are
+    // retrieved in parallel with range requests and written at their position in the file
+    private void transferSegments(RepositoryArtifact artifact, InputStream body, FileChannel channel, long total, int segments, TransferOutput.Transfer transfer)
+    throws IOException {
+        channel.truncate(0);
+        channel.write(ByteBuffer.allocate(1), total - 1);
+
+        var segment_size = (total + segments - 1) / segments;
+        var transferred = new AtomicLong();
+        var deferred = new ConcurrentLinkedQueue<Long>();
+        var tasks = new ArrayList<Supplier<Void>>();
+        for (var first = 0L; first < total; first += segment_size) {
+            var segment_first = first;
+            var segment_last = Math.min(total, first + segment_size) - 1;
+            tasks.add(() -> {
+                try {
+                    if (segment_first == 0) {
+                        transferSegment(body, channel, segment_first, segment_last, total, transferred, transfer);
+                    } else {
+                        // segments that don't get a permit of the repository right away, or
+                        // that are throttled, are retrieved afterwards with the permit of the
+                        // first segment
+                        var permit = permits_.tryAcquire(artifact.repository());
+                        if (permit == null) {
+                            deferred.add(segment_first);
+                        } else {
+                            try {
+                                transferRange(artifact, channel, segment_first, segment_last, total, transferred, transfer, permit);
+                            } catch (HttpTransport.ThrottledException e) {
+                                deferred.add(segment_first);
+                            }
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        try {
+            ParallelExecution.execute(tasks, tasks.size());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (var segment_first : deferred) {
+            var segment_last = Math.min(total, segment_first + segment_size) - 1;
+            send(artifact, permits_.acquire(artifact.repository()), permit -> {
+                transferRange(artifact, channel, segment_first, segment_last, total, transferred, transfer, permit);
+                return null;
+            });
+        }
+    }
+
+    private static void transferRange(RepositoryArtifact artifact, FileChannel channel, long first, long last, long total, AtomicLong transferred, TransferOutput.Transfer transfer, RepositoryPermits.Permit permit)
+    throws IOException {
+        var response = open(artifact, first, last, permit);
+        try (var body = response.body()) {
+            if (response.offset() != first) {
+                throw new IOException("Range request of '" + artifact.location() + "' wasn't honored");
+            }
+            transferSegment(body, channel, first, last, total, transferred, transfer);
+        }
+    }
+
+    private static void transferSegment(InputStream body, FileChannel channel, long first, long last, long total, AtomicLong transferred, TransferOutput.Transfer transfer)
+    throws IOException {
+        var readableByteChannel = Channels.newChannel(body);
+        var position = first;
+        while (position <= last) {
+            var count = channel.transferFrom(readableByteChannel, position, Math.min(TRANSFER_CHUNK_SIZE, last + 1 - position));
+            if (count <= 0) {
+                throw new IOException("Incomplete segment " + first + "-" + last + ", " + (position - first) + " of " + (last + 1 - first) + " bytes");
+            }
+            position += count;
+            // keep the reported progress increasing across the segments
+            synchronized (transfer) {
+                transfer.progress(transferred.addAndGet(count), total);
+            }
+        }
+    }
+
+    private static void digestPart(FileChannel channel, long length, MessageDigest digest)
+    throws IOException {
+        var buffer = ByteBuffer.allocate(TRANSFER_CHUNK_SIZE);
+        var position = 0L;
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+            var read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of the partial file");
+            }
+            position += read;
+            digest.update(buffer.flip());
+        }
+    }
+
+    private static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // should not happen
+            throw new RuntimeException(e);
+        }
+    }
+
+    private record Checksum(String algorithm, String hash) {
+        static Checksum parse(String checksum) {
+            var separator = checksum.indexOf(':');
+            return new Checksum(checksum.substring(0, separator), checksum.substring(separator + 1));
+        }
+
+        MessageDigest createDigest() {
+            return ArtifactRetriever.createDigest(algorithm);
+        }
+
+        boolean matches(byte[] digest) {
+            return hash.equals(encodeHexLower(digest));
+        }
+
+        // the hash that the content store addresses the content by, when this is it
+        String sha256() {
+            return CONTENT_HASH_ALGORITHM.equals(algorithm) ? hash : null;
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + ":" + hash;
+        }
+    }
+
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private static final String[][] CHECKSUM_ALGORITHMS = {
+        {".sha256", "SHA-256"},
+        {".sha1", "SHA-1"},
+        {".md5", "MD5"}};
+
+    // the strongest checksum that the repository provides for the artifact,
+    // or null when it doesn't provide any
+    private Checksum expectedChecksum(RepositoryArtifact artifact)
+    throws IOException {
+        for (var algorithm : CHECKSUM_ALGORITHMS) {
+            String content;
+            try {
+                content = readString(artifact.appendPath(algorithm[0]));
+            } catch (FileUtilsErrorException e) {
+                // only a checksum file that isn't published moves on to the next one,
+                // the transfer fails on any other error instead of skipping the verification
+                if (e.getCause() instanceof FileNotFoundException ||
+                    e.getCause() instanceof NoSuchFileException) {
+                    continue;
+                }
+                throw new IOException("Unable to retrieve the " + algorithm[1] + " checksum of '" + artifact.location() + "'", e);
+            }
+
+            // checksum files can also contain the name of the file after the hash
+            var hash_sum = content.trim().split("\\s+", 2)[0];
+            if (!hash_sum.isEmpty()) {
+                return new Checksum(algorithm[1], hash_sum.toLowerCase(Locale.ROOT));
+            }
+        }
+        return null;
+    }
+
+    private static String fileHash(File file)
+    throws IOException {
+        var digest = createDigest(CONTENT_HASH_ALGORITHM);
+        try (var input_stream = new DigestInputStream(new FileInputStream(file), digest)) {
+            input_stream.transferTo(OutputStream.nullOutputStream());
+        }
+        return encodeHexLower(digest.digest());
+    }
+
+    // streams the file through the digest, which doesn't need to hold it in memory
+    private static boolean matchesFile(Checksum checksum, File file) {
+        var digest = checksum.createDigest();
+        try (var input_stream = new DigestInputStream(new FileInputStream(file), digest)) {
+            input_stream.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            // no-op, the hash couldn't be calculated, so the file can't be trusted
+            return false;
         }
-        return false;
+        return checksum.matches(digest.digest());
     }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Indexes the versions that bills of materials manage for the lifetime of
+ * a caching retriever.
+ * <p>
+ * The same BOMs apply to several scopes and are used for the version
+ * resolution of each of them, as well as to report their conflicts. Each
+ * BOM is only retrieved and processed once for the version resolution it's
+ * imported into and the repositories, the BOMs that aren't indexed yet are
+ * retrieved in parallel.
+ * <p>
+ * Only caching retrievers share an index between the uses of the
+ * retriever. The retriever that doesn't cache provides a new index each
+ * time, so that every resolution retrieves the BOMs again.
+ * <p>
+ * Only the managed versions of the BOMs are kept, within a maximum number
+ * of bytes. The least recently used BOMs are evicted beyond that and are
+ * retrieved again when they're imported.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class BomIndex {
+    /**
+     * A dependency that is managed by a BOM.
+     *
+     * @param dependency the group and artifact identifiers of the dependency
+     * @param version    the version the BOM manages the dependency at
+     */
+    record Managed(String dependency, Version version) {
+    }
+
+    private record Key(String bom, VersionResolution.CacheKey resolution, List<Repository> repositories) {
+    }
+
+    // the approximate overhead of an indexed BOM, its key, and the map node,
+    // and of each dependency that it manages
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int MANAGED_OVERHEAD = 96;
+
+    private record Entry(Map<String, Managed> managed, long size) {
+    }
+
+    private final long maximumSize_;
+    private final LinkedHashMap<Key, Entry> boms_ = new LinkedHashMap<>(16, 0.75f, true);
+    private long size_ = 0;
+    private long evictions_ = 0;
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+
+    BomIndex(long maximumSize) {
+        maximumSize_ = maximumSize;
+    }
+
+    /**
+     * Retrieves the managed dependencies of each BOM, keyed by the
+     * identity that dependency management entries are matched on, in the
+     * order of the BOMs.
+     *
+     * @param resolution   the version resolution that the BOMs are imported into
+     * @param retriever    the retriever to use to get the BOMs
+     * @param repositories the repositories to resolve the BOMs in
+     * @param boms         the BOMs to retrieve, in precedence order
+     * @return the immutable managed dependencies of each BOM
+     */
+    List<Map<String, Managed>> get(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, Collection<Bom> boms) {
+        if (boms == null || boms.isEmpty()) {
+            return List.of();
+        }
+
+        var result = new ArrayList<Map<String, Managed>>(boms.size());
+        var missing = new ArrayList<Integer>();
+        var retrievals = new ArrayList<Supplier<Map<String, Managed>>>();
+        var resolution_key = resolution.cacheKey();
+        var repositories_key = List.copyOf(repositories);
+        for (var bom : boms) {
+            var key = new Key(bom.toString(), resolution_key, repositories_key);
+            var managed = get(key);
+            if (managed != null) {
+                hits_.incrementAndGet();
+            } else {
+                misses_.incrementAndGet();
+                missing.add(result.size());
+                // the BOMs aren't retrieved while holding a lock, concurrent
+                // misses for the same BOM simply process it more than once
+                retrievals.add(() -> {
+                    var retrieved = managedDependencies(resolution, retriever, repositories, bom);
+                    put(key, retrieved);
+                    return retrieved;
+                });
+            }
+            result.add(managed);
+        }
+
+        // the retrieved BOMs are used as is, they could already have been evicted
+        var retrieved = ParallelExecution.execute(retrievals, resolution.resolutionParallelism());
+        for (var i = 0; i < missing.size(); ++i) {
+            result.set(missing.get(i), retrieved.get(i));
+        }
+        return result;
+    }
+
+    private synchronized Map<String, Managed> get(Key key) {
+        var entry = boms_.get(key);
+        return entry == null ? null : entry.managed();
+    }
+
+    private void put(Key key, Map<String, Managed> managed) {
+        var entry_size = ENTRY_OVERHEAD + MANAGED_OVERHEAD * (long) managed.size();
+        for (var entry : managed.entrySet()) {
+            entry_size += 2L * (entry.getKey().length() + entry.getValue().dependency().length());
+        }
+
+        synchronized (this) {
+            // a BOM that doesn't fit at all isn't kept, and
+            // the first one that was indexed for a key is kept
+            if (entry_size > maximumSize_ || boms_.containsKey(key)) {
+                return;
+            }
+
+            boms_.put(key, new Entry(managed, entry_size));
+            size_ += entry_size;
+            var iterator = boms_.values().iterator();
+            while (size_ > maximumSize_ && iterator.hasNext()) {
+                var eldest = iterator.next();
+                iterator.remove();
+                size_ -= eldest.size();
+                evictions_ += 1;
+            }
+        }
+    }
+
+    // the first entry of a BOM that manages a dependency determines its version
+    private static Map<String, Managed> managedDependencies(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, Bom bom) {
+        var managed_dependencies = new LinkedHashMap<String, Managed>();
+        var pom = new DependencyResolver(resolution, retriever, repositories, bom).getMavenPom(bom);
+        for (var managed : pom.getManagedDependencies()) {
+            if (managed.version() != null && !managed.version().isBlank()) {
+                var dependency = managed.convertToDependency();
+                managed_dependencies.putIfAbsent(VersionResolution.managedKey(dependency), new Managed(dependency.toArtifactString(), dependency.version()));
+            }
+        }
+        return Collections.unmodifiableMap(managed_dependencies);
+    }
+
+    synchronized long size() {
+        return size_;
+    }
+
+    synchronized long evictions() {
+        return evictions_;
+    }
+
+    long hits() {
+        return hits_.get();
+    }
+
+    long misses() {
+        return misses_.get();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which transferred files were verified against the checksum of
+ * their remote artifact.
+ * <p>
+ * Each file is recorded by its absolute path with the size and
+ * modification time that it had when it was verified. As long as these
+ * didn't change, the file is trusted without retrieving the remote
+ * checksum again.
+ * <p>
+ * When a file is provided, the index is loaded from it. The files that
+ * were verified since are only written back when the index is
+ * {@linkplain #save saved}, once per transfer batch. They're merged with
+ * the index that other builds might have written in the meantime and the
+ * entries of files that don't exist anymore are pruned. Any failure to
+ * write the index is ignored since the files will simply be verified
+ * again.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class ChecksumIndex {
+    private final File file_;
+    private final Map<String, String> entries_ = new ConcurrentHashMap<>();
+    // the entries that were verified since the index was last saved
+    private final Map<String, String> verified_ = new ConcurrentHashMap<>();
+
+    ChecksumIndex(File file) {
+        file_ = file;
+        entries_.putAll(load());
+    }
+
+    // the checksum that the file was verified against, or null when it wasn't verified or was modified since
+    String verifiedChecksum(RepositoryArtifact artifact, File file) {
+        var entry = entries_.get(file.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        var checksum = entry.substring(entry.lastIndexOf(' ') + 1);
+        return entry.equals(entry(artifact, file, checksum)) ? checksum : null;
+    }
+
+    void verified(RepositoryArtifact artifact, File file, String checksum) {
+        var path = file.getAbsolutePath();
+        var entry = entry(artifact, file, checksum);
+        if (!entry.equals(entries_.put(path, entry))) {
+            verified_.put(path, entry);
+        }
+    }
+
+    // the checksum comes last since it can't contain spaces
+    private static String entry(RepositoryArtifact artifact, File file, String checksum) {
+        return file.length() + " " + file.lastModified() + " " + artifact.location() + " " + checksum;
+    }
+
+    private Map<String, String> load() {
+        var entries = new HashMap<String, String>();
+        if (file_ != null && file_.isFile()) {
+            var properties = new Properties();
+            try (var input = new FileInputStream(file_)) {
+                properties.load(input);
+                for (var name : properties.stringPropertyNames()) {
+                    entries.put(name, properties.getProperty(name));
+                }
+            } catch (IOException e) {
+                // no-op, the files will be verified again
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the files that were verified since the index was last saved,
+     * nothing is written when there are none.
+     */
+    synchronized void save() {
+        if (file_ == null || verified_.isEmpty()) {
+            return;
+        }
+
+        var verified = Map.copyOf(verified_);
+        var entries = load();
+        entries.putAll(verified);
+        entries.keySet().removeIf(path -> !new File(path).isFile());
+
+        var properties = new Properties();
+        properties.putAll(entries);
+        try {
+            var output = new ByteArrayOutputStream();
+            properties.store(output, null);
+            PersistentArtifactCache.writeAtomically(file_, output.toByteArray());
+            // entries that were verified again while saving are kept for the next save
+            verified.forEach(verified_::remove);
+        } catch (IOException e) {
+            // no-op, the files will be verified again
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static rife.tools.StringUtils.encodeHexLower;
+
+/**
+ * Stores the content of transferred artifacts once, addressed by its
+ * SHA-256 hash.
+ * <p>
+ * The stored content is hard linked into the directories that the
+ * artifacts are transferred into, which shares a single copy across all
+ * the scopes and projects that use the same store. When the file system
+ * doesn't support hard links, or the store is on another file system, the
+ * content is copied instead.
+ * <p>
+ * Each artifact location also records the hash of its content, so that
+ * the store can be used without contacting the repository. Linked files
+ * are always replaced by moving a new file over them and never written
+ * to. Since others could still write to them, the size and modification
+ * time of the stored content are recorded as well, content that was
+ * modified is discarded.
+ * <p>
+ * Any failure to use the store is ignored, the artifact is then simply
+ * transferred again.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class ContentStore {
+    private static final String LOCATIONS_DIRECTORY = "locations";
+
+    private final File directory_;
+
+    ContentStore(File directory) {
+        directory_ = directory;
+    }
+
+    /**
+     * Links the stored content of an artifact to a file.
+     *
+     * @return the SHA-256 hash of the linked content; or {@code null} when
+     * the content of the artifact isn't stored
+     */
+    String link(RepositoryArtifact artifact, File file) {
+        var location_file = locationFile(artifact);
+        if (!location_file.isFile()) {
+            return null;
+        }
+
+        try {
+            var entry = Files.readString(location_file.toPath(), StandardCharsets.UTF_8).trim();
+            var hash = entry.substring(0, entry.indexOf(' '));
+            var content_file = contentFile(hash);
+            if (!content_file.isFile()) {
+                return null;
+            }
+            if (!entry.equals(entry(hash, content_file))) {
+                Files.deleteIfExists(content_file.toPath());
+                return null;
+            }
+
+            link(content_file, file);
+            return hash;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            // no-op, the artifact will be transferred again
+            return null;
+        }
+    }
+
+    /**
+     * Adds the content of an artifact to the store.
+     *
+     * @param hash the SHA-256 hash of the content, as computed while it
+     *             was transferred; or {@code null} to compute it from the file
+     */
+    void add(RepositoryArtifact artifact, File file, String hash) {
+        try {
+            if (hash == null) {
+                hash = hash(file);
+            }
+            var content_file = contentFile(hash);
+            if (!content_file.isFile()) {
+                link(file, content_file);
+            }
+            PersistentArtifactCache.writeAtomically(locationFile(artifact), entry(hash, content_file).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // no-op, the artifact will be transferred again
+        }
+    }
+
+    private static String entry(String hash, File contentFile) {
+        return hash + " " + contentFile.length() + " " + contentFile.lastModified();
+    }
+
+    File locationFile(RepositoryArtifact artifact) {
+        var hash = PersistentArtifactCache.hash(artifact.location());
+        return new File(new File(new File(directory_, LOCATIONS_DIRECTORY), hash.substring(0, 2)), hash);
+    }
+
+    File contentFile(String hash) {
+        return new File(new File(directory_, hash.substring(0, 2)), hash);
+    }
+
+    static String hash(File file)
+    throws IOException {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            try (var input = new DigestInputStream(new FileInputStream(file), digest)) {
+                input.transferTo(OutputStream.nullOutputStream());
+            }
+            return encodeHexLower(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // should not happen
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the link is created under a temporary name and moved into place, so
+    // that a destination that exists is replaced instead of written to
+    private static void link(File source, File destination)
+    throws IOException {
+        var parent = destination.getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("Couldn't create directory '" + parent + "'");
+        }
+        var temp = Files.createTempFile(parent.toPath(), destination.getName(), ".tmp");
+        try {
+            Files.delete(temp);
+            try {
+                Files.createLink(temp, source.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            PersistentArtifactCache.moveAtomically(temp, destination);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the transitive dependencies of root dependencies for the lifetime
+ * of a caching retriever.
+ * <p>
+ * The same root dependencies are resolved for several scopes, like the
+ * compile dependencies that are resolved again to be excluded from the
+ * runtime scope. The transitive dependencies of a root only depend on its
+ * declaration, the transitive scopes, the versions that are overridden or
+ * managed by BOMs and the repositories, which together key the cache.
+ * Every lookup receives a copy that starts with the root that requested it.
+ * <p>
+ * The roots that aren't cached yet still share their subgraphs. The
+ * dependencies that the POM of each dependency declares for the transitive
+ * scopes are also cached, keyed by its coordinates instead of the root, so
+ * that a library that twenty roots depend on is only expanded once. Each
+ * traversal receives them bound to its own parent and still applies the
+ * exclusions of the path that leads to them, keeping the breadth-first
+ * order of every root identical to an uncached resolution.
+ * <p>
+ * Like the string content, the closures and declared dependencies are kept
+ * within a maximum number of bytes and the least recently used ones are
+ * evicted beyond that, they're simply resolved again when they're needed.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class DependencyClosureCache {
+    private record Key(String groupId, String artifactId, String version, String classifier, String type,
+                       Set<DependencyExclusion> exclusions, List<Scope> scopes,
+                       VersionResolution.CacheKey resolution, List<Repository> repositories) {
+    }
+
+    // the declared dependencies of a POM don't depend on the classifier,
+    // the type or the exclusions of the dependency that leads to it
+    private record PomKey(String groupId, String artifactId, String version, List<Scope> scopes,
+                          VersionResolution.CacheKey resolution, List<Repository> repositories) {
+    }
+
+    // the approximate overhead of an entry, its key, and the map node,
+    // and of each dependency that it holds
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int DEPENDENCY_OVERHEAD = 96;
+
+    private record Entry(Object value, long size) {
+    }
+
+    private final long maximumSize_;
+    // the closures and the declared dependencies share the least recently used order,
+    // their keys are of different types
+    private final LinkedHashMap<Record, Entry> entries_ = new LinkedHashMap<>(16, 0.75f, true);
+    private long size_ = 0;
+    private long evictions_ = 0;
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+    private final AtomicLong childrenHits_ = new AtomicLong();
+    private final AtomicLong childrenMisses_ = new AtomicLong();
+
+    DependencyClosureCache(long maximumSize) {
+        maximumSize_ = maximumSize;
+    }
+
+    DependencySet get(VersionResolution resolution, List<Repository> repositories, Dependency root, Scope... scopes) {
+        var closure = (DependencySet) get(key(resolution, repositories, root, scopes));
+        if (closure == null) {
+            misses_.incrementAndGet();
+            return null;
+        }
+
+        hits_.incrementAndGet();
+        return copy(closure, resolution.overrideDeclaredDependency(root));
+    }
+
+    void put(VersionResolution resolution, List<Repository> repositories, Dependency root, Scope[] scopes, DependencySet closure) {
+        var size = DEPENDENCY_OVERHEAD * (long) closure.size();
+        for (var dependency : closure) {
+            size += 2L * (dependency.groupId().length() + dependency.artifactId().length());
+        }
+        put(key(resolution, repositories, root, scopes), closure, size);
+    }
+
+    // the expansion is performed outside the map, concurrent misses for the
+    // same dependency keep the first result since they're all identical
+    Set<PomDependency> children(VersionResolution resolution, List<Repository> repositories, Dependency dependency, Dependency parent, Scope[] scopes, Supplier<Set<PomDependency>> expansion) {
+        var key = new PomKey(dependency.groupId(), dependency.artifactId(), dependency.version().toString(), List.of(scopes),
+            resolution.cacheKey(), List.copyOf(repositories));
+        @SuppressWarnings("unchecked")
+        var children = (List<PomDependency>) get(key);
+        if (children == null) {
+            childrenMisses_.incrementAndGet();
+            var expanded = expansion.get();
+            var size = DEPENDENCY_OVERHEAD * (long) expanded.size();
+            for (var child : expanded) {
+                size += 2L * (child.groupId().length() + child.artifactId().length() + (child.version() == null ? 0 : child.version().length()));
+            }
+            put(key, List.copyOf(expanded), size);
+            return expanded;
+        }
+
+        childrenHits_.incrementAndGet();
+        var result = new LinkedHashSet<PomDependency>();
+        for (var child : children) {
+            result.add(child.withParent(parent));
+        }
+        return result;
+    }
+
+    private synchronized Object get(Record key) {
+        var entry = entries_.get(key);
+        return entry == null ? null : entry.value();
+    }
+
+    private synchronized void put(Record key, Object value, long size) {
+        var entry_size = ENTRY_OVERHEAD + size;
+        // a closure that doesn't fit at all isn't kept, and
+        // the first one that was stored for a key is kept
+        if (entry_size > maximumSize_ || entries_.containsKey(key)) {
+            return;
+        }
+
+        entries_.put(key, new Entry(value, entry_size));
+        size_ += entry_size;
+        var iterator = entries_.values().iterator();
+        while (size_ > maximumSize_ && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            size_ -= eldest.size();
+            evictions_ += 1;
+        }
+    }
+
+    private static Key key(VersionResolution resolution, List<Repository> repositories, Dependency root, Scope[] scopes) {
+        return new Key(root.groupId(), root.artifactId(), root.version().toString(), root.classifier(), root.type(),
+            Set.copyOf(root.exclusions()), List.of(scopes),
+            resolution.cacheKey(), List.copyOf(repositories));
+    }
+
+    // the dependencies are copied with their parents since the excluded
+    // classifiers of a dependency are specific to the scope it's part of
+    private static DependencySet copy(DependencySet closure, Dependency root) {
+        var copies = new IdentityHashMap<Dependency, Dependency>();
+        var iterator = closure.iterator();
+        if (iterator.hasNext()) {
+            copies.put(iterator.next(), root);
+        }
+
+        var result = new DependencySet();
+        for (var dependency : closure) {
+            result.add(copy(dependency, copies));
+        }
+        return result;
+    }
+
+    private static Dependency copy(Dependency dependency, Map<Dependency, Dependency> copies) {
+        if (dependency == null) {
+            return null;
+        }
+        var copied = copies.get(dependency);
+        if (copied == null) {
+            copied = new Dependency(dependency.groupId(), dependency.artifactId(), dependency.version(),
+                dependency.classifier(), dependency.type(), dependency.exclusions(), copy(dependency.parent(), copies));
+            copies.put(dependency, copied);
+        }
+        return copied;
+    }
+
+    synchronized long size() {
+        return size_;
+    }
+
+    synchronized long evictions() {
+        return evictions_;
+    }
+
+    long hits() {
+        return hits_.get();
+    }
+
+    long misses() {
+        return misses_.get();
+    }
+
+    long childrenHits() {
+        return childrenHits_.get();
+    }
+
+    long childrenMisses() {
+        return childrenMisses_.get();
+    }
+}
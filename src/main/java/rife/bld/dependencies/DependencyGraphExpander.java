@@ -0,0 +1,104 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import rife.bld.dependencies.exceptions.DependencyException;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Expands the transitive dependency graph of one or more roots level by
+ * level, retrieving the POMs of each level in parallel, this is an internal
+ * class.
+ * <p>
+ * The expansion only populates the POM cache of the version resolution, the
+ * actual ordering and conflict resolution is still performed by the
+ * sequential traversal of {@link DependencyResolver}, which then doesn't
+ * have to wait for any remote repository anymore. This guarantees that the
+ * results are identical to a purely sequential resolution.
+ * <p>
+ * Each root only expands the first version of every dependency in
+ * breadth-first order, which is the version its traversal keeps, so that
+ * no POM is retrieved that the traversal wouldn't need. Failures to
+ * retrieve or parse a POM are ignored during the expansion since they
+ * will resurface with the proper context during the sequential traversal.
+ * <p>
+ * When a closure cache is provided, the dependencies that each expanded POM
+ * declares are recorded in it, so that the traversal and the other roots
+ * that lead to the same POM reuse them.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class DependencyGraphExpander {
+    private record Node(DependencyResolver root, DependencyResolver resolver, Dependency dependency) {
+    }
+
+    // dependencies are equal by their coordinates without the version, the
+    // traversal of a root only keeps the first version it encounters
+    private record Coordinate(DependencyResolver root, Dependency dependency) {
+    }
+
+    private final VersionResolution resolution_;
+    private final ArtifactRetriever retriever_;
+    private final List<Repository> repositories_;
+    private final DependencyClosureCache closures_;
+
+    DependencyGraphExpander(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, DependencyClosureCache closures) {
+        resolution_ = resolution;
+        retriever_ = retriever;
+        repositories_ = repositories;
+        closures_ = closures;
+    }
+
+    void expand(Collection<Dependency> roots, Scope... scopes) {
+        var parallelism = resolution_.resolutionParallelism();
+        if (parallelism <= 1 || roots.isEmpty()) {
+            return;
+        }
+
+        var expanded = new HashSet<Coordinate>();
+        var level = new ArrayList<Node>();
+        for (var root : roots) {
+            var resolver = new DependencyResolver(resolution_, retriever_, repositories_, root);
+            var overridden = resolution_.overrideDeclaredDependency(root);
+            expanded.add(new Coordinate(resolver, overridden));
+            level.add(new Node(resolver, resolver, overridden));
+        }
+
+        while (!level.isEmpty()) {
+            var expansions = new ArrayList<Supplier<List<Node>>>(level.size());
+            for (var node : level) {
+                expansions.add(() -> expand(node, scopes));
+            }
+
+            var next_level = new ArrayList<Node>();
+            for (var children : ParallelExecution.execute(expansions, parallelism)) {
+                for (var child : children) {
+                    if (expanded.add(new Coordinate(child.root(), child.dependency()))) {
+                        next_level.add(child);
+                    }
+                }
+            }
+            level = next_level;
+        }
+    }
+
+    private List<Node> expand(Node node, Scope... scopes) {
+        try {
+            var result = new ArrayList<Node>();
+            for (var candidate : node.resolver().getPomDependencies(closures_, node.dependency(), scopes)) {
+                if (!node.root().matchesExclusions(node.dependency(), candidate)) {
+                    var dependency = resolution_.overrideTransitiveDependency(candidate.convertToDependency());
+                    result.add(new Node(node.root(), new DependencyResolver(resolution_, retriever_, repositories_, dependency), dependency));
+                }
+            }
+            return result;
+        } catch (DependencyException e) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import rife.ioc.HierarchicalProperties;
+import rife.tools.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Records the fully resolved dependencies of each scope, so that they can
+ * be used again without retrieving any POM or metadata.
+ * <p>
+ * The lock is only valid for the fingerprint of the declarations it was
+ * resolved for, as calculated by
+ * {@link DependencyScopes#fingerprint(VersionResolution, List)}. Once the
+ * declarations, repositories or version overrides change, the locked
+ * scopes are discarded and recorded again while the scopes are resolved.
+ * <p>
+ * Each scope is stored with one resolved dependency per line in the order
+ * of the resolution, followed by the index of the line of its parent
+ * dependency when it has one. Parents that aren't part of the scope, like
+ * the {@code compile} dependencies that the {@code runtime} scope excludes,
+ * are stored on the following lines, prefixed with {@code ~}. Since
+ * versions that aren't declared are locked too, the latest versions and
+ * snapshots are only resolved again once the declarations change or the
+ * lock is deleted.
+ * <p>
+ * The resolved dependencies of each root dependency are also stored by
+ * its declaration, with the same format. When the declarations change,
+ * only the roots whose declaration or resolution context changed are
+ * resolved again, the others reuse their locked dependencies. The roots
+ * that weren't used since the declarations changed are discarded.
+ * <p>
+ * The transferred released artifacts are locked too, with the repository
+ * that provided them and the checksum they were verified against. They're
+ * transferred from that repository first and verified against the locked
+ * checksum instead of the checksum files of the repository, also on a
+ * machine that never transferred them before. An artifact that a
+ * repository replaced after it was locked thus fails the transfer, and so
+ * does an artifact that another repository provides with other content
+ * when the locked repository isn't declared anymore or doesn't have it.
+ * The artifacts of snapshots and of local repositories aren't locked,
+ * since they're expected to change.
+ * <p>
+ * The exclusions of the locked dependencies aren't stored either, since
+ * they only affect the resolution that the lock replaces. The exclusions
+ * of the root dependencies and the classifiers they exclude from the
+ * downloads are taken from their current declarations, so that a locked
+ * scope is equal to the scope that is resolved without the lock.
+ * <p>
+ * The lock is written with sorted keys and without a timestamp, so that it
+ * only changes when the resolved dependencies change and can be committed
+ * with the project. Only the download and purge operations of a project
+ * use it, when the "{@code bld.dependencyLock}" property is {@code true}.
+ * The other resolutions of a project, like its dependency tree or the jars
+ * of {@code dependencyClasspathJars}, always resolve the declarations
+ * without the lock.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+public class DependencyLock {
+    /**
+     * The name of the lock file in the {@code lib/bld} directory of a
+     * project.
+     *
+     * @since 2.4.0
+     */
+    public static final String BLD_LOCK = "bld.lock";
+
+    /**
+     * The property that enables the lock for a project.
+     *
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_DEPENDENCY_LOCK = "bld.dependencyLock";
+
+    private static final String PROPERTY_FINGERPRINT = "fingerprint";
+    private static final String PROPERTY_ROOT_PREFIX = "root.";
+    private static final String PROPERTY_ARTIFACT_PREFIX = "artifact.";
+    private static final String ANCESTOR_PREFIX = "~";
+
+    private final File file_;
+    private Properties properties_ = null;
+    // the roots and artifacts of previous declarations that can still be reused
+    private final Map<String, String> previousRoots_ = new HashMap<>();
+    private final Map<String, String> previousArtifacts_ = new HashMap<>();
+    // the artifacts that were locked since the lock was last written
+    private boolean artifactsChanged_ = false;
+
+    /**
+     * The repository and checksum that a transferred artifact is locked with.
+     *
+     * @param repository the location of the repository that provided the artifact
+     * @param checksum   the checksum of the artifact, prefixed by its algorithm
+     */
+    record LockedArtifact(String repository, String checksum) {
+    }
+
+    /**
+     * Creates a dependency lock that is stored in a file.
+     *
+     * @param file the file to store the lock in
+     * @since 2.4.0
+     */
+    public DependencyLock(File file) {
+        file_ = file;
+    }
+
+    /**
+     * Indicates whether the dependency lock is enabled in the hierarchical
+     * properties.
+     *
+     * @param properties the hierarchical properties to look into
+     * @return {@code true} if the lock is enabled; or {@code false} otherwise
+     * @since 2.4.0
+     */
+    public static boolean isEnabled(HierarchicalProperties properties) {
+        return properties != null && Boolean.parseBoolean(properties.getValueString(PROPERTY_DEPENDENCY_LOCK));
+    }
+
+    /**
+     * Returns the file that the lock is stored in.
+     *
+     * @return the file of the lock
+     * @since 2.4.0
+     */
+    public File file() {
+        return file_;
+    }
+
+    /**
+     * Retrieves the locked dependencies of a scope.
+     *
+     * @param fingerprint the fingerprint of the current declarations
+     * @param scope       the scope to retrieve the dependencies of
+     * @return the locked dependencies; or {@code null} when the scope isn't
+     * locked for this fingerprint
+     * @since 2.4.0
+     */
+    public synchronized DependencySet get(String fingerprint, Scope scope) {
+        var properties = properties();
+        if (!fingerprint.equals(properties.getProperty(PROPERTY_FINGERPRINT))) {
+            return null;
+        }
+        return parse(properties.getProperty(scope.name()));
+    }
+
+    /**
+     * Retrieves the locked dependencies of a root dependency.
+     *
+     * @param fingerprint the fingerprint of the current declarations
+     * @param context     the fingerprint of the context that the root is resolved in
+     * @param root        the root dependency
+     * @return the locked dependencies of the root; or {@code null} when it
+     * isn't locked for this context and declaration
+     */
+    synchronized DependencySet getRoot(String fingerprint, String context, Dependency root) {
+        var properties = select(fingerprint);
+        var key = rootKey(context, root);
+        var locked = properties.getProperty(key);
+        if (locked == null) {
+            locked = previousRoots_.remove(key);
+            if (locked != null) {
+                properties.setProperty(key, locked);
+            }
+        }
+        return parse(locked);
+    }
+
+    /**
+     * Locks the resolved dependencies of a root dependency, they're written
+     * with the next scope that is locked.
+     *
+     * @param fingerprint  the fingerprint of the current declarations
+     * @param context      the fingerprint of the context that the root is resolved in
+     * @param root         the root dependency
+     * @param dependencies the resolved dependencies of the root
+     */
+    synchronized void putRoot(String fingerprint, String context, Dependency root, DependencySet dependencies) {
+        select(fingerprint).setProperty(rootKey(context, root), lines(dependencies));
+    }
+
+    // the exclusions of a root change its resolution but aren't part of its string
+    private static String rootKey(String context, Dependency root) {
+        var declaration = new StringBuilder(context).append('\n').append(root);
+        for (var exclusion : root.exclusions()) {
+            declaration.append('\n').append(exclusion.groupId()).append(':').append(exclusion.artifactId());
+        }
+
+        try {
+            var digest = MessageDigest.getInstance("SHA-1");
+            digest.update(declaration.toString().getBytes(StandardCharsets.UTF_8));
+            return PROPERTY_ROOT_PREFIX + StringUtils.encodeHexLower(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // should not happen
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Retrieves the repository and checksum that an artifact is locked with.
+     *
+     * @param dependency the resolved dependency of the artifact
+     * @return the locked artifact; or {@code null} when it isn't locked
+     */
+    synchronized LockedArtifact getArtifact(Dependency dependency) {
+        var properties = properties();
+        var key = PROPERTY_ARTIFACT_PREFIX + dependency;
+        var locked = properties.getProperty(key);
+        if (locked == null) {
+            locked = previousArtifacts_.remove(key);
+            if (locked != null) {
+                properties.setProperty(key, locked);
+                artifactsChanged_ = true;
+            }
+        }
+        if (locked == null) {
+            return null;
+        }
+
+        // the checksum comes last since it can't contain spaces
+        var separator = locked.lastIndexOf(' ');
+        if (separator == -1 || locked.indexOf(':', separator) == -1) {
+            // the lock was modified, the artifact will be locked again
+            return null;
+        }
+        return new LockedArtifact(locked.substring(0, separator), locked.substring(separator + 1));
+    }
+
+    /**
+     * Locks the repository and checksum of a transferred artifact, it's
+     * written when the lock is {@linkplain #save saved}.
+     *
+     * @param dependency the resolved dependency of the artifact
+     * @param repository the location of the repository that provided the artifact
+     * @param checksum   the checksum of the artifact, prefixed by its algorithm
+     */
+    synchronized void putArtifact(Dependency dependency, String repository, String checksum) {
+        properties().setProperty(PROPERTY_ARTIFACT_PREFIX + dependency, repository + " " + checksum);
+        artifactsChanged_ = true;
+    }
+
+    /**
+     * Writes the artifacts that were locked since the lock was last
+     * written, once per transfer batch.
+     */
+    synchronized void save() {
+        if (artifactsChanged_) {
+            write();
+        }
+    }
+
+    // other declarations discard the locked scopes, the roots and artifacts
+    // are kept aside until they're reused
+    private Properties select(String fingerprint) {
+        var properties = properties();
+        if (!fingerprint.equals(properties.getProperty(PROPERTY_FINGERPRINT))) {
+            for (var name : properties.stringPropertyNames()) {
+                if (name.startsWith(PROPERTY_ROOT_PREFIX)) {
+                    previousRoots_.put(name, properties.getProperty(name));
+                } else if (name.startsWith(PROPERTY_ARTIFACT_PREFIX)) {
+                    previousArtifacts_.put(name, properties.getProperty(name));
+                }
+            }
+            properties.clear();
+            properties.setProperty(PROPERTY_FINGERPRINT, fingerprint);
+        }
+        return properties;
+    }
+
+    private static DependencySet parse(String locked) {
+        if (locked == null) {
+            return null;
+        }
+
+        try {
+            var lines = locked.isEmpty() ? List.<String>of() : List.of(locked.split("\n"));
+            var dependencies = new Dependency[lines.size()];
+            var result = new DependencySet();
+            for (var i = 0; i < lines.size(); ++i) {
+                if (lines.get(i).startsWith(ANCESTOR_PREFIX)) {
+                    break;
+                }
+                result.add(dependency(lines, dependencies, i, 0));
+            }
+            return result;
+        } catch (IllegalArgumentException e) {
+            // the lock was modified, it will be recorded again
+            return null;
+        }
+    }
+
+    // parents can be stored after their children, they're created on demand
+    private static Dependency dependency(List<String> lines, Dependency[] dependencies, int index, int depth) {
+        if (dependencies[index] != null) {
+            return dependencies[index];
+        }
+        if (depth > lines.size()) {
+            throw new IllegalArgumentException("Cyclic parents in dependency lock");
+        }
+
+        var line = lines.get(index);
+        if (line.startsWith(ANCESTOR_PREFIX)) {
+            line = line.substring(ANCESTOR_PREFIX.length());
+        }
+        Dependency parent = null;
+        var separator = line.indexOf(' ');
+        if (separator != -1) {
+            parent = dependency(lines, dependencies, Integer.parseInt(line.substring(separator + 1)), depth + 1);
+            line = line.substring(0, separator);
+        }
+        var parsed = Dependency.parse(line);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Invalid dependency in dependency lock '" + line + "'");
+        }
+
+        dependencies[index] = new Dependency(parsed.groupId(), parsed.artifactId(), parsed.version(), parsed.classifier(), parsed.type(), null, parent);
+        return dependencies[index];
+    }
+
+    /**
+     * Locks the resolved dependencies of a scope and writes the lock file.
+     * <p>
+     * The scopes that were locked for another fingerprint are discarded,
+     * the roots that were locked for this fingerprint are written too.
+     *
+     * @param fingerprint  the fingerprint of the current declarations
+     * @param scope        the scope to lock the dependencies of
+     * @param dependencies the resolved dependencies of the scope
+     * @since 2.4.0
+     */
+    public synchronized void put(String fingerprint, Scope scope, DependencySet dependencies) {
+        select(fingerprint).setProperty(scope.name(), lines(dependencies));
+        write();
+    }
+
+    private void write() {
+        try {
+            PersistentArtifactCache.writeAtomically(file_.getAbsoluteFile(), store(properties()).getBytes(StandardCharsets.ISO_8859_1));
+            artifactsChanged_ = false;
+        } catch (IOException e) {
+            // no-op, the scopes will be resolved and the artifacts locked again
+        }
+    }
+
+    // unlike Properties.store, the keys are sorted and no timestamp is
+    // written, each dependency of a scope is written on its own line
+    private static String store(Properties properties) {
+        var result = new StringBuilder();
+        for (var name : new TreeSet<>(properties.stringPropertyNames())) {
+            escape(result, name, true);
+            result.append('=');
+            var value = properties.getProperty(name);
+            if (value.indexOf('\n') != -1) {
+                result.append("\\\n    ");
+            }
+            escape(result, value, false);
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    private static void escape(StringBuilder result, String text, boolean key) {
+        for (var c : text.toCharArray()) {
+            if (c == '\\') {
+                result.append("\\\\");
+            } else if (c == '\n') {
+                result.append("\\n\\\n    ");
+            } else if (key && (c == '=' || c == ':' || c == '#' || c == '!' || c == ' ')) {
+                result.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+    }
+
+    private static String lines(DependencySet dependencies) {
+        // dependencies are equal by their coordinates, like when they're merged into sets
+        var lines = new ArrayList<String>();
+        var indices = new HashMap<Dependency, Integer>();
+        var ancestors = new ArrayList<Dependency>();
+        for (var dependency : dependencies) {
+            indices.put(dependency, indices.size());
+        }
+        for (var dependency : dependencies) {
+            lines.add(line("", dependency, indices, ancestors));
+        }
+        // the ancestors list grows while the parents of the ancestors are added
+        for (var i = 0; i < ancestors.size(); ++i) {
+            lines.add(line(ANCESTOR_PREFIX, ancestors.get(i), indices, ancestors));
+        }
+        return String.join("\n", lines);
+    }
+
+    private static String line(String prefix, Dependency dependency, Map<Dependency, Integer> indices, List<Dependency> ancestors) {
+        var line = prefix + dependency;
+        var parent = dependency.parent();
+        if (parent != null) {
+            var index = indices.get(parent);
+            if (index == null) {
+                index = indices.size();
+                indices.put(parent, index);
+                ancestors.add(parent);
+            }
+            line += " " + index;
+        }
+        return line;
+    }
+
+    private Properties properties() {
+        if (properties_ == null) {
+            properties_ = new Properties();
+            if (file_.isFile()) {
+                try (var input = new FileInputStream(file_)) {
+                    properties_.load(input);
+                } catch (IOException e) {
+                    // no-op, the lock will be recorded again
+                    properties_.clear();
+                }
+            }
+        }
+        return properties_;
+    }
+}
@@ -121,35 +121,39 @@ public class DependencyResolver {
      * @since 1.5
      */
     public DependencySet getAllDependencies(Scope... scopes) {
-        var prefetcher = new PomPrefetcher(resolution_, retriever_, repositories_);
         try {
-            return getAllDependencies(prefetcher, scopes);
+            new DependencyGraphExpander(resolution_, retriever_, repositories_, null).expand(List.of(dependency_), scopes);
+            return traverseAllDependencies(null, scopes);
         } finally {
-            prefetcher.shutdown();
+            retriever_.saveLearned();
         }
     }
 
-    DependencySet getAllDependencies(PomPrefetcher prefetcher, Scope... scopes) {
+    // the sequential traversal that determines the order of the
+    // dependencies, once the graph has been expanded all the POMs
+    // it needs are already cached by the version resolution
+    DependencySet traverseAllDependencies(DependencyClosureCache closures, Scope... scopes) {
         var result = new DependencySet();
         var overridden = resolution_.overrideDeclaredDependency(dependency_);
         result.add(overridden);
 
-        var dependency_queue = new ArrayList<PomDependency>();
+        // the queue preserves the processing order, the index allows
+        // checking in constant time whether a dependency is queued
+        var dependency_queue = new ArrayDeque<PomDependency>();
+        var queued_dependencies = new HashSet<PomDependency>();
 
         var parent = overridden;
-        var next_dependencies = getMavenPom(parent).getDependencies(scopes);
+        var next_dependencies = getPomDependencies(closures, parent, scopes);
 
         while (parent != null && next_dependencies != null) {
             // remove any next dependencies that are already queued
-            dependency_queue.forEach(next_dependencies::remove);
+            next_dependencies.removeIf(queued_dependencies::contains);
             // remove any next dependencies that match the current exclusion context
             final var exclusion_context = parent;
             next_dependencies.removeIf(it -> matchesExclusions(exclusion_context, it));
             // add all next dependencies to the queue
             dependency_queue.addAll(next_dependencies);
-            // speculatively retrieve the POMs of the queued dependencies in
-            // parallel so that they are cached when they're processed in order
-            prefetcher.prefetch(next_dependencies);
+            queued_dependencies.addAll(next_dependencies);
 
             // unless we find the next set of dependencies to add, stop resolving
             parent = null;
@@ -158,7 +162,8 @@ public class DependencyResolver {
             // iterate through the dependency queue until we find one that isn't
             // part of the results yet
             while (!dependency_queue.isEmpty()) {
-                var candidate = dependency_queue.remove(0);
+                var candidate = dependency_queue.removeFirst();
+                queued_dependencies.remove(candidate);
                 var dependency = resolution_.overrideTransitiveDependency(candidate.convertToDependency());
                 if (!result.contains(dependency)) {
                     result.add(dependency);
@@ -167,7 +172,7 @@ public class DependencyResolver {
                     // dependencies so that they can be added to the queue after
                     // filtering
                     parent = dependency;
-                    next_dependencies = new DependencyResolver(resolution_, retriever_, repositories_, dependency).getMavenPom(parent).getDependencies(scopes);
+                    next_dependencies = new DependencyResolver(resolution_, retriever_, repositories_, dependency).getPomDependencies(closures, parent, scopes);
                     break;
                 }
             }
@@ -175,7 +180,7 @@ public class DependencyResolver {
         return result;
     }
 
-    private boolean matchesExclusions(Dependency context, PomDependency checked) {
+    boolean matchesExclusions(Dependency context, PomDependency checked) {
         while (context != null) {
             if (context.exclusions() != null) {
                 for (var exclusion : context.exclusions()) {
@@ -243,12 +248,44 @@ public class DependencyResolver {
      */
     public RepositoryArtifact transferIntoDirectory(File directory)
     throws DependencyTransferException {
+        try {
+            return transferArtifactIntoDirectory(directory);
+        } finally {
+            retriever_.saveLearned();
+        }
+    }
+
+    // transfer batches save what was learned once all of them were transferred
+    RepositoryArtifact transferArtifactIntoDirectory(File directory)
+    throws DependencyTransferException {
+        return transferArtifactIntoDirectory(directory, null);
+    }
+
+    // the released artifacts that are locked are transferred from the repository
+    // they're locked with first, and verified against their locked checksum
+    RepositoryArtifact transferArtifactIntoDirectory(File directory, DependencyLock lock)
+    throws DependencyTransferException {
+        DependencyLock.LockedArtifact locked = null;
+        Dependency locked_dependency = null;
+        if (lock != null && !resolveVersion().isSnapshot()) {
+            locked_dependency = new Dependency(dependency_.groupId(), dependency_.artifactId(), resolveVersion(), dependency_.classifier(), dependency_.type());
+            locked = lock.getArtifact(locked_dependency);
+        }
+
         DependencyTransferException transient_failure = null;
-        for (var artifact : getTransferArtifacts()) {
+        var missed = new ArrayList<Repository>();
+        for (var artifact : orderLocked(routeReleased(getTransferArtifacts()), locked)) {
             try {
-                if (retriever_.transferIntoDirectory(artifact, directory)) {
+                var checksum = retriever_.transferVerifiedIntoDirectory(artifact, directory, resolution_, locked == null ? null : locked.checksum());
+                if (checksum != null) {
+                    retriever_.routed(dependency_.groupId(), artifact.repository(), missed, repositories_);
+                    if (locked_dependency != null && !artifact.repository().isLocal() && !checksum.isEmpty() &&
+                        (locked == null || !locked.repository().equals(artifact.repository().location()))) {
+                        lock.putArtifact(locked_dependency, artifact.repository().location(), locked == null ? checksum : locked.checksum());
+                    }
                     return artifact;
                 }
+                missed.add(artifact.repository());
             } catch (IOException e) {
                 // a transient issue with this repository, try the next one
                 // before giving up
@@ -264,6 +301,20 @@ public class DependencyResolver {
         return null;
     }
 
+    private static List<RepositoryArtifact> orderLocked(List<RepositoryArtifact> artifacts, DependencyLock.LockedArtifact locked) {
+        if (locked == null) {
+            return artifacts;
+        }
+        for (var i = 0; i < artifacts.size(); ++i) {
+            if (artifacts.get(i).repository().location().equals(locked.repository())) {
+                var result = new ArrayList<>(artifacts);
+                result.add(0, result.remove(i));
+                return result;
+            }
+        }
+        return artifacts;
+    }
+
     /**
      * Retrieve the repositories that are used by this dependency resolver.
      *
@@ -394,11 +445,17 @@ public class DependencyResolver {
 
     private RetrievedArtifact retrieveFirstAvailable(List<RepositoryArtifact> artifacts, String locationsDescription) {
         ArtifactRetrievalErrorException transient_failure = null;
-        for (var artifact : artifacts) {
+        var probes = new RepositoryProbes(resolution_, artifacts, retriever_::readString);
+        var missed = new ArrayList<Repository>();
+        for (var i = 0; i < artifacts.size(); ++i) {
+            var artifact = artifacts.get(i);
             try {
-                return new RetrievedArtifact(artifact, retriever_.readString(artifact));
+                var content = probes.retrieve(i);
+                retriever_.routed(dependency_.groupId(), artifact.repository(), missed, repositories_);
+                return new RetrievedArtifact(artifact, content);
             } catch (FileUtilsErrorException e) {
                 if (e.getCause() instanceof FileNotFoundException) {
+                    missed.add(artifact.repository());
                     continue;
                 }
                 // a transient issue with this repository, try the next one
@@ -425,6 +482,15 @@ public class DependencyResolver {
         throw new ArtifactNotFoundException(dependency_, location);
     }
 
+    // the repository that is known to serve the groupId prefix of released
+    // artifacts is probed first, the others keep their declared order
+    private List<RepositoryArtifact> routeReleased(List<RepositoryArtifact> artifacts) {
+        if (resolveVersion().isSnapshot()) {
+            return artifacts;
+        }
+        return retriever_.route(dependency_.groupId(), artifacts);
+    }
+
     private static <T extends Throwable> T rememberFailure(T remembered, T failure) {
         if (remembered == null) {
             return failure;
@@ -446,15 +512,24 @@ public class DependencyResolver {
         return getArtifactLocations().stream().map(a -> a.appendPath(version + "/" + dependency_.artifactId() + "-" + pom_version + ".pom")).toList();
     }
 
+    // with a closure cache, the dependencies that a POM declares are only
+    // expanded once for all the paths that lead to it, the exclusions of
+    // each path are still applied by the traversal
+    Set<PomDependency> getPomDependencies(DependencyClosureCache closures, Dependency parent, Scope... scopes) {
+        if (closures == null || scopes == null || scopes.length == 0) {
+            return getMavenPom(parent).getDependencies(scopes);
+        }
+        return closures.children(resolution_, repositories_, dependency_, parent, scopes, () -> getMavenPom(parent).getDependencies(scopes));
+    }
+
     Xml2MavenPom getMavenPom(Dependency parent) {
-        var retrieved = retrieveFirstAvailable(getPomLocations(), "pom locations");
+        return resolution_.pomCache().get(dependency_, resolveVersion(), repositories_, parent, () -> parseMavenPom(parent));
+    }
+
+    private Xml2MavenPom parseMavenPom(Dependency parent) {
+        var retrieved = retrieveFirstAvailable(routeReleased(getPomLocations()), "pom locations");
 
         var xml = new Xml2MavenPom(parent, resolution_, retriever_, repositories_);
-        // first pass only extracts the properties from the pom
-        if (!xml.processXml(retrieved.content())) {
-            throw new DependencyXmlParsingErrorException(dependency_, retrieved.artifact().location(), xml.getErrors());
-        }
-        // second pass parses all the rest so that the properties are available anywhere
         if (!xml.processXml(retrieved.content())) {
             throw new DependencyXmlParsingErrorException(dependency_, retrieved.artifact().location(), xml.getErrors());
         }
@@ -5,8 +5,14 @@
 package rife.bld.dependencies;
 
 import rife.ioc.HierarchicalProperties;
+import rife.tools.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -212,6 +218,56 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
         return result;
     }
 
+    /**
+     * Calculates the fingerprint of the declarations that determine the
+     * resolution of these dependency scopes.
+     * <p>
+     * This covers the version overrides, the repositories, and the BOMs
+     * and dependencies of each scope, including the exclusions of the
+     * dependencies.
+     *
+     * @param resolution   the version resolution with the version overrides
+     * @param repositories the repositories that are used for the resolution
+     * @return the hexadecimal SHA-1 fingerprint of the declarations
+     * @since 2.4.0
+     */
+    public String fingerprint(VersionResolution resolution, List<Repository> repositories) {
+        var finger_print = new StringBuilder();
+        finger_print.append(String.join("\n", resolution.versionOverrides().entrySet().stream().map(e -> e.getKey() + ":" + e.getValue()).toList()));
+        for (var repository : repositories) {
+            finger_print.append(repository.toString());
+            finger_print.append('\n');
+        }
+        for (var entry : entrySet()) {
+            finger_print.append(entry.getKey());
+            finger_print.append('\n');
+            if (entry.getValue() != null) {
+                for (var bom : entry.getValue().boms()) {
+                    finger_print.append(bom.toString());
+                    finger_print.append('\n');
+                }
+                for (var dependency : entry.getValue()) {
+                    finger_print.append(dependency.toString());
+                    finger_print.append('\n');
+                    // the exclusions change the resolution but aren't part of the string
+                    for (var exclusion : dependency.exclusions()) {
+                        finger_print.append(exclusion.groupId()).append(':').append(exclusion.artifactId());
+                        finger_print.append('\n');
+                    }
+                }
+            }
+        }
+
+        try {
+            var digest = MessageDigest.getInstance("SHA-1");
+            digest.update(finger_print.toString().getBytes(StandardCharsets.UTF_8));
+            return StringUtils.encodeHexLower(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // should not happen
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Returns the transitive set of dependencies that would be used for the compile scope in a project.
      *
@@ -222,7 +278,24 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
      * @since 2.0
      */
     public DependencySet resolveCompileDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories) {
-        return resolveScopedDependencies(properties, retriever, repositories,
+        return resolveCompileDependencies(properties, retriever, repositories, null);
+    }
+
+    /**
+     * Returns the transitive set of dependencies that would be used for the compile scope in a project,
+     * using the dependencies that are locked for the current declarations when available.
+     * <p>
+     * Otherwise, the dependencies are resolved and locked for the current declarations.
+     *
+     * @param properties   the properties to use to get artifacts
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the resolution
+     * @param lock         the dependency lock to use; or {@code null} to always resolve the dependencies
+     * @return the compile scope dependency set
+     * @since 2.4.0
+     */
+    public DependencySet resolveCompileDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        return resolveScopedDependencies(properties, retriever, repositories, lock,
             Scope.compile,
             new Scope[]{Scope.compile},
             new Scope[]{Scope.compile},
@@ -239,7 +312,24 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
      * @since 2.0
      */
     public DependencySet resolveProvidedDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories) {
-        return resolveScopedDependencies(properties, retriever, repositories,
+        return resolveProvidedDependencies(properties, retriever, repositories, null);
+    }
+
+    /**
+     * Returns the transitive set of dependencies that would be used for the provided scope in a project,
+     * using the dependencies that are locked for the current declarations when available.
+     * <p>
+     * Otherwise, the dependencies are resolved and locked for the current declarations.
+     *
+     * @param properties   the properties to use to get artifacts
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the resolution
+     * @param lock         the dependency lock to use; or {@code null} to always resolve the dependencies
+     * @return the provided scope dependency set
+     * @since 2.4.0
+     */
+    public DependencySet resolveProvidedDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        return resolveScopedDependencies(properties, retriever, repositories, lock,
             Scope.provided,
             new Scope[]{Scope.provided},
             new Scope[]{Scope.compile, Scope.runtime},
@@ -256,11 +346,28 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
      * @since 2.0
      */
     public DependencySet resolveRuntimeDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories) {
-        return resolveScopedDependencies(properties, retriever, repositories,
+        return resolveRuntimeDependencies(properties, retriever, repositories, null);
+    }
+
+    /**
+     * Returns the transitive set of dependencies that would be used for the runtime scope in a project,
+     * using the dependencies that are locked for the current declarations when available.
+     * <p>
+     * Otherwise, the dependencies are resolved and locked for the current declarations.
+     *
+     * @param properties   the properties to use to get artifacts
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the resolution
+     * @param lock         the dependency lock to use; or {@code null} to always resolve the dependencies
+     * @return the runtime scope dependency set
+     * @since 2.4.0
+     */
+    public DependencySet resolveRuntimeDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        return resolveScopedDependencies(properties, retriever, repositories, lock,
             Scope.runtime,
             new Scope[]{Scope.compile, Scope.runtime},
             new Scope[]{Scope.compile, Scope.runtime},
-            resolveCompileDependencies(properties, retriever, repositories));
+            resolveCompileDependencies(properties, retriever, repositories, lock));
     }
 
     /**
@@ -273,7 +380,24 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
      * @since 2.0
      */
     public DependencySet resolveStandaloneDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories) {
-        return resolveScopedDependencies(properties, retriever, repositories,
+        return resolveStandaloneDependencies(properties, retriever, repositories, null);
+    }
+
+    /**
+     * Returns the transitive set of dependencies that would be used for the standalone scope in a project,
+     * using the dependencies that are locked for the current declarations when available.
+     * <p>
+     * Otherwise, the dependencies are resolved and locked for the current declarations.
+     *
+     * @param properties   the properties to use to get artifacts
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the resolution
+     * @param lock         the dependency lock to use; or {@code null} to always resolve the dependencies
+     * @return the standalone scope dependency set
+     * @since 2.4.0
+     */
+    public DependencySet resolveStandaloneDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        return resolveScopedDependencies(properties, retriever, repositories, lock,
             Scope.standalone,
             new Scope[]{Scope.standalone},
             new Scope[]{Scope.compile, Scope.runtime},
@@ -290,14 +414,31 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
      * @since 2.0
      */
     public DependencySet resolveTestDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories) {
-        return resolveScopedDependencies(properties, retriever, repositories,
+        return resolveTestDependencies(properties, retriever, repositories, null);
+    }
+
+    /**
+     * Returns the transitive set of dependencies that would be used for the test scope in a project,
+     * using the dependencies that are locked for the current declarations when available.
+     * <p>
+     * Otherwise, the dependencies are resolved and locked for the current declarations.
+     *
+     * @param properties   the properties to use to get artifacts
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the resolution
+     * @param lock         the dependency lock to use; or {@code null} to always resolve the dependencies
+     * @return the test scope dependency set
+     * @since 2.4.0
+     */
+    public DependencySet resolveTestDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        return resolveScopedDependencies(properties, retriever, repositories, lock,
             Scope.test,
             new Scope[]{Scope.test},
             new Scope[]{Scope.compile, Scope.runtime},
             null);
     }
 
-    private DependencySet resolveScopedDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, Scope scope, Scope[] resolvedScopes, Scope[] transitiveScopes, DependencySet excluded) {
+    private DependencySet resolveScopedDependencies(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock, Scope scope, Scope[] resolvedScopes, Scope[] transitiveScopes, DependencySet excluded) {
         var roots = new ArrayList<Dependency>();
         for (var resolved_scope : resolvedScopes) {
             var scoped_dependencies = get(resolved_scope);
@@ -305,11 +446,91 @@ public class DependencyScopes extends LinkedHashMap<Scope, DependencySet> {
                 roots.addAll(scoped_dependencies);
             }
         }
-        var resolution = new VersionResolution(properties, retriever, repositories, effectiveBoms(scope));
-        var dependencies = new ParallelDependencyResolver(resolution, retriever, repositories).resolveAllDependencies(roots, transitiveScopes);
-        if (excluded != null) {
-            dependencies.removeAll(excluded);
+
+        if (lock == null) {
+            var resolution = new VersionResolution(properties, retriever, repositories, effectiveBoms(scope));
+            var dependencies = new ParallelDependencyResolver(resolution, retriever, repositories).resolveAllDependencies(roots, transitiveScopes);
+            if (excluded != null) {
+                dependencies.removeAll(excluded);
+            }
+            return dependencies;
         }
-        return dependencies;
+
+        // the lock is checked before the BOMs are resolved
+        var fingerprint = fingerprint(new VersionResolution(properties), repositories);
+        var dependencies = lock.get(fingerprint, scope);
+        if (dependencies == null) {
+            dependencies = resolveChangedRoots(properties, retriever, repositories, lock, fingerprint, scope, roots, transitiveScopes);
+            if (excluded != null) {
+                dependencies.removeAll(excluded);
+            }
+            lock.put(fingerprint, scope, dependencies);
+        }
+
+        return withDeclaredRoots(dependencies, roots);
+    }
+
+    // the exclusions of the roots and the classifiers that are excluded
+    // from the downloads aren't locked, the locked roots are replaced by
+    // copies that have them, since the locked dependencies can be shared
+    // with the closures that the retriever caches
+    private static DependencySet withDeclaredRoots(DependencySet dependencies, List<Dependency> roots) {
+        var declared = new HashMap<Dependency, Dependency>();
+        for (var root : roots) {
+            declared.putIfAbsent(root, root);
+        }
+
+        var result = new DependencySet();
+        for (var dependency : dependencies) {
+            var root = declared.get(dependency);
+            if (root != null) {
+                var copy = new Dependency(dependency.groupId(), dependency.artifactId(), dependency.version(),
+                    dependency.classifier(), dependency.type(), root.exclusions(), dependency.parent());
+                copy.excludedClassifiers().addAll(root.excludedClassifiers());
+                dependency = copy;
+            }
+            result.add(dependency);
+        }
+        return result;
+    }
+
+    // only the roots whose declaration or resolution context changed are resolved,
+    // the merge of the dependencies of all the roots is identical to resolving them
+    // together since each root is resolved independently of the others
+    private DependencySet resolveChangedRoots(HierarchicalProperties properties, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock, String fingerprint, Scope scope, List<Dependency> roots, Scope[] transitiveScopes) {
+        var context = new StringBuilder();
+        var overrides = new VersionResolution(properties).versionOverrides();
+        overrides.forEach((artifact, version) -> context.append(artifact).append(':').append(version).append('\n'));
+        repositories.forEach(repository -> context.append(repository).append('\n'));
+        effectiveBoms(scope).forEach(bom -> context.append(bom).append('\n'));
+        context.append(Arrays.toString(transitiveScopes));
+
+        var root_dependencies = new ArrayList<DependencySet>(roots.size());
+        var changed_roots = new ArrayList<Dependency>();
+        for (var root : roots) {
+            var locked = lock.getRoot(fingerprint, context.toString(), root);
+            root_dependencies.add(locked);
+            if (locked == null) {
+                changed_roots.add(root);
+            }
+        }
+
+        if (!changed_roots.isEmpty()) {
+            var resolution = new VersionResolution(properties, retriever, repositories, effectiveBoms(scope));
+            var resolved = new ParallelDependencyResolver(resolution, retriever, repositories).resolveEachDependency(changed_roots, transitiveScopes).iterator();
+            for (var i = 0; i < roots.size(); ++i) {
+                if (root_dependencies.get(i) == null) {
+                    var dependencies = resolved.next();
+                    lock.putRoot(fingerprint, context.toString(), roots.get(i), dependencies);
+                    root_dependencies.set(i, dependencies);
+                }
+            }
+        }
+
+        var result = new DependencySet();
+        for (var dependencies : root_dependencies) {
+            result.addAll(dependencies);
+        }
+        return result;
     }
 }
@@ -315,6 +315,10 @@ public class DependencySet extends AbstractSet<Dependency> implements Set<Depend
         return false;
     }
 
+    public boolean contains(Object o) {
+        return dependencies_.containsKey(o);
+    }
+
     public Iterator<Dependency> iterator() {
         return dependencies_.keySet().iterator();
     }
@@ -7,10 +7,17 @@ package rife.bld.dependencies;
 import rife.bld.dependencies.exceptions.DependencyTransferException;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 /**
@@ -23,6 +30,17 @@ import java.util.function.Supplier;
  * parallelism is determined by {@link VersionResolution#transferParallelism()},
  * setting it to {@code 1} makes the transfers sequential. Identical
  * transfers into the same directory are only performed once.
+ * <p>
+ * A batch can also be {@linkplain #start started} before all the transfers
+ * are added, each transfer is then performed as soon as it's added. This
+ * allows the transfers of one dependency set to proceed while the next one
+ * is still being resolved. A started batch is finished with
+ * {@link #transfer()}, in the context that it was started with.
+ * <p>
+ * When a {@link DependencyLock} is provided, the released artifacts are
+ * transferred from the repository they're locked with and verified against
+ * their locked checksum, the artifacts that aren't locked yet are locked
+ * once the batch is transferred.
  *
  * @author Geert Bevin (gbevin[remove] at uwyn dot com)
  * @since 2.4.0
@@ -33,6 +51,127 @@ public class DependencyTransferBatch {
 
     private final List<TransferRequest> requests_ = new ArrayList<>();
     private final Set<String> transferTargets_ = new HashSet<>();
+    private final List<Future<List<RepositoryArtifact>>> started_ = new ArrayList<>();
+    private TransferWorkers running_ = null;
+    private VersionResolution resolution_ = null;
+    private ArtifactRetriever retriever_ = null;
+    private List<Repository> repositories_ = null;
+    private DependencyLock lock_ = null;
+
+    /**
+     * Starts performing the transfers of this batch as soon as they're
+     * added, including the ones that were already added.
+     * <p>
+     * The results are obtained through {@link #transfer()}, which waits
+     * for all the started transfers to finish. When they're not needed
+     * anymore, {@link #cancel} stops the transfers that didn't start yet.
+     *
+     * @param resolution   the version resolution state that can be cached
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the transfer
+     * @return this batch instance
+     * @since 2.4.0
+     */
+    public DependencyTransferBatch start(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories) {
+        return start(resolution, retriever, repositories, null);
+    }
+
+    /**
+     * Starts performing the transfers of this batch as soon as they're
+     * added, verifying the artifacts against a dependency lock.
+     *
+     * @param resolution   the version resolution state that can be cached
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the transfer
+     * @param lock         the dependency lock to verify and lock the artifacts with; or
+     *                     {@code null} to verify them against the checksums of their repository
+     * @return this batch instance
+     * @see #start(VersionResolution, ArtifactRetriever, List)
+     * @since 2.4.0
+     */
+    public DependencyTransferBatch start(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        if (running_ != null) {
+            return this;
+        }
+
+        resolution_ = resolution;
+        retriever_ = retriever;
+        repositories_ = (repositories == null ? List.of() : List.copyOf(repositories));
+        lock_ = lock;
+        running_ = new TransferWorkers(Math.max(1, resolution.transferParallelism()));
+        for (var request : requests_) {
+            startTransfer(request);
+        }
+        return this;
+    }
+
+    private void startTransfer(TransferRequest request) {
+        started_.add(running_.submit(createTransfer(request, resolution_, retriever_, repositories_, lock_)));
+    }
+
+    // runs the started transfers on the shared executor with at most as
+    // many workers as the transfer parallelism, the workers take the
+    // transfers from a queue in the order they were added and stop when
+    // it's empty
+    private static final class TransferWorkers {
+        private final int parallelism_;
+        private final Deque<FutureTask<List<RepositoryArtifact>>> queue_ = new ArrayDeque<>();
+        private final ReentrantLock lock_ = new ReentrantLock();
+        private final Condition stopped_ = lock_.newCondition();
+        private int workers_ = 0;
+
+        TransferWorkers(int parallelism) {
+            parallelism_ = parallelism;
+        }
+
+        Future<List<RepositoryArtifact>> submit(Supplier<List<RepositoryArtifact>> transfer) {
+            var task = new FutureTask<>(transfer::get);
+            lock_.lock();
+            try {
+                queue_.add(task);
+                if (workers_ < parallelism_) {
+                    workers_ += 1;
+                    ParallelExecution.executor().execute(this::work);
+                }
+            } finally {
+                lock_.unlock();
+            }
+            return task;
+        }
+
+        // removes the transfers that didn't start yet and waits for the
+        // ones that are under way, a cancelled task reports that it's done
+        // while it can still be writing its artifact
+        void clearAndAwait() {
+            lock_.lock();
+            try {
+                queue_.clear();
+                while (workers_ > 0) {
+                    stopped_.awaitUninterruptibly();
+                }
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        private void work() {
+            while (true) {
+                FutureTask<List<RepositoryArtifact>> task;
+                lock_.lock();
+                try {
+                    task = queue_.poll();
+                    if (task == null) {
+                        workers_ -= 1;
+                        stopped_.signalAll();
+                        return;
+                    }
+                } finally {
+                    lock_.unlock();
+                }
+                task.run();
+            }
+        }
+    }
 
     /**
      * Adds the artifact transfers for a dependency set to this batch.
@@ -71,11 +210,47 @@ public class DependencyTransferBatch {
                 continue;
             }
 
-            requests_.add(new TransferRequest(dependency, transfer_directory, classifiers));
+            var request = new TransferRequest(dependency, transfer_directory, classifiers);
+            requests_.add(request);
+            if (running_ != null) {
+                startTransfer(request);
+            }
         }
         return this;
     }
 
+    /**
+     * Waits for all the transfers of a {@linkplain #start started} batch to
+     * finish, they're performed with the resolution context that the batch
+     * was started with.
+     * <p>
+     * This empties the batch, transfers can be collected and transferred
+     * again with the same instance.
+     *
+     * @return the list of artifacts that were transferred successfully, in
+     * the order they were added
+     * @throws DependencyTransferException when an error occurred during the transfer
+     * @throws IllegalStateException when the batch wasn't started
+     * @since 2.4.0
+     */
+    public List<RepositoryArtifact> transfer() {
+        if (running_ == null) {
+            throw new IllegalStateException("The transfer batch wasn't started");
+        }
+
+        var retriever = retriever_;
+        var lock = lock_;
+        try {
+            var result = new ArrayList<RepositoryArtifact>();
+            for (var transfer : started_) {
+                result.addAll(await(transfer));
+            }
+            return result;
+        } finally {
+            finish(retriever, lock);
+        }
+    }
+
     /**
      * Performs all the collected artifact transfers in a single parallel
      * batch, in the order they were added.
@@ -88,42 +263,135 @@ public class DependencyTransferBatch {
      * @param repositories the repositories to use for the transfer
      * @return the list of artifacts that were transferred successfully
      * @throws DependencyTransferException when an error occurred during the transfer
+     * @throws IllegalStateException when the batch was started, use {@link #transfer()} instead
      * @since 2.4.0
      */
     public List<RepositoryArtifact> transfer(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories) {
-        final var repos = (repositories == null ? List.<Repository>of() : repositories);
+        return transfer(resolution, retriever, repositories, null);
+    }
+
+    /**
+     * Performs all the collected artifact transfers in a single parallel
+     * batch, verifying the artifacts against a dependency lock.
+     *
+     * @param resolution   the version resolution state that can be cached
+     * @param retriever    the retriever to use to get artifacts
+     * @param repositories the repositories to use for the transfer
+     * @param lock         the dependency lock to verify and lock the artifacts with; or
+     *                     {@code null} to verify them against the checksums of their repository
+     * @return the list of artifacts that were transferred successfully
+     * @throws DependencyTransferException when an error occurred during the transfer
+     * @throws IllegalStateException when the batch was started, use {@link #transfer()} instead
+     * @see #transfer(VersionResolution, ArtifactRetriever, List)
+     * @since 2.4.0
+     */
+    public List<RepositoryArtifact> transfer(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        // a started batch already performs its transfers in the context it was started with
+        if (running_ != null) {
+            throw new IllegalStateException("The transfer batch was started, its transfers are finished with transfer()");
+        }
+
         try {
+            var result = new ArrayList<RepositoryArtifact>();
+            final var repos = (repositories == null ? List.<Repository>of() : repositories);
             var transfers = new ArrayList<Supplier<List<RepositoryArtifact>>>(requests_.size());
             for (var request : requests_) {
-                transfers.add(() -> {
-                    var artifacts = new ArrayList<RepositoryArtifact>();
-                    var artifact = new DependencyResolver(resolution, retriever, repos, request.dependency()).transferIntoDirectory(request.directory());
-                    if (artifact != null) {
-                        artifacts.add(artifact);
-                    }
-
-                    if (request.classifiers() != null) {
-                        for (var classifier : request.classifiers()) {
-                            if (classifier != null && !request.dependency().excludedClassifiers().contains(classifier)) {
-                                var classifier_artifact = new DependencyResolver(resolution, retriever, repos, request.dependency().withClassifier(classifier)).transferIntoDirectory(request.directory());
-                                if (classifier_artifact != null) {
-                                    artifacts.add(classifier_artifact);
-                                }
-                            }
-                        }
-                    }
-                    return artifacts;
-                });
+                transfers.add(createTransfer(request, resolution, retriever, repos, lock));
             }
-
-            var result = new ArrayList<RepositoryArtifact>();
             for (var artifacts : ParallelExecution.execute(transfers, resolution.transferParallelism())) {
                 result.addAll(artifacts);
             }
             return result;
         } finally {
-            requests_.clear();
-            transferTargets_.clear();
+            finish(retriever, lock);
+        }
+    }
+
+    // the learned routes and checksums and the lock are only saved once
+    // no transfer can still be adding to them
+    private void finish(ArtifactRetriever retriever, DependencyLock lock) {
+        cancel();
+        if (retriever != null) {
+            retriever.saveLearned();
+        }
+        if (lock != null) {
+            lock.save();
+        }
+    }
+
+    /**
+     * Indicates whether this batch was {@linkplain #start started} and
+     * performs its transfers as soon as they're added.
+     *
+     * @return {@code true} when the batch was started; or
+     * {@code false} otherwise
+     * @since 2.4.0
+     */
+    public boolean isStarted() {
+        return running_ != null;
+    }
+
+    /**
+     * Empties this batch without performing the transfers that didn't
+     * start yet, when it was {@linkplain #start started} the transfers that
+     * are under way are interrupted and this waits for them to stop.
+     *
+     * @since 2.4.0
+     */
+    public void cancel() {
+        if (running_ != null) {
+            for (var transfer : started_) {
+                transfer.cancel(true);
+            }
+            running_.clearAndAwait();
+            running_ = null;
+            resolution_ = null;
+            retriever_ = null;
+            repositories_ = null;
+            lock_ = null;
+        }
+        started_.clear();
+        requests_.clear();
+        transferTargets_.clear();
+    }
+
+    private static Supplier<List<RepositoryArtifact>> createTransfer(TransferRequest request, VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, DependencyLock lock) {
+        return () -> {
+            var artifacts = new ArrayList<RepositoryArtifact>();
+            var artifact = new DependencyResolver(resolution, retriever, repositories, request.dependency()).transferArtifactIntoDirectory(request.directory(), lock);
+            if (artifact != null) {
+                artifacts.add(artifact);
+            }
+
+            if (request.classifiers() != null) {
+                for (var classifier : request.classifiers()) {
+                    if (classifier != null && !request.dependency().excludedClassifiers().contains(classifier)) {
+                        var classifier_artifact = new DependencyResolver(resolution, retriever, repositories, request.dependency().withClassifier(classifier)).transferArtifactIntoDirectory(request.directory(), lock);
+                        if (classifier_artifact != null) {
+                            artifacts.add(classifier_artifact);
+                        }
+                    }
+                }
+            }
+            return artifacts;
+        };
+    }
+
+    // rethrows the failure of a started transfer like a sequential transfer would
+    private static List<RepositoryArtifact> await(Future<List<RepositoryArtifact>> transfer) {
+        try {
+            return transfer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transfers were interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
         }
     }
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import rife.bld.BldVersion;
+import rife.tools.HttpUtils;
+import rife.tools.Product;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Serial;
+import java.net.Authenticator;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
+
+import static rife.tools.HttpUtils.HEADER_AUTHORIZATION;
+import static rife.tools.HttpUtils.basicAuthorizationHeader;
+
+/**
+ * Performs the HTTP requests of the artifact retriever through a single
+ * shared {@code HttpClient}.
+ * <p>
+ * The client pools its connections and keeps them alive across all the
+ * requests of a build, which avoids paying for a new connection and TLS
+ * handshake for every POM, checksum and artifact. HTTPS repositories
+ * that support it multiplex the requests over HTTP/2.
+ * <p>
+ * Responses are mapped to the same exceptions as {@code URLConnection}
+ * throws, a missing artifact results in a {@code FileNotFoundException}
+ * while any other unsuccessful response results in an {@code IOException}.
+ * Responses that indicate that the repository is throttling the requests
+ * result in a {@link ThrottledException} with the delay that the
+ * repository asked for.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+final class HttpTransport {
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final int STATUS_PARTIAL_CONTENT = 206;
+    private static final int STATUS_NOT_MODIFIED = 304;
+    private static final int STATUS_RANGE_NOT_SATISFIABLE = 416;
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+    private static final long DEFAULT_RETRY_AFTER = 1000;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private HttpTransport() {
+    }
+
+    private static class ClientHolder {
+        static final HttpClient CLIENT = createClient();
+
+        private static HttpClient createClient() {
+            var builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .proxy(ProxySelector.getDefault());
+            var authenticator = Authenticator.getDefault();
+            if (authenticator != null) {
+                builder.authenticator(authenticator);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * The content of an artifact as a stream, starting at the offset. The
+     * content length is the length of the complete artifact, or {@code -1}
+     * when it's not known.
+     */
+    record Response(InputStream body, long contentLength, long offset, boolean acceptsRanges) {
+    }
+
+    /**
+     * Indicates that the repository throttled a request, it can be retried
+     * after the delay in milliseconds.
+     */
+    static class ThrottledException extends IOException {
+        @Serial private static final long serialVersionUID = -4391754021875839126L;
+
+        private final long retryAfter_;
+
+        ThrottledException(String message, long retryAfter) {
+            super(message);
+            retryAfter_ = retryAfter;
+        }
+
+        long retryAfter() {
+            return retryAfter_;
+        }
+    }
+
+    /**
+     * The string content of an artifact with the validators that allow it
+     * to be retrieved conditionally later, the body is {@code null} when
+     * the artifact wasn't modified.
+     */
+    record Content(String body, String etag, String lastModified) {
+        boolean isNotModified() {
+            return body == null;
+        }
+    }
+
+    static String readString(RepositoryArtifact artifact)
+    throws IOException {
+        return readString(artifact, null).body();
+    }
+
+    static Content readString(RepositoryArtifact artifact, Content previous)
+    throws IOException {
+        var response = send(artifact, previous, 0, -1, HttpResponse.BodyHandlers.ofByteArray());
+        var etag = response.headers().firstValue(HEADER_ETAG).orElse(null);
+        var last_modified = response.headers().firstValue(HEADER_LAST_MODIFIED).orElse(null);
+        if (response.statusCode() == STATUS_NOT_MODIFIED) {
+            return new Content(null,
+                etag != null ? etag : previous.etag(),
+                last_modified != null ? last_modified : previous.lastModified());
+        }
+        return new Content(new String(response.body(), StandardCharsets.UTF_8), etag, last_modified);
+    }
+
+    static Response open(RepositoryArtifact artifact)
+    throws IOException {
+        return open(artifact, 0, -1);
+    }
+
+    /**
+     * Opens the content of an artifact from an offset up to and including
+     * the last position, or to the end when it's {@code -1}. When the server
+     * doesn't support ranges the response starts at the beginning.
+     */
+    static Response open(RepositoryArtifact artifact, long offset, long last)
+    throws IOException {
+        var response = send(artifact, null, offset, last, HttpResponse.BodyHandlers.ofInputStream());
+        var length = response.headers().firstValueAsLong(HEADER_CONTENT_LENGTH).orElse(-1);
+        var accepts_ranges = response.headers().firstValue(HEADER_ACCEPT_RANGES).orElse("").equalsIgnoreCase("bytes");
+        if (response.statusCode() == STATUS_RANGE_NOT_SATISFIABLE) {
+            // the offset is beyond the content, it can only be retrieved completely
+            response.body().close();
+            return open(artifact, 0, -1);
+        }
+        if (response.statusCode() != STATUS_PARTIAL_CONTENT) {
+            return new Response(response.body(), length, 0, accepts_ranges);
+        }
+
+        // Content-Range: bytes <first>-<last>/<complete length or *>
+        var range = response.headers().firstValue(HEADER_CONTENT_RANGE).orElse("");
+        var matcher = CONTENT_RANGE.matcher(range);
+        if (!matcher.matches()) {
+            response.body().close();
+            throw new IOException("Invalid content range '" + range + "' for URL: " + artifact.location());
+        }
+        var first = Long.parseLong(matcher.group(1));
+        var total = matcher.group(3).equals("*") ? (length < 0 ? -1 : first + length) : Long.parseLong(matcher.group(3));
+        return new Response(response.body(), total, first, true);
+    }
+
+    private static <T> HttpResponse<T> send(RepositoryArtifact artifact, Content previous, long offset, long last, HttpResponse.BodyHandler<T> handler)
+    throws IOException {
+        URI uri;
+        HttpRequest.Builder request;
+        try {
+            uri = URI.create(artifact.location());
+            request = HttpRequest.newBuilder(uri);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL '" + artifact.location() + "'", e);
+        }
+        request.header(HttpUtils.HEADER_USER_AGENT, Product.BLD.toUserAgent(BldVersion.getVersion()));
+        // plain HTTP repositories are rarely set up for HTTP/2 upgrades
+        if (!"https".equalsIgnoreCase(uri.getScheme())) {
+            request.version(HttpClient.Version.HTTP_1_1);
+        }
+        if (artifact.repository().username() != null && artifact.repository().password() != null) {
+            request.header(HEADER_AUTHORIZATION,
+                basicAuthorizationHeader(artifact.repository().username(), artifact.repository().password()));
+        }
+        if (offset > 0 || last >= 0) {
+            request.header(HEADER_RANGE, "bytes=" + offset + "-" + (last >= 0 ? last : ""));
+        }
+        if (previous != null) {
+            if (previous.etag() != null) {
+                request.header(HEADER_IF_NONE_MATCH, previous.etag());
+            }
+            if (previous.lastModified() != null) {
+                request.header(HEADER_IF_MODIFIED_SINCE, previous.lastModified());
+            }
+        }
+
+        HttpResponse<T> response;
+        try {
+            response = ClientHolder.CLIENT.send(request.GET().build(), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrieving '" + artifact.location() + "'");
+        }
+
+        var status = response.statusCode();
+        if (status >= 200 && status < 300 ||
+            status == STATUS_NOT_MODIFIED && previous != null ||
+            status == STATUS_RANGE_NOT_SATISFIABLE && (offset > 0 || last >= 0)) {
+            return response;
+        }
+
+        if (response.body() instanceof InputStream stream) {
+            stream.close();
+        }
+        if (status == 404 || status == 410) {
+            throw new FileNotFoundException(artifact.location());
+        }
+        if (status == STATUS_TOO_MANY_REQUESTS || status == STATUS_SERVICE_UNAVAILABLE) {
+            throw new ThrottledException("Server returned HTTP response code: " + status + " for URL: " + artifact.location(),
+                retryAfter(response.headers().firstValue(HEADER_RETRY_AFTER).orElse(null)));
+        }
+        throw new IOException("Server returned HTTP response code: " + status + " for URL: " + artifact.location());
+    }
+
+    // Retry-After: <delay in seconds> or <HTTP date>
+    static long retryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                var date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+            } catch (DateTimeParseException e2) {
+                return DEFAULT_RETRY_AFTER;
+            }
+        }
+    }
+}
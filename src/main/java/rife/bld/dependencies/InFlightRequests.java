@@ -0,0 +1,73 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the requests that are in progress by key, so that concurrent
+ * identical requests are only performed once.
+ * <p>
+ * The first caller performs the request, the callers that arrive while
+ * it's in progress wait for it and receive the same result or failure.
+ * Requests that arrive after it finished are performed again, caching
+ * their results is left to the caller.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class InFlightRequests<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight_ = new ConcurrentHashMap<>();
+    private final AtomicLong performed_ = new AtomicLong();
+    private final AtomicLong shared_ = new AtomicLong();
+
+    V perform(K key, Callable<V> request)
+    throws Exception {
+        var future = new CompletableFuture<V>();
+        var existing = inFlight_.putIfAbsent(key, future);
+        if (existing != null) {
+            shared_.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception exception) {
+                    throw exception;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Request was cancelled", e);
+            }
+        }
+
+        performed_.incrementAndGet();
+        try {
+            var result = request.call();
+            future.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight_.remove(key, future);
+        }
+    }
+
+    long performed() {
+        return performed_.get();
+    }
+
+    long shared() {
+        return shared_.get();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import rife.bld.dependencies.exceptions.DependencyException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches fully processed POMs by coordinate for the duration of a version
+ * resolution.
+ * <p>
+ * Parent POMs and imported BOMs are shared by many dependencies, caching
+ * them ensures that each of them is only retrieved and parsed once, also
+ * when they're requested concurrently. The cached POMs are never handed
+ * out directly, every lookup receives a copy that is bound to the
+ * dependency that requested it.
+ * <p>
+ * A POM that is looked up again while it's being parsed, through its
+ * parents or imported BOMs, would wait for itself. This is also the case
+ * when the POMs of the cycle are parsed by different threads, each of them
+ * waiting for a POM that another one is parsing. These cycles are reported
+ * as a {@link DependencyException} instead.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class MavenPomCache {
+    private record Key(String groupId, String artifactId, String version, List<Repository> repositories) {
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+
+    private final Map<Key, Xml2MavenPom> poms_ = new ConcurrentHashMap<>();
+    private final InFlightRequests<Key, Xml2MavenPom> parsing_ = new InFlightRequests<>();
+    // the POMs that the current thread is parsing, from the outermost one
+    private final ThreadLocal<Deque<Key>> parsingStack_ = ThreadLocal.withInitial(ArrayDeque::new);
+    // the thread that parses each POM
+    private final Map<Key, Thread> parsers_ = new ConcurrentHashMap<>();
+    // the POMs that each waiting thread is parsing, followed by the one it waits for
+    private final Map<Thread, List<Key>> waiting_ = new ConcurrentHashMap<>();
+    private final AtomicLong lookups_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+
+    Xml2MavenPom get(Dependency dependency, Version version, List<Repository> repositories, Dependency parent, Supplier<Xml2MavenPom> parser) {
+        lookups_.incrementAndGet();
+        var key = new Key(dependency.groupId(), dependency.artifactId(), version.toString(), repositories);
+        var cached = poms_.get(key);
+        if (cached == null) {
+            var thread = Thread.currentThread();
+            var parsing_stack = parsingStack_.get();
+
+            // the wait is registered before looking for a cycle, so that one
+            // of two threads that start waiting for each other always finds it
+            var waiting = new ArrayList<Key>(parsing_stack);
+            waiting.add(key);
+            waiting_.put(thread, waiting);
+
+            // concurrent misses for the same POM wait for a single parse,
+            // the parsing recursively looks up parent POMs under other keys
+            try {
+                checkCycle(thread, parsing_stack, key);
+                cached = parsing_.perform(key, () -> {
+                    var parsed = poms_.get(key);
+                    if (parsed == null) {
+                        misses_.incrementAndGet();
+                        waiting_.remove(thread);
+                        parsing_stack.addLast(key);
+                        parsers_.put(key, thread);
+                        try {
+                            parsed = parser.get();
+                        } finally {
+                            parsers_.remove(key, thread);
+                            parsing_stack.removeLast();
+                        }
+                        poms_.put(key, parsed);
+                    }
+                    return parsed;
+                });
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                // the parser doesn't throw checked exceptions
+                throw new IllegalStateException(e);
+            } finally {
+                waiting_.remove(thread);
+            }
+        }
+        return cached.withParent(parent);
+    }
+
+    // follows the threads that parse the POM, the POMs that they wait for,
+    // and so on, the POM can never be parsed when this leads back to a POM
+    // that the current thread is parsing
+    private void checkCycle(Thread thread, Deque<Key> parsingStack, Key key) {
+        var chain = new ArrayList<Key>();
+        var visited = new HashSet<Thread>();
+        var next = key;
+        while (true) {
+            var parser = parsers_.get(next);
+            if (parser == null || !visited.add(parser)) {
+                return;
+            }
+
+            if (parser == thread) {
+                var cycle = new ArrayList<Key>(parsingStack);
+                cycle.subList(0, cycle.indexOf(next)).clear();
+                cycle.addAll(chain);
+                cycle.add(next);
+                throw new DependencyException("Cyclic POM references: " + String.join(" -> ", cycle.stream().map(Key::toString).toList()));
+            }
+
+            var waiting = waiting_.get(parser);
+            if (waiting == null || !waiting.contains(next)) {
+                return;
+            }
+            chain.addAll(waiting.subList(waiting.indexOf(next), waiting.size() - 1));
+            next = waiting.get(waiting.size() - 1);
+        }
+    }
+
+    long hits() {
+        return lookups_.get() - misses_.get();
+    }
+
+    long misses() {
+        return misses_.get();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps retrieved string content in memory within a maximum number of
+ * bytes.
+ * <p>
+ * The content is stored as UTF-8 bytes instead of strings, which halves
+ * the memory of the mostly ASCII POMs and metadata, and can optionally be
+ * compressed as well. When the maximum size is exceeded, the least
+ * recently used entries are evicted. Evicted content is simply retrieved
+ * again when it's needed.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class MemoryArtifactCache {
+    // the approximate overhead of an entry, its key, and the map node
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private record Entry(byte[] content, int length, boolean compressed) {
+    }
+
+    private final long maximumSize_;
+    private final boolean compressed_;
+    private final LinkedHashMap<RepositoryArtifact, Entry> entries_ = new LinkedHashMap<>(16, 0.75f, true);
+    private long size_ = 0;
+    private long hits_ = 0;
+    private long misses_ = 0;
+    private long evictions_ = 0;
+
+    MemoryArtifactCache(long maximumSize, boolean compressed) {
+        maximumSize_ = maximumSize;
+        compressed_ = compressed;
+    }
+
+    String get(RepositoryArtifact artifact) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries_.get(artifact);
+            if (entry == null) {
+                misses_ += 1;
+                return null;
+            }
+            hits_ += 1;
+        }
+        return decode(entry);
+    }
+
+    void put(RepositoryArtifact artifact, String content) {
+        var entry = encode(content);
+        var entry_size = size(artifact, entry);
+        synchronized (this) {
+            var previous = entries_.remove(artifact);
+            if (previous != null) {
+                size_ -= size(artifact, previous);
+            }
+            // content that doesn't fit at all isn't kept
+            if (entry_size > maximumSize_) {
+                return;
+            }
+
+            entries_.put(artifact, entry);
+            size_ += entry_size;
+            var iterator = entries_.entrySet().iterator();
+            while (size_ > maximumSize_ && iterator.hasNext()) {
+                var eldest = iterator.next();
+                iterator.remove();
+                size_ -= size(eldest.getKey(), eldest.getValue());
+                evictions_ += 1;
+            }
+        }
+    }
+
+    long maximumSize() {
+        return maximumSize_;
+    }
+
+    synchronized long size() {
+        return size_;
+    }
+
+    synchronized long hits() {
+        return hits_;
+    }
+
+    synchronized long misses() {
+        return misses_;
+    }
+
+    synchronized long evictions() {
+        return evictions_;
+    }
+
+    private static long size(RepositoryArtifact artifact, Entry entry) {
+        return ENTRY_OVERHEAD + 2L * artifact.location().length() + entry.content().length;
+    }
+
+    private Entry encode(String content) {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (!compressed_) {
+            return new Entry(bytes, bytes.length, false);
+        }
+
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            var output = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            // content that doesn't compress is kept as is
+            if (output.size() >= bytes.length) {
+                return new Entry(bytes, bytes.length, false);
+            }
+            return new Entry(output.toByteArray(), bytes.length, true);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String decode(Entry entry) {
+        if (!entry.compressed()) {
+            return new String(entry.content(), StandardCharsets.UTF_8);
+        }
+
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(entry.content());
+            var bytes = new byte[entry.length()];
+            var offset = 0;
+            while (offset < bytes.length && !inflater.finished()) {
+                var count = inflater.inflate(bytes, offset, bytes.length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+            return new String(bytes, 0, offset, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            // should not happen, the content was compressed by this cache
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -49,8 +49,16 @@ public class ParallelDependencyResolver {
      * Resolves the transitive dependencies of multiple root dependencies,
      * merging the results in the order of the provided roots.
      * <p>
-     * The roots are resolved in parallel while a shared prefetcher
-     * speculatively warms the retriever cache across all of them.
+     * The dependency graph of all the roots is first expanded together,
+     * retrieving the POMs of each level in parallel, before the dependencies
+     * of each root are collected in their sequential order.
+     * <p>
+     * When the retriever caches artifacts, the dependencies of each root are
+     * also cached for the scopes, version resolution and repositories they
+     * were resolved with. Resolving the same roots again, for instance for
+     * another scope of a project, reuses them. The dependencies that a POM
+     * declares are also only expanded once for all the roots that lead to
+     * it.
      *
      * @param roots  the root dependencies to resolve
      * @param scopes the scopes to return the transitive dependencies for
@@ -59,21 +67,55 @@ public class ParallelDependencyResolver {
      */
     public DependencySet resolveAllDependencies(Collection<Dependency> roots, Scope... scopes) {
         var result = new DependencySet();
+        for (var dependencies : resolveEachDependency(roots, scopes)) {
+            result.addAll(dependencies);
+        }
+        return result;
+    }
+
+    // the transitive dependencies of each root are independent of the other
+    // roots, merging them in order is what resolves the conflicts between them
+    List<DependencySet> resolveEachDependency(Collection<Dependency> roots, Scope... scopes) {
         if (roots.isEmpty()) {
+            return List.of();
+        }
+
+        // roots that were already resolved for another scope are reused,
+        // only the graph of the remaining roots is expanded and traversed
+        var closures = retriever_.closureCache();
+        var result = new ArrayList<DependencySet>(roots.size());
+        var unresolved = new ArrayList<Dependency>();
+        for (var root : roots) {
+            var closure = closures == null ? null : closures.get(resolution_, repositories_, root, scopes);
+            result.add(closure);
+            if (closure == null) {
+                unresolved.add(root);
+            }
+        }
+        if (unresolved.isEmpty()) {
             return result;
         }
 
-        var prefetcher = new PomPrefetcher(resolution_, retriever_, repositories_);
         try {
-            var resolutions = new ArrayList<Supplier<DependencySet>>(roots.size());
-            for (var root : roots) {
-                resolutions.add(() -> new DependencyResolver(resolution_, retriever_, repositories_, root).getAllDependencies(prefetcher, scopes));
+            new DependencyGraphExpander(resolution_, retriever_, repositories_, closures).expand(unresolved, scopes);
+
+            var resolutions = new ArrayList<Supplier<DependencySet>>(unresolved.size());
+            for (var root : unresolved) {
+                resolutions.add(() -> new DependencyResolver(resolution_, retriever_, repositories_, root).traverseAllDependencies(closures, scopes));
             }
-            for (var dependencies : ParallelExecution.execute(resolutions, resolution_.resolutionParallelism())) {
-                result.addAll(dependencies);
+            var resolved = ParallelExecution.execute(resolutions, resolution_.resolutionParallelism()).iterator();
+            var unresolved_roots = unresolved.iterator();
+            for (var i = 0; i < result.size(); ++i) {
+                if (result.get(i) == null) {
+                    var closure = resolved.next();
+                    if (closures != null) {
+                        closures.put(resolution_, repositories_, unresolved_roots.next(), scopes, closure);
+                    }
+                    result.set(i, closure);
+                }
             }
         } finally {
-            prefetcher.shutdown();
+            retriever_.saveLearned();
         }
         return result;
     }
@@ -91,7 +133,11 @@ public class ParallelDependencyResolver {
         for (var dependency : dependencies) {
             resolutions.add(() -> new DependencyResolver(resolution_, retriever_, repositories_, dependency).latestVersion());
         }
-        return ParallelExecution.execute(resolutions, resolution_.resolutionParallelism());
+        try {
+            return ParallelExecution.execute(resolutions, resolution_.resolutionParallelism());
+        } finally {
+            retriever_.saveLearned();
+        }
     }
 
     /**
@@ -5,16 +5,27 @@
 package rife.bld.dependencies;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
  * Executes tasks in parallel while preserving the order of their results
  * and the sequential semantics of failures: the first task that fails in
  * order will have its exception rethrown.
+ * <p>
+ * All the parallel work of a build runs on a single shared executor,
+ * instead of creating and shutting down a thread pool for each execution.
+ * It uses virtual threads when the Java runtime provides them, and
+ * otherwise reuses idle daemon threads. Since threads are never exhausted,
+ * executions can safely be nested, their parallelism is limited by the
+ * number of workers that each of them runs.
  *
  * @author Geert Bevin (gbevin[remove] at uwyn dot com)
  * @since 2.4.0
@@ -23,42 +34,85 @@ final class ParallelExecution {
     private ParallelExecution() {
     }
 
-    static <T> List<T> execute(List<Supplier<T>> tasks, int parallelism) {
-        var result = new ArrayList<T>(tasks.size());
+    private static class ExecutorHolder {
+        static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            // virtual threads are only available from Java 21 onwards
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                var count = new AtomicInteger();
+                return Executors.newCachedThreadPool(runnable -> {
+                    var thread = new Thread(runnable, "bld-parallel-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
 
+    static ExecutorService executor() {
+        return ExecutorHolder.EXECUTOR;
+    }
+
+    static <T> List<T> execute(List<Supplier<T>> tasks, int parallelism) {
         parallelism = Math.min(tasks.size(), parallelism);
         if (parallelism <= 1) {
+            var result = new ArrayList<T>(tasks.size());
             for (var task : tasks) {
                 result.add(task.get());
             }
             return result;
         }
 
-        var executor = Executors.newFixedThreadPool(parallelism);
-        try {
-            var futures = new ArrayList<Future<T>>(tasks.size());
-            for (var task : tasks) {
-                futures.add(executor.submit(task::get));
-            }
-            for (var future : futures) {
-                try {
-                    result.add(future.get());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new IllegalStateException("Parallel execution was interrupted", e);
-                } catch (ExecutionException e) {
-                    if (e.getCause() instanceof RuntimeException runtime) {
-                        throw runtime;
+        var results = new Object[tasks.size()];
+        var failures = new Throwable[tasks.size()];
+        var next = new AtomicInteger();
+        var failed = new AtomicBoolean();
+        var workers = new ArrayList<Future<?>>(parallelism);
+        for (var i = 0; i < parallelism; ++i) {
+            workers.add(executor().submit(() -> {
+                // the tasks are taken in order, after a failure the
+                // remaining tasks don't matter anymore
+                int index;
+                while (!failed.get() && (index = next.getAndIncrement()) < tasks.size()) {
+                    try {
+                        results[index] = tasks.get(index).get();
+                    } catch (RuntimeException | Error e) {
+                        failures[index] = e;
+                        failed.set(true);
                     }
-                    if (e.getCause() instanceof Error error) {
-                        throw error;
-                    }
-                    throw new IllegalStateException(e.getCause());
                 }
+            }));
+        }
+
+        try {
+            for (var worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            for (var worker : workers) {
+                worker.cancel(true);
             }
-        } finally {
-            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel execution was interrupted", e);
+        } catch (ExecutionException e) {
+            // should not happen, the workers catch the failures of the tasks
+            throw new IllegalStateException(e.getCause());
         }
+
+        for (var failure : failures) {
+            if (failure instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (failure instanceof Error error) {
+                throw error;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        var result = (List<T>) new ArrayList<>(Arrays.asList(results));
         return result;
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import static rife.tools.StringUtils.encodeHexLower;
+
+/**
+ * Stores the string content of remote artifacts on disk so that it
+ * survives across builds.
+ * <p>
+ * Released POMs and checksums never change once they're published and
+ * are kept permanently. Maven metadata and non-unique snapshot artifacts
+ * do change, they're only used for as long as the metadata time-to-live
+ * allows.
+ * <p>
+ * The validators of Maven metadata and non-unique snapshots are stored
+ * next to their content, once these expire they can be retrieved again
+ * conditionally, reusing the stored content when it wasn't modified.
+ * <p>
+ * Artifacts that weren't found in a repository are remembered with an
+ * empty marker file, these are also only used for as long as the metadata
+ * time-to-live allows since the artifact could be published later.
+ * <p>
+ * Any failure to read or write the cache is treated as a cache miss, the
+ * content will simply be retrieved remotely again.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class PersistentArtifactCache {
+    private static final String MAVEN_METADATA_NAME = "maven-metadata.xml";
+    private static final String SNAPSHOT_MARKER = "SNAPSHOT";
+    private static final String MISSING_SUFFIX = ".missing";
+    private static final String VALIDATORS_SUFFIX = ".validators";
+    private static final String PROPERTY_ETAG = "etag";
+    private static final String PROPERTY_LAST_MODIFIED = "lastModified";
+    private static final String PROPERTY_CONTENT_HASH = "contentHash";
+
+    private final File directory_;
+    private final long metadataTtlMillis_;
+
+    PersistentArtifactCache(File directory, long metadataTtlSeconds) {
+        if (directory == null) throw new IllegalArgumentException("directory can't be null");
+
+        directory_ = directory;
+        metadataTtlMillis_ = Math.max(0, metadataTtlSeconds) * 1000;
+    }
+
+    File directory() {
+        return directory_;
+    }
+
+    String get(RepositoryArtifact artifact) {
+        var file = cacheFile(artifact);
+        if (!file.isFile()) {
+            return null;
+        }
+        if (isMutable(artifact) &&
+            System.currentTimeMillis() - file.lastModified() >= metadataTtlMillis_) {
+            return null;
+        }
+
+        try {
+            return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // provides the content of an expired entry with its validators,
+    // these are only used when they were stored for that exact content
+    HttpTransport.Content getRevalidatable(RepositoryArtifact artifact) {
+        var file = cacheFile(artifact);
+        var validators_file = validatorsFile(artifact);
+        if (!isMutable(artifact) || !file.isFile() || !validators_file.isFile()) {
+            return null;
+        }
+
+        try {
+            var validators = new Properties();
+            try (var input = new FileInputStream(validators_file)) {
+                validators.load(input);
+            }
+            var content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            if (!hash(content).equals(validators.getProperty(PROPERTY_CONTENT_HASH))) {
+                return null;
+            }
+            return new HttpTransport.Content(content, validators.getProperty(PROPERTY_ETAG), validators.getProperty(PROPERTY_LAST_MODIFIED));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void put(RepositoryArtifact artifact, HttpTransport.Content content) {
+        try {
+            var validators_file = validatorsFile(artifact);
+            if (isMutable(artifact) && (content.etag() != null || content.lastModified() != null)) {
+                var validators = new Properties();
+                if (content.etag() != null) {
+                    validators.setProperty(PROPERTY_ETAG, content.etag());
+                }
+                if (content.lastModified() != null) {
+                    validators.setProperty(PROPERTY_LAST_MODIFIED, content.lastModified());
+                }
+                validators.setProperty(PROPERTY_CONTENT_HASH, hash(content.body()));
+                var output = new ByteArrayOutputStream();
+                validators.store(output, null);
+                writeAtomically(validators_file, output.toByteArray());
+            } else {
+                Files.deleteIfExists(validators_file.toPath());
+            }
+
+            // the content is written last since it determines the expiration
+            writeAtomically(cacheFile(artifact), content.body().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // no-op, the content will be retrieved again next time
+        }
+    }
+
+    boolean isMissing(RepositoryArtifact artifact) {
+        var file = missingFile(artifact);
+        return file.isFile() &&
+            System.currentTimeMillis() - file.lastModified() < metadataTtlMillis_;
+    }
+
+    void putMissing(RepositoryArtifact artifact) {
+        try {
+            writeAtomically(missingFile(artifact), new byte[0]);
+        } catch (IOException e) {
+            // no-op, the artifact will be looked up again next time
+        }
+    }
+
+    File missingFile(RepositoryArtifact artifact) {
+        var file = cacheFile(artifact);
+        return new File(file.getParentFile(), file.getName() + MISSING_SUFFIX);
+    }
+
+    File validatorsFile(RepositoryArtifact artifact) {
+        var file = cacheFile(artifact);
+        return new File(file.getParentFile(), file.getName() + VALIDATORS_SUFFIX);
+    }
+
+    // the location includes the repository, the credentials don't
+    // influence the content and are deliberately left out
+    File cacheFile(RepositoryArtifact artifact) {
+        var hash = hash(artifact.location());
+        return new File(new File(directory_, hash.substring(0, 2)), hash);
+    }
+
+    static boolean isMutable(RepositoryArtifact artifact) {
+        var location = artifact.location();
+        var filename = location.substring(location.lastIndexOf('/') + 1);
+        return filename.startsWith(MAVEN_METADATA_NAME) || filename.contains(SNAPSHOT_MARKER);
+    }
+
+    static String hash(String value) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1");
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            return encodeHexLower(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // should not happen
+            throw new RuntimeException(e);
+        }
+    }
+
+    // parallel resolutions and concurrent builds can write the same entry,
+    // the content is written to a unique temporary file first so that a
+    // reader never sees a partially written entry
+    static void writeAtomically(File file, byte[] content)
+    throws IOException {
+        var parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("Couldn't create directory '" + parent + "'");
+        }
+        var temp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(temp, content);
+            moveAtomically(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static void moveAtomically(Path temp, File file)
+    throws IOException {
+        try {
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
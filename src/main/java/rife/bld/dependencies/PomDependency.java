@@ -41,6 +41,14 @@ public record PomDependency(String groupId, String artifactId, String version, S
             parent());
     }
 
+    // the same declaration as part of the POM of another dependency
+    PomDependency withParent(Dependency parent) {
+        if (parent() == parent) {
+            return this;
+        }
+        return new PomDependency(groupId(), artifactId(), version(), classifier(), type(), scope(), optional(), exclusions(), parent);
+    }
+
     public int hashCode() {
         return Objects.hash(groupId, artifactId, classifier, type);
     }
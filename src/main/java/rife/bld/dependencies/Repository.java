@@ -46,6 +46,8 @@ public record Repository(String location, String username, String password) {
     public static final String PROPERTY_BLD_REPO_PREFIX = "bld.repo.";
     public static final String PROPERTY_BLD_REPO_USERNAME_SUFFIX = ".username";
     public static final String PROPERTY_BLD_REPO_PASSWORD_SUFFIX = ".password";
+    public static final String PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX = ".maxConcurrentRequests";
+    public static final String PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX = ".requestsPerSecond";
 
     /**
      * This method will be called as soon as hierarchical properties
@@ -77,6 +79,11 @@ public record Repository(String location, String username, String password) {
      * <p>
      * If the {@code bld.repo.myrepo} property isn't found, the {@code locationOrName}
      * parameter will be used as a location instead.
+     * <p>
+     * The requests to a named repository can also be limited by
+     * {@link ArtifactRetriever#cachingInstance(HierarchicalProperties)} with:<br>
+     * {@code bld.repo.myrepo.maxConcurrentRequests} (optional)<br>
+     * {@code bld.repo.myrepo.requestsPerSecond} (optional)
      *
      * @param properties     the hierarchical properties to look into
      * @param locationOrName the text to resolve a repository name or to be used as a location
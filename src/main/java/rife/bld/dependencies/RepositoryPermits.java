@@ -0,0 +1,533 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import rife.ioc.HierarchicalProperties;
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import static rife.bld.dependencies.Repository.*;
+
+/**
+ * Limits the number of requests that are in progress for each repository.
+ * <p>
+ * The limit is shared by all the parallel work that uses the same artifact
+ * retriever, which allows the parallelism of the build to be raised
+ * without overloading any single repository. A request is in progress
+ * until its response was read or closed.
+ * <p>
+ * A thread that already holds a permit for a repository, like while it
+ * retrieves the checksum of the artifact that it's transferring, doesn't
+ * need another one. This ensures that threads can't wait on each other
+ * for permits that they're holding themselves.
+ * <p>
+ * Adaptive permits start at a modest limit for each repository and tune
+ * it while the requests complete, additively increasing it as long as the
+ * repository uses all its permits and its throughput holds up, and
+ * halving it when a request fails. The limit never exceeds the maximum.
+ * <p>
+ * Each repository can also have its own maximum number of requests in
+ * progress and a maximum rate of requests per second, which is enforced
+ * with a token bucket that allows bursts of up to one second of requests.
+ * When a repository throttles a request, no new requests are sent to it
+ * before the delay that it asked for passed.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class RepositoryPermits {
+    static final int ADAPTIVE_INITIAL_LIMIT = 6;
+
+    // a window that doesn't reach this fraction of the throughput of the
+    // previous one indicates that the repository is saturated
+    private static final double SATURATED_THROUGHPUT = 0.9;
+
+    private final int maximum_;
+    private final boolean adaptive_;
+    private final Map<String, Limits> limits_;
+    private final LongSupplier clock_;
+    private final Map<String, Limiter> limiters_ = new ConcurrentHashMap<>();
+    // a permit can be closed by another thread than the one that acquired
+    // it, like a transfer worker that closes the response body
+    private final ThreadLocal<Set<String>> held_ = ThreadLocal.withInitial(ConcurrentHashMap::newKeySet);
+
+    /**
+     * The limits of a single repository.
+     *
+     * @param maxConcurrentRequests the maximum number of requests in progress,
+     *                              {@code 0} when only the shared maximum applies
+     * @param requestsPerSecond     the maximum rate of requests,
+     *                              {@code 0} when it's unlimited
+     */
+    record Limits(int maxConcurrentRequests, double requestsPerSecond) {
+    }
+
+    RepositoryPermits(int limit) {
+        this(limit, false);
+    }
+
+    RepositoryPermits(int maximum, boolean adaptive) {
+        this(maximum, adaptive, Map.of());
+    }
+
+    RepositoryPermits(int maximum, boolean adaptive, Map<String, Limits> limits) {
+        this(maximum, adaptive, limits, System::nanoTime);
+    }
+
+    // the clock provides the nanoseconds that the rates, pauses and
+    // adaptive windows are measured with
+    RepositoryPermits(int maximum, boolean adaptive, Map<String, Limits> limits, LongSupplier clock) {
+        maximum_ = Math.max(1, maximum);
+        adaptive_ = adaptive;
+        limits_ = Map.copyOf(limits);
+        clock_ = clock;
+    }
+
+    /**
+     * Parses the limits of the repositories that are named in the
+     * hierarchical properties, by repository location.
+     */
+    static Map<String, Limits> parseLimits(HierarchicalProperties properties) {
+        var limits = new LinkedHashMap<String, Limits>();
+        if (properties == null) {
+            return limits;
+        }
+
+        var names = new HashSet<String>();
+        for (var name : properties.getNames()) {
+            if (name.startsWith(PROPERTY_BLD_REPO_PREFIX)) {
+                if (name.endsWith(PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX)) {
+                    names.add(name.substring(PROPERTY_BLD_REPO_PREFIX.length(), name.length() - PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX.length()));
+                } else if (name.endsWith(PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX)) {
+                    names.add(name.substring(PROPERTY_BLD_REPO_PREFIX.length(), name.length() - PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX.length()));
+                }
+            }
+        }
+
+        for (var name : names) {
+            if (name.isEmpty() || !properties.contains(PROPERTY_BLD_REPO_PREFIX + name)) {
+                continue;
+            }
+            var max_concurrent_requests = properties.getValueString(PROPERTY_BLD_REPO_PREFIX + name + PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX);
+            var requests_per_second = properties.getValueString(PROPERTY_BLD_REPO_PREFIX + name + PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX);
+            var repository_limits = new Limits(
+                (int) parseLimit(PROPERTY_BLD_REPO_PREFIX + name + PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX, max_concurrent_requests, true),
+                parseLimit(PROPERTY_BLD_REPO_PREFIX + name + PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX, requests_per_second, false));
+            if (repository_limits.maxConcurrentRequests() > 0 || repository_limits.requestsPerSecond() > 0) {
+                limits.put(resolveRepository(properties, name).location(), repository_limits);
+            }
+        }
+        return limits;
+    }
+
+    private static double parseLimit(String property, String value, boolean integer) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+
+        try {
+            var limit = integer ? Integer.parseInt(value.trim()) : Double.parseDouble(value.trim());
+            if (limit > 0 && !Double.isInfinite(limit)) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // warned about below
+        }
+        Logger.getLogger("rife.bld").warning("Unable to parse the " + property + " property as a positive " + (integer ? "integer" : "number") + ": '" + value + "', it's ignored");
+        return 0;
+    }
+
+    boolean isAdaptive() {
+        return adaptive_;
+    }
+
+    /**
+     * Returns the current limit of each repository that was used, by
+     * repository location.
+     */
+    Map<String, Integer> limits() {
+        var limits = new LinkedHashMap<String, Integer>();
+        for (var entry : limiters_.entrySet()) {
+            limits.put(entry.getKey(), entry.getValue().limit());
+        }
+        return limits;
+    }
+
+    /**
+     * Returns the average number of milliseconds that the requests to each
+     * repository were in progress, by repository location.
+     */
+    Map<String, Long> latencies() {
+        var latencies = new LinkedHashMap<String, Long>();
+        for (var entry : limiters_.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().averageLatency());
+        }
+        return latencies;
+    }
+
+    /**
+     * Waits for a permit to send a request to a repository.
+     */
+    Permit acquire(Repository repository)
+    throws InterruptedIOException {
+        var key = repository.location();
+        var limiter = limiter(key);
+        var held = held_.get();
+        try {
+            if (held.contains(key)) {
+                limiter.acquireHeld();
+                return new Permit(limiter, null, null);
+            }
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for repository '" + repository + "'");
+        }
+        held.add(key);
+        return new Permit(limiter, held, key);
+    }
+
+    /**
+     * Indicates whether the current thread holds a permit for a repository.
+     */
+    boolean isHeld(Repository repository) {
+        return held_.get().contains(repository.location());
+    }
+
+    /**
+     * Obtains a permit to send a request to a repository without waiting.
+     *
+     * @return the permit; or {@code null} when none is available, or when
+     * the rate or a pause of the repository doesn't allow a request yet
+     */
+    Permit tryAcquire(Repository repository) {
+        var key = repository.location();
+        var limiter = limiter(key);
+        var held = held_.get();
+        if (held.contains(key)) {
+            if (!limiter.tryAcquireHeld()) {
+                return null;
+            }
+            return new Permit(limiter, null, null);
+        }
+
+        if (!limiter.tryAcquire()) {
+            return null;
+        }
+        held.add(key);
+        return new Permit(limiter, held, key);
+    }
+
+    private Limiter limiter(String key) {
+        return limiters_.computeIfAbsent(key, k -> {
+            var limits = limits_.get(k);
+            if (limits == null) {
+                return new Limiter(maximum_, 0);
+            }
+            var maximum = limits.maxConcurrentRequests() > 0 ? limits.maxConcurrentRequests() : maximum_;
+            return new Limiter(maximum, limits.requestsPerSecond());
+        });
+    }
+
+    // waiting threads don't hold a monitor, so that virtual threads that
+    // wait for a permit don't pin their carrier thread
+    private class Limiter {
+        private final ReentrantLock lock_ = new ReentrantLock();
+        private final Condition changed_ = lock_.newCondition();
+        private final int maximum_;
+        private int limit_;
+        private int inUse_ = 0;
+        private long requests_ = 0;
+        private long totalLatency_ = 0;
+
+        // the adaptive window that ends after as many completions as the limit
+        private int completions_ = 0;
+        private boolean saturated_ = false;
+        private long windowStart_ = clock_.getAsLong();
+        private double previousThroughput_ = 0;
+
+        // the token bucket of the request rate, and the end of the pause
+        // that the repository asked for when it throttled a request
+        private final double rate_;
+        private final double burst_;
+        private double tokens_;
+        private long lastRefill_ = clock_.getAsLong();
+        private long pausedUntil_ = lastRefill_;
+
+        Limiter(int maximum, double rate) {
+            maximum_ = maximum;
+            limit_ = adaptive_ ? Math.min(ADAPTIVE_INITIAL_LIMIT, maximum) : maximum;
+            rate_ = rate;
+            burst_ = Math.max(1, rate);
+            tokens_ = burst_;
+        }
+
+        long now() {
+            return clock_.getAsLong();
+        }
+
+        int limit() {
+            lock_.lock();
+            try {
+                return limit_;
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        long averageLatency() {
+            lock_.lock();
+            try {
+                return requests_ == 0 ? 0 : totalLatency_ / requests_ / 1_000_000;
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        void acquire()
+        throws InterruptedException {
+            lock_.lockInterruptibly();
+            try {
+                while (true) {
+                    if (inUse_ >= limit_) {
+                        changed_.await();
+                        continue;
+                    }
+                    var delay = delay();
+                    if (delay <= 0) {
+                        break;
+                    }
+                    changed_.awaitNanos(delay);
+                }
+                taken();
+                occupied();
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        // a thread that holds a permit doesn't take another one, but
+        // its requests still respect the rate and the pauses
+        void acquireHeld()
+        throws InterruptedException {
+            lock_.lockInterruptibly();
+            try {
+                long delay;
+                while ((delay = delay()) > 0) {
+                    changed_.awaitNanos(delay);
+                }
+                taken();
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        boolean tryAcquire() {
+            lock_.lock();
+            try {
+                if (inUse_ >= limit_ || delay() > 0) {
+                    return false;
+                }
+                taken();
+                occupied();
+                return true;
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        boolean tryAcquireHeld() {
+            lock_.lock();
+            try {
+                if (delay() > 0) {
+                    return false;
+                }
+                taken();
+                return true;
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        // the nanoseconds until a request can be sent
+        private long delay() {
+            var now = clock_.getAsLong();
+            var delay = pausedUntil_ - now;
+            if (rate_ > 0) {
+                tokens_ = Math.min(burst_, tokens_ + (now - lastRefill_) * rate_ / 1_000_000_000.0);
+                lastRefill_ = now;
+                if (tokens_ < 1) {
+                    delay = Math.max(delay, (long) Math.ceil((1 - tokens_) / rate_ * 1_000_000_000.0));
+                }
+            }
+            return delay;
+        }
+
+        private void taken() {
+            if (rate_ > 0) {
+                tokens_ -= 1;
+            }
+        }
+
+        private void occupied() {
+            inUse_ += 1;
+            if (inUse_ >= limit_) {
+                saturated_ = true;
+            }
+        }
+
+        void pause(long delayMillis) {
+            lock_.lock();
+            try {
+                var until = clock_.getAsLong() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                if (until - pausedUntil_ > 0) {
+                    pausedUntil_ = until;
+                }
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        void release(long start, boolean failed) {
+            lock_.lock();
+            try {
+                inUse_ -= 1;
+                requests_ += 1;
+                totalLatency_ += clock_.getAsLong() - start;
+                if (adaptive_) {
+                    adapt(failed);
+                }
+                changed_.signalAll();
+            } finally {
+                lock_.unlock();
+            }
+        }
+
+        private void adapt(boolean failed) {
+            var now = clock_.getAsLong();
+            if (failed) {
+                limit_ = Math.max(1, limit_ / 2);
+                startWindow(now, 0);
+                return;
+            }
+
+            completions_ += 1;
+            if (completions_ < limit_) {
+                return;
+            }
+
+            var throughput = completions_ * 1_000_000_000.0 / Math.max(1, now - windowStart_);
+            if (throughput < previousThroughput_ * SATURATED_THROUGHPUT) {
+                limit_ = Math.max(1, limit_ - 1);
+            } else if (saturated_) {
+                // more permits can only help when all of them were used
+                limit_ = Math.min(maximum_, limit_ + 1);
+            }
+            startWindow(now, throughput);
+        }
+
+        private void startWindow(long now, double previousThroughput) {
+            completions_ = 0;
+            saturated_ = inUse_ >= limit_;
+            windowStart_ = now;
+            previousThroughput_ = previousThroughput;
+        }
+    }
+
+    static class Permit implements AutoCloseable {
+        private final Limiter limiter_;
+        private final Set<String> held_;
+        private final String key_;
+        private final long start_;
+        private volatile boolean failed_ = false;
+        private final AtomicBoolean released_ = new AtomicBoolean(false);
+
+        private Permit(Limiter limiter, Set<String> held, String key) {
+            limiter_ = limiter;
+            held_ = held;
+            key_ = key;
+            start_ = limiter.now();
+        }
+
+        /**
+         * Marks the request of this permit as failed, which lowers the
+         * limit of adaptive permits.
+         */
+        void failed() {
+            failed_ = true;
+        }
+
+        /**
+         * Marks the request of this permit as failed with an exception,
+         * artifacts that don't exist aren't failures and throttled requests
+         * also pause the requests to the repository.
+         */
+        void failed(IOException e) {
+            if (e instanceof FileNotFoundException) {
+                return;
+            }
+            if (e instanceof HttpTransport.ThrottledException throttled) {
+                limiter_.pause(throttled.retryAfter());
+            }
+            failed();
+        }
+
+        /**
+         * Keeps this permit until the stream is closed, failures while
+         * reading it mark the request as failed.
+         */
+        InputStream holdUntilClosed(InputStream stream) {
+            return new FilterInputStream(stream) {
+                public int read()
+                throws IOException {
+                    try {
+                        return super.read();
+                    } catch (IOException e) {
+                        failed();
+                        throw e;
+                    }
+                }
+
+                public int read(byte[] b, int off, int len)
+                throws IOException {
+                    try {
+                        return super.read(b, off, len);
+                    } catch (IOException e) {
+                        failed();
+                        throw e;
+                    }
+                }
+
+                public void close()
+                throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Permit.this.close();
+                    }
+                }
+            };
+        }
+
+        public void close() {
+            if (held_ == null || !released_.compareAndSet(false, true)) {
+                return;
+            }
+            held_.remove(key_);
+            limiter_.release(start_, failed_);
+        }
+    }
+}
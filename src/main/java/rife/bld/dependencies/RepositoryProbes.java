@@ -0,0 +1,102 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import rife.tools.exceptions.FileUtilsErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Probes a list of repository artifacts according to the
+ * {@link RepositoryProbing} of a version resolution, this is an internal
+ * class.
+ * <p>
+ * The results are always requested in the order of the artifacts, so that
+ * the caller keeps deciding which artifact is used exactly like it does
+ * with sequential probing. Hedged and parallel probing merely start the
+ * retrieval of the later artifacts earlier.
+ * <p>
+ * Probes that are still running when the first available artifact was
+ * found are left to complete in the background, their results are only
+ * used by the caching of the artifact retriever.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class RepositoryProbes {
+    interface Retrieval {
+        String retrieve(RepositoryArtifact artifact)
+        throws FileUtilsErrorException;
+    }
+
+    private final List<RepositoryArtifact> artifacts_;
+    private final Retrieval retrieval_;
+    private final long hedgeDelay_;
+    private final List<Future<String>> probes_;
+
+    RepositoryProbes(VersionResolution resolution, List<RepositoryArtifact> artifacts, Retrieval retrieval) {
+        artifacts_ = artifacts;
+        retrieval_ = retrieval;
+        hedgeDelay_ = resolution.hedgeDelay();
+
+        var probing = resolution.repositoryProbing();
+        if (probing == RepositoryProbing.sequential || artifacts.size() < 2) {
+            probes_ = null;
+        } else {
+            probes_ = new ArrayList<>(artifacts.size());
+            if (probing == RepositoryProbing.parallel) {
+                while (probes_.size() < artifacts_.size()) {
+                    startNext();
+                }
+            }
+        }
+    }
+
+    String retrieve(int index)
+    throws FileUtilsErrorException {
+        if (probes_ == null) {
+            return retrieval_.retrieve(artifacts_.get(index));
+        }
+
+        while (probes_.size() <= index) {
+            startNext();
+        }
+
+        var probe = probes_.get(index);
+        try {
+            // hedge by starting the next probe each time that the
+            // awaited one didn't respond within the delay
+            while (probes_.size() < artifacts_.size()) {
+                try {
+                    return probe.get(hedgeDelay_, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    startNext();
+                }
+            }
+            return probe.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileUtilsErrorException("Interrupted while reading URL '" + artifacts_.get(index).location() + ".", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileUtilsErrorException failure) {
+                throw failure;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new FileUtilsErrorException("Error while reading URL '" + artifacts_.get(index).location() + ".", e.getCause());
+        }
+    }
+
+    private void startNext() {
+        var artifact = artifacts_.get(probes_.size());
+        probes_.add(ParallelExecution.executor().submit(() -> retrieval_.retrieve(artifact)));
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+/**
+ * Provides the ways in which the repositories are probed when looking for
+ * POMs and Maven metadata.
+ * <p>
+ * Regardless of the probing, the artifact of the first repository in order
+ * that has it is always the one that is used.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+public enum RepositoryProbing {
+    /**
+     * Probes the next repository only after the previous one didn't have
+     * the artifact.
+     * @since 2.4.0
+     */
+    sequential,
+
+    /**
+     * Also probes the next repository when the previous one didn't respond
+     * within the hedge delay.
+     * @since 2.4.0
+     */
+    hedged,
+
+    /**
+     * Probes all the repositories at once.
+     * @since 2.4.0
+     */
+    parallel
+}
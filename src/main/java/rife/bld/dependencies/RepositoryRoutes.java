@@ -0,0 +1,236 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns which repository serves the artifacts of each groupId prefix so
+ * that it can be probed first by later resolutions.
+ * <p>
+ * A repository is learned for a groupId when it served one of its
+ * artifacts after all the repositories that are declared before it missed
+ * that artifact. It's recorded for the groupId itself and for each of its
+ * prefixes of at least two segments, together with the repositories that
+ * missed it. Prefixes that different repositories serve aren't routed. For
+ * instance, after {@code com.fasterxml.jackson.core} was served by Maven
+ * Central when a Nexus repository that is declared first missed it,
+ * {@code com.fasterxml.jackson.dataformat} is probed in Maven Central first.
+ * <p>
+ * The learned repository is only probed first when all the remote
+ * repositories that are declared before it are known to miss the prefix,
+ * the other repositories keep their declared order after it, so they're
+ * still probed when it misses an artifact. The first repository that hosts
+ * an artifact thus still provides it, unless a repository that missed
+ * other artifacts of the prefix hosts this one. Local repositories are
+ * never learned and are always probed in their declared place, since
+ * probing them is cheap and their content changes between builds.
+ * <p>
+ * When a file is provided, the routes are loaded from it. The changes since
+ * are only written back when the routes are {@linkplain #save saved}, once
+ * per resolution or transfer batch. They're merged with the routes that
+ * other builds might have written in the meantime, and any failure to
+ * write them is ignored since the routes will simply be learned again.
+ *
+ * @author Geert Bevin (gbevin[remove] at uwyn dot com)
+ * @since 2.4.0
+ */
+class RepositoryRoutes {
+    // the repository that serves a prefix and the repositories that missed it,
+    // a prefix without a location is served by several repositories
+    private record Route(String location, Set<String> missed) {
+        static final Route AMBIGUOUS = new Route("", Set.of());
+
+        boolean isAmbiguous() {
+            return location.isEmpty();
+        }
+    }
+
+    private final File file_;
+    private final Map<String, Route> routes_ = new ConcurrentHashMap<>();
+    // the prefixes whose route changed since they were last saved
+    private final Set<String> changed_ = ConcurrentHashMap.newKeySet();
+
+    RepositoryRoutes(File file) {
+        file_ = file;
+        routes_.putAll(load());
+    }
+
+    List<RepositoryArtifact> order(String groupId, List<RepositoryArtifact> artifacts) {
+        if (artifacts.size() < 2) {
+            return artifacts;
+        }
+
+        var route = find(groupId);
+        if (route == null || route.isAmbiguous()) {
+            return artifacts;
+        }
+
+        var index = -1;
+        for (var i = 0; i < artifacts.size(); ++i) {
+            if (artifacts.get(i).repository().location().equals(route.location())) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 1) {
+            return artifacts;
+        }
+
+        // the local repositories keep their place before the learned one,
+        // the remote ones before it have to be known to miss the prefix
+        var result = new ArrayList<RepositoryArtifact>(artifacts.size());
+        var skipped = new ArrayList<RepositoryArtifact>();
+        for (var i = 0; i < index; ++i) {
+            var artifact = artifacts.get(i);
+            if (artifact.repository().isLocal()) {
+                result.add(artifact);
+            } else if (route.missed().contains(artifact.repository().location())) {
+                skipped.add(artifact);
+            } else {
+                return artifacts;
+            }
+        }
+        if (skipped.isEmpty()) {
+            return artifacts;
+        }
+        result.add(artifacts.get(index));
+        result.addAll(skipped);
+        result.addAll(artifacts.subList(index + 1, artifacts.size()));
+        return result;
+    }
+
+    // the route of the longest prefix of the groupId that has one
+    private Route find(String groupId) {
+        var prefix = groupId;
+        for (var i = 0; i < Math.max(1, segments(groupId) - 1); ++i) {
+            var route = routes_.get(prefix);
+            if (route != null || prefix.indexOf('.') == -1) {
+                return route;
+            }
+            prefix = prefix.substring(0, prefix.lastIndexOf('.'));
+        }
+        return null;
+    }
+
+    private static int segments(String groupId) {
+        return groupId.split("\\.", -1).length;
+    }
+
+    void served(String groupId, Repository repository, List<Repository> missed, List<Repository> declared) {
+        if (repository.isLocal()) {
+            return;
+        }
+
+        // the repository only provides the same artifact as the declared order
+        // when all the repositories that are declared before it missed it
+        var missed_locations = new HashSet<String>();
+        for (var declared_repository : declared) {
+            if (declared_repository.equals(repository)) {
+                break;
+            }
+            if (!missed.contains(declared_repository)) {
+                return;
+            }
+            if (!declared_repository.isLocal()) {
+                missed_locations.add(declared_repository.location());
+            }
+        }
+
+        // the groupId itself follows the latest repository that served it,
+        // its prefixes stop being routed once different repositories serve them
+        var prefix = groupId;
+        for (var i = 0; i < Math.max(1, segments(groupId) - 1); ++i) {
+            var exact = (i == 0);
+            var key = prefix;
+            routes_.compute(key, (k, route) -> {
+                Route learned;
+                if (route == null || (exact && !route.isAmbiguous() && !route.location().equals(repository.location()))) {
+                    learned = new Route(repository.location(), Set.copyOf(missed_locations));
+                } else if (route.isAmbiguous()) {
+                    learned = route;
+                } else if (!route.location().equals(repository.location())) {
+                    learned = Route.AMBIGUOUS;
+                } else if (!route.missed().containsAll(missed_locations)) {
+                    var merged = new HashSet<>(route.missed());
+                    merged.addAll(missed_locations);
+                    learned = new Route(route.location(), Set.copyOf(merged));
+                } else {
+                    learned = route;
+                }
+                if (learned != route) {
+                    changed_.add(key);
+                }
+                return learned;
+            });
+            if (prefix.indexOf('.') == -1) {
+                break;
+            }
+            prefix = prefix.substring(0, prefix.lastIndexOf('.'));
+        }
+    }
+
+    private Map<String, Route> load() {
+        var routes = new HashMap<String, Route>();
+        if (file_ != null && file_.isFile()) {
+            var properties = new Properties();
+            try (var input = new FileInputStream(file_)) {
+                properties.load(input);
+                for (var name : properties.stringPropertyNames()) {
+                    var value = properties.getProperty(name).trim();
+                    if (value.isEmpty()) {
+                        routes.put(name, Route.AMBIGUOUS);
+                    } else {
+                        var locations = value.split(" ");
+                        routes.put(name, new Route(locations[0], Set.of(Arrays.copyOfRange(locations, 1, locations.length))));
+                    }
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // no-op, the routes will be learned again
+                routes.clear();
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Writes the routes that changed since they were last saved, nothing is
+     * written when there are none.
+     */
+    synchronized void save() {
+        if (file_ == null || changed_.isEmpty()) {
+            return;
+        }
+
+        var changed = Set.copyOf(changed_);
+        var routes = load();
+        for (var prefix : changed) {
+            routes.put(prefix, routes_.get(prefix));
+        }
+
+        // the routes are written in a stable order so that unchanged
+        // routes never produce a different file
+        var output = new StringBuilder();
+        for (var entry : new TreeMap<>(routes).entrySet()) {
+            output.append(entry.getKey()).append('=').append(entry.getValue().location());
+            for (var missed : new TreeSet<>(entry.getValue().missed())) {
+                output.append(' ').append(missed);
+            }
+            output.append('\n');
+        }
+        try {
+            PersistentArtifactCache.writeAtomically(file_, output.toString().getBytes(StandardCharsets.ISO_8859_1));
+            // routes that changed again while saving are kept for the next save
+            changed_.removeAll(changed);
+        } catch (IOException e) {
+            // no-op, the routes will be learned again
+        }
+    }
+}
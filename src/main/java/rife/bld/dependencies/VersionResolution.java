@@ -46,7 +46,17 @@ import java.util.logging.Logger;
  * of parallel artifact transfers through the "{@code bld.transferParallelism}"
  * property and the number of parallel POM retrievals during transitive
  * dependency resolution through the "{@code bld.resolutionParallelism}"
- * property.
+ * property. The "{@code bld.repositoryProbing}" property selects the
+ * {@link RepositoryProbing} of POMs and Maven metadata across repositories,
+ * with "{@code bld.hedgeDelay}" as the number of milliseconds to wait for a
+ * repository before hedging with the next one. Artifacts of at least
+ * "{@code bld.segmentedTransferThreshold}" bytes are transferred in
+ * "{@code bld.transferSegments}" parallel range requests.
+ * <p>
+ * Setting the transfer or resolution parallelism to "{@code auto}" adapts
+ * it during the build instead, the number of requests to each repository
+ * is then tuned by the artifact retriever according to the throughput and
+ * the failures of that repository.
  * @since 2.0
  */
 public class VersionResolution {
@@ -65,18 +75,70 @@ public class VersionResolution {
     private static final int DEFAULT_TRANSFER_PARALLELISM = 6;
 
     /**
-     * The property key that determines how many POMs are speculatively
-     * retrieved in parallel during transitive dependency resolution,
-     * {@code 1} disables the parallel retrieval.
+     * The property key that determines how many POMs are retrieved in
+     * parallel while expanding the transitive dependency graph,
+     * {@code 1} makes the resolution sequential.
      * @since 2.4.0
      */
     public static final String PROPERTY_RESOLUTION_PARALLELISM = "bld.resolutionParallelism";
     private static final int DEFAULT_RESOLUTION_PARALLELISM = 6;
 
+    /**
+     * The value of the transfer and resolution parallelism properties that
+     * adapts the parallelism during the build.
+     * @since 2.4.0
+     */
+    public static final String PARALLELISM_AUTO = "auto";
+
+    // the adaptive parallelism is limited by the requests to each repository,
+    // this merely bounds the number of workers
+    private static final int ADAPTIVE_PARALLELISM = 64;
+
+    /**
+     * The property key that determines how the repositories are probed for
+     * POMs and Maven metadata, the value is one of {@link RepositoryProbing}
+     * and defaults to {@code sequential}.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_REPOSITORY_PROBING = "bld.repositoryProbing";
+    private static final RepositoryProbing DEFAULT_REPOSITORY_PROBING = RepositoryProbing.sequential;
+
+    /**
+     * The property key that determines how many milliseconds hedged probing
+     * waits for a repository before also probing the next one.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_HEDGE_DELAY = "bld.hedgeDelay";
+    private static final long DEFAULT_HEDGE_DELAY = 250;
+
+    /**
+     * The property key that determines from how many bytes onwards a single
+     * artifact is transferred in segments, when its repository supports
+     * range requests.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_SEGMENTED_TRANSFER_THRESHOLD = "bld.segmentedTransferThreshold";
+    private static final long DEFAULT_SEGMENTED_TRANSFER_THRESHOLD = 16 * 1024 * 1024;
+
+    /**
+     * The property key that determines in how many segments a large artifact
+     * is transferred in parallel, {@code 1} disables segmented transfers.
+     * @since 2.4.0
+     */
+    public static final String PROPERTY_TRANSFER_SEGMENTS = "bld.transferSegments";
+    private static final int DEFAULT_TRANSFER_SEGMENTS = 4;
+
     private final Map<String, Version> versionOverrides_ = new HashMap<>();
     private final Map<String, Version> bomVersions_;
     private final int transferParallelism_;
     private final int resolutionParallelism_;
+    private final boolean adaptiveParallelism_;
+    private final RepositoryProbing repositoryProbing_;
+    private final long hedgeDelay_;
+    private final long segmentedTransferThreshold_;
+    private final int transferSegments_;
+    private final MavenPomCache pomCache_ = new MavenPomCache();
+    private CacheKey cacheKey_ = null;
 
     /**
      * Returns a dummy {@code VersionResolution} instance that doesn't override anything.
@@ -114,8 +176,13 @@ public class VersionResolution {
                 }
             }
         }
-        transferParallelism_ = parseParallelism(properties, PROPERTY_TRANSFER_PARALLELISM, DEFAULT_TRANSFER_PARALLELISM);
-        resolutionParallelism_ = parseParallelism(properties, PROPERTY_RESOLUTION_PARALLELISM, DEFAULT_RESOLUTION_PARALLELISM);
+        transferParallelism_ = parseAdaptiveParallelism(properties, PROPERTY_TRANSFER_PARALLELISM, DEFAULT_TRANSFER_PARALLELISM);
+        resolutionParallelism_ = parseAdaptiveParallelism(properties, PROPERTY_RESOLUTION_PARALLELISM, DEFAULT_RESOLUTION_PARALLELISM);
+        adaptiveParallelism_ = isAdaptiveParallelism(properties);
+        repositoryProbing_ = parseRepositoryProbing(properties);
+        hedgeDelay_ = parseHedgeDelay(properties);
+        segmentedTransferThreshold_ = parseSegmentedTransferThreshold(properties);
+        transferSegments_ = parseParallelism(properties, PROPERTY_TRANSFER_SEGMENTS, DEFAULT_TRANSFER_SEGMENTS);
         bomVersions_ = Map.of();
     }
 
@@ -123,6 +190,11 @@ public class VersionResolution {
         versionOverrides_.putAll(base.versionOverrides_);
         transferParallelism_ = base.transferParallelism_;
         resolutionParallelism_ = base.resolutionParallelism_;
+        adaptiveParallelism_ = base.adaptiveParallelism_;
+        repositoryProbing_ = base.repositoryProbing_;
+        hedgeDelay_ = base.hedgeDelay_;
+        segmentedTransferThreshold_ = base.segmentedTransferThreshold_;
+        transferSegments_ = base.transferSegments_;
         bomVersions_ = Map.copyOf(bomVersions);
     }
 
@@ -135,6 +207,10 @@ public class VersionResolution {
      * that manages a particular dependency determines its version. The
      * version overrides of the properties take precedence over any BOM
      * version, they also apply when resolving the BOMs themselves.
+     * <p>
+     * The BOMs are retrieved in parallel. A caching retriever also indexes
+     * their managed versions, so that the BOMs that apply to several scopes
+     * are only processed once.
      *
      * @param properties   the hierarchical properties that will be used to determine the version overrides
      * @param retriever    the retriever to use to get the BOMs
@@ -163,16 +239,8 @@ public class VersionResolution {
 
     private static Map<String, Version> resolveBomVersions(VersionResolution resolution, ArtifactRetriever retriever, List<Repository> repositories, Collection<Bom> boms) {
         var bom_versions = new HashMap<String, Version>();
-        if (boms != null) {
-            for (var bom : boms) {
-                var pom = new DependencyResolver(resolution, retriever, repositories, bom).getMavenPom(bom);
-                for (var managed : pom.getManagedDependencies()) {
-                    if (managed.version() != null && !managed.version().isBlank()) {
-                        var dependency = managed.convertToDependency();
-                        bom_versions.putIfAbsent(managedKey(dependency), dependency.version());
-                    }
-                }
-            }
+        for (var managed_dependencies : retriever.bomIndex().get(resolution, retriever, repositories, boms)) {
+            managed_dependencies.forEach((key, managed) -> bom_versions.putIfAbsent(key, managed.version()));
         }
         return bom_versions;
     }
@@ -209,16 +277,13 @@ public class VersionResolution {
         var versions_by_key = new LinkedHashMap<String, LinkedHashMap<String, Version>>();
         var dependency_by_key = new LinkedHashMap<String, String>();
         if (boms != null) {
+            var indexed = retriever.bomIndex().get(base, retriever, repositories, boms).iterator();
             for (var bom : boms) {
-                var pom = new DependencyResolver(base, retriever, repositories, bom).getMavenPom(bom);
-                for (var managed : pom.getManagedDependencies()) {
-                    if (managed.version() != null && !managed.version().isBlank()) {
-                        var dependency = managed.convertToDependency();
-                        var key = managedKey(dependency);
-                        versions_by_key.computeIfAbsent(key, k -> new LinkedHashMap<>())
-                            .putIfAbsent(bom.toArtifactString(), dependency.version());
-                        dependency_by_key.putIfAbsent(key, dependency.toArtifactString());
-                    }
+                for (var entry : indexed.next().entrySet()) {
+                    var key = entry.getKey();
+                    versions_by_key.computeIfAbsent(key, k -> new LinkedHashMap<>())
+                        .putIfAbsent(bom.toArtifactString(), entry.getValue().version());
+                    dependency_by_key.putIfAbsent(key, entry.getValue().dependency());
                 }
             }
         }
@@ -272,17 +337,13 @@ public class VersionResolution {
         var managed_versions = new LinkedHashMap<String, Version>();
         var managed_boms = new LinkedHashMap<String, String>();
         if (boms != null) {
+            var indexed = retriever.bomIndex().get(base, retriever, repositories, boms).iterator();
             for (var bom : boms) {
-                var pom = new DependencyResolver(base, retriever, repositories, bom).getMavenPom(bom);
-                for (var managed : pom.getManagedDependencies()) {
-                    if (managed.version() != null && !managed.version().isBlank()) {
-                        var dependency = managed.convertToDependency();
-                        var key = managedKey(dependency);
-                        // the first BOM that manages a dependency determines
-                        // its version, mirroring the resolution precedence
-                        if (managed_versions.putIfAbsent(key, dependency.version()) == null) {
-                            managed_boms.put(key, bom.toArtifactString());
-                        }
+                for (var entry : indexed.next().entrySet()) {
+                    // the first BOM that manages a dependency determines
+                    // its version, mirroring the resolution precedence
+                    if (managed_versions.putIfAbsent(entry.getKey(), entry.getValue().version()) == null) {
+                        managed_boms.put(entry.getKey(), bom.toArtifactString());
                     }
                 }
             }
@@ -309,7 +370,7 @@ public class VersionResolution {
     // on, mirroring Maven this includes the type and the classifier, the
     // modular and forced-classpath JAR types match the plain jar entries
     // that BOMs manage
-    private static String managedKey(Dependency dependency) {
+    static String managedKey(Dependency dependency) {
         var type = dependency.type();
         if (type == null || type.isBlank() ||
             Dependency.TYPE_MODULAR_JAR.equals(type) ||
@@ -319,6 +380,26 @@ public class VersionResolution {
         return dependency.toArtifactString() + ":" + type + ":" + dependency.classifier();
     }
 
+    static boolean isAdaptiveParallelism(HierarchicalProperties properties) {
+        return isAdaptiveParallelism(properties, PROPERTY_TRANSFER_PARALLELISM) ||
+               isAdaptiveParallelism(properties, PROPERTY_RESOLUTION_PARALLELISM);
+    }
+
+    private static boolean isAdaptiveParallelism(HierarchicalProperties properties, String property) {
+        if (properties == null) {
+            return false;
+        }
+        var parallelism = properties.getValueString(property);
+        return parallelism != null && parallelism.trim().equalsIgnoreCase(PARALLELISM_AUTO);
+    }
+
+    private static int parseAdaptiveParallelism(HierarchicalProperties properties, String property, int defaultValue) {
+        if (isAdaptiveParallelism(properties, property)) {
+            return ADAPTIVE_PARALLELISM;
+        }
+        return parseParallelism(properties, property, defaultValue);
+    }
+
     private static int parseParallelism(HierarchicalProperties properties, String property, int defaultValue) {
         if (properties != null) {
             var parallelism = properties.getValueString(property);
@@ -333,6 +414,48 @@ public class VersionResolution {
         return defaultValue;
     }
 
+    private static RepositoryProbing parseRepositoryProbing(HierarchicalProperties properties) {
+        if (properties != null) {
+            var probing = properties.getValueString(PROPERTY_REPOSITORY_PROBING);
+            if (probing != null && !probing.isBlank()) {
+                try {
+                    return RepositoryProbing.valueOf(probing.trim().toLowerCase());
+                } catch (IllegalArgumentException e) {
+                    Logger.getLogger("rife.bld").warning("Unable to parse the " + PROPERTY_REPOSITORY_PROBING + " property: '" + probing + "', using " + DEFAULT_REPOSITORY_PROBING + " instead");
+                }
+            }
+        }
+        return DEFAULT_REPOSITORY_PROBING;
+    }
+
+    private static long parseHedgeDelay(HierarchicalProperties properties) {
+        if (properties != null) {
+            var delay = properties.getValueString(PROPERTY_HEDGE_DELAY);
+            if (delay != null && !delay.isBlank()) {
+                try {
+                    return Math.max(0, Long.parseLong(delay.trim()));
+                } catch (NumberFormatException e) {
+                    Logger.getLogger("rife.bld").warning("Unable to parse the " + PROPERTY_HEDGE_DELAY + " property as an integer: '" + delay + "', using " + DEFAULT_HEDGE_DELAY + " instead");
+                }
+            }
+        }
+        return DEFAULT_HEDGE_DELAY;
+    }
+
+    private static long parseSegmentedTransferThreshold(HierarchicalProperties properties) {
+        if (properties != null) {
+            var threshold = properties.getValueString(PROPERTY_SEGMENTED_TRANSFER_THRESHOLD);
+            if (threshold != null && !threshold.isBlank()) {
+                try {
+                    return Math.max(0, Long.parseLong(threshold.trim()));
+                } catch (NumberFormatException e) {
+                    Logger.getLogger("rife.bld").warning("Unable to parse the " + PROPERTY_SEGMENTED_TRANSFER_THRESHOLD + " property as an integer: '" + threshold + "', using " + DEFAULT_SEGMENTED_TRANSFER_THRESHOLD + " instead");
+                }
+            }
+        }
+        return DEFAULT_SEGMENTED_TRANSFER_THRESHOLD;
+    }
+
     /**
      * Overrides the version of a given dependency with the corresponding overridden version.
      *
@@ -480,10 +603,95 @@ public class VersionResolution {
         return transferParallelism_;
     }
 
+    // the processed POMs are cached per resolution instance since the
+    // version overrides determine which parent POMs they're built from
+    MavenPomCache pomCache() {
+        return pomCache_;
+    }
+
+    /**
+     * The part of the keys of the caches that depends on the versions that
+     * this resolution overrides or imports from BOMs.
+     * <p>
+     * The BOM versions can manage thousands of dependencies, the key is
+     * created and hashed once and equal keys of the same resolution are
+     * identical.
+     */
+    static final class CacheKey {
+        private final Map<String, Version> versionOverrides_;
+        private final Map<String, Version> bomVersions_;
+        private final int hash_;
+
+        private CacheKey(Map<String, Version> versionOverrides, Map<String, Version> bomVersions) {
+            versionOverrides_ = Map.copyOf(versionOverrides);
+            bomVersions_ = bomVersions;
+            hash_ = 31 * versionOverrides_.hashCode() + bomVersions_.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other ||
+                   other instanceof CacheKey key &&
+                   hash_ == key.hash_ &&
+                   versionOverrides_.equals(key.versionOverrides_) &&
+                   bomVersions_.equals(key.bomVersions_);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash_;
+        }
+    }
+
+    // the version overrides are determined at instantiation time, the key
+    // doesn't change afterward
+    synchronized CacheKey cacheKey() {
+        if (cacheKey_ == null) {
+            cacheKey_ = new CacheKey(versionOverrides_, bomVersions_);
+        }
+        return cacheKey_;
+    }
+
+    /**
+     * Returns the number of times that a processed POM, like a shared
+     * parent POM or an imported BOM, was reused from the cache of this
+     * resolution instead of being retrieved and parsed again.
+     *
+     * @return the number of POM cache hits
+     * @since 2.4.0
+     */
+    public long pomCacheHits() {
+        return pomCache_.hits();
+    }
+
+    /**
+     * Returns the number of times that a POM had to be retrieved and
+     * parsed since it wasn't in the cache of this resolution yet.
+     *
+     * @return the number of POM cache misses
+     * @since 2.4.0
+     */
+    public long pomCacheMisses() {
+        return pomCache_.misses();
+    }
+
+    /**
+     * Returns whether the transfer or resolution parallelism adapts during
+     * the build, the parallelism is then bounded by the number of requests
+     * that the artifact retriever allows for each repository.
+     *
+     * @return {@code true} when the parallelism is adaptive; or
+     * {@code false} otherwise
+     * @since 2.4.0
+     */
+    public boolean adaptiveParallelism() {
+        return adaptiveParallelism_;
+    }
+
     /**
-     * Returns the number of POMs that are speculatively retrieved in parallel
-     * during transitive dependency resolution, {@code 1} means the parallel
-     * retrieval is disabled.
+     * Returns the number of POMs that are retrieved in parallel while
+     * expanding the transitive dependency graph, {@code 1} means the
+     * resolution is sequential.
      *
      * @return the number of parallel POM retrievals
      * @since 2.4.0
@@ -491,4 +699,47 @@ public class VersionResolution {
     public int resolutionParallelism() {
         return resolutionParallelism_;
     }
+
+    /**
+     * Returns how the repositories are probed for POMs and Maven metadata.
+     *
+     * @return the repository probing
+     * @since 2.4.0
+     */
+    public RepositoryProbing repositoryProbing() {
+        return repositoryProbing_;
+    }
+
+    /**
+     * Returns the number of milliseconds that hedged probing waits for a
+     * repository before also probing the next one.
+     *
+     * @return the hedge delay in milliseconds
+     * @since 2.4.0
+     */
+    public long hedgeDelay() {
+        return hedgeDelay_;
+    }
+
+    /**
+     * Returns from how many bytes onwards a single artifact is transferred
+     * in segments.
+     *
+     * @return the segmented transfer threshold in bytes
+     * @since 2.4.0
+     */
+    public long segmentedTransferThreshold() {
+        return segmentedTransferThreshold_;
+    }
+
+    /**
+     * Returns in how many segments a large artifact is transferred in
+     * parallel, {@code 1} means segmented transfers are disabled.
+     *
+     * @return the number of transfer segments
+     * @since 2.4.0
+     */
+    public int transferSegments() {
+        return transferSegments_;
+    }
 }
@@ -29,9 +29,9 @@ class Xml2MavenPom extends Xml2Data {
     private final Set<PomDependency> dependencies_ = new LinkedHashSet<>();
     private final Map<String, String> mavenProperties_ = new HashMap<>();
     private final Stack<String> elementStack_ = new Stack<>();
+    private final List<Runnable> deferred_ = new ArrayList<>();
     private ExclusionSet exclusions_ = null;
 
-    private boolean initialParse_ = true;
     private boolean collectProperties_ = false;
     private boolean collectDependencyManagement_ = false;
     private boolean collectDependencies_ = false;
@@ -56,6 +56,20 @@ class Xml2MavenPom extends Xml2Data {
         repositories_ = repositories;
     }
 
+    // creates a copy of this processed POM for another dependency, a POM
+    // is never modified after it was processed so that it can be shared
+    Xml2MavenPom withParent(Dependency parent) {
+        var result = new Xml2MavenPom(parent, resolution_, retriever_, repositories_);
+        result.mavenProperties_.putAll(mavenProperties_);
+        for (var entry : dependencyManagement_.entrySet()) {
+            result.dependencyManagement_.put(entry.getKey().withParent(parent), entry.getValue().withParent(parent));
+        }
+        for (var dependency : dependencies_) {
+            result.dependencies_.add(dependency.withParent(parent));
+        }
+        return result;
+    }
+
     Set<PomDependency> getDependencies(Scope... scopes) {
         if (scopes == null || scopes.length == 0) {
             return Collections.emptySet();
@@ -156,37 +170,33 @@ class Xml2MavenPom extends Xml2Data {
     public void startElement(String uri, String localName, String qName, Attributes attributes) {
         characterData_ = new StringBuilder();
 
-        if (initialParse_) {
-            if (qName.equals("properties")) {
+        switch (qName) {
+            case "properties" -> {
                 if (isChildOfProject()) {
                     collectProperties_ = true;
                 }
             }
-        }
-        else {
-            switch (qName) {
-                case "parent" -> resetState();
-                case "dependencyManagement" -> {
-                    if (isChildOfProject()) {
-                        collectDependencyManagement_ = true;
-                    }
-                }
-                case "dependencies" -> {
-                    if (isChildOfProject()) {
-                        resetState();
-                        collectDependencies_ = true;
-                    }
+            case "parent" -> resetState();
+            case "dependencyManagement" -> {
+                if (isChildOfProject()) {
+                    collectDependencyManagement_ = true;
                 }
-                case "exclusions" -> {
-                    if (collectDependencyManagement_ || collectDependencies_) {
-                        collectExclusions_ = true;
-                        exclusions_ = new ExclusionSet();
-                    }
+            }
+            case "dependencies" -> {
+                if (isChildOfProject()) {
+                    resetState();
+                    collectDependencies_ = true;
                 }
-                case "dependency" -> {
-                    if (collectDependencies_) resetState();
+            }
+            case "exclusions" -> {
+                if (collectDependencyManagement_ || collectDependencies_) {
+                    collectExclusions_ = true;
+                    exclusions_ = new ExclusionSet();
                 }
             }
+            case "dependency" -> {
+                if (collectDependencies_) resetState();
+            }
         }
 
         elementStack_.push(qName);
@@ -195,33 +205,30 @@ class Xml2MavenPom extends Xml2Data {
     public void endElement(String uri, String localName, String qName) {
         elementStack_.pop();
 
-        if (initialParse_) {
+        if (collectProperties_) {
+            if (qName.equals("properties")) {
+                collectProperties_ = false;
+            } else {
+                mavenProperties_.put(qName, getCharacterData());
+            }
+        } else {
             switch (qName) {
-                case "properties" -> collectProperties_ = false;
-                case "project" -> initialParse_ = false;
-                default -> {
-                    if (collectProperties_) {
-                        mavenProperties_.put(qName, getCharacterData());
+                case "project" -> {
+                    if (elementStack_.isEmpty()) {
+                        // all the properties are known now, process the
+                        // POM in document order
+                        for (var action : deferred_) {
+                            action.run();
+                        }
+                        deferred_.clear();
                     }
                 }
-            }
-        }
-        else {
-            switch (qName) {
                 case "parent" -> {
                     if (isChildOfProject()) {
-                        var parent_dependency = new Dependency(resolveMavenProperties(lastGroupId_), resolveMavenProperties(lastArtifactId_), Version.parse(resolveMavenProperties(lastVersion_)));
-                        var parent = new DependencyResolver(resolution_, retriever_, repositories_, parent_dependency).getMavenPom(parent_);
-
-                        parent.mavenProperties_.keySet().removeAll(mavenProperties_.keySet());
-                        mavenProperties_.putAll(parent.mavenProperties_);
-
-                        parent.dependencyManagement_.keySet().removeAll(dependencyManagement_.keySet());
-                        dependencyManagement_.putAll(parent.dependencyManagement_);
-
-                        parent.dependencies_.removeAll(dependencies_);
-                        dependencies_.addAll(parent.dependencies_);
-
+                        final var group_id = lastGroupId_;
+                        final var artifact_id = lastArtifactId_;
+                        final var version = lastVersion_;
+                        deferred_.add(() -> mergeParent(group_id, artifact_id, version));
                         resetState();
                     }
                 }
@@ -234,26 +241,15 @@ class Xml2MavenPom extends Xml2Data {
                     }
                 }
                 case "dependency" -> {
-                    var dependency = new PomDependency(lastGroupId_, lastArtifactId_, lastVersion_, lastClassifier_, lastType_, lastScope_, lastOptional_, exclusions_, parent_);
+                    final var dependency = new PomDependency(lastGroupId_, lastArtifactId_, lastVersion_, lastClassifier_, lastType_, lastScope_, lastOptional_, exclusions_, parent_);
                     if (collectDependencyManagement_) {
                         if (dependency.isPomImport()) {
-                            var import_dependency = new Dependency(resolveMavenProperties(lastGroupId_), resolveMavenProperties(lastArtifactId_), Version.parse(resolveMavenProperties(lastVersion_)));
-                            var imported_pom = new DependencyResolver(resolution_, retriever_, repositories_, import_dependency).getMavenPom(parent_);
-                            imported_pom.dependencyManagement_.keySet().removeAll(dependencyManagement_.keySet());
-                            var resolved_dependencies = new LinkedHashSet<PomDependency>();
-                            for (var managed_dependency : imported_pom.dependencyManagement_.keySet()) {
-                                resolved_dependencies.add(imported_pom.resolveDependency(managed_dependency));
-                            }
-
-                            resolved_dependencies.removeAll(dependencyManagement_.keySet());
-                            for (var resolved_dependency : resolved_dependencies) {
-                                dependencyManagement_.put(resolved_dependency, resolved_dependency);
-                            }
+                            deferred_.add(() -> mergeImport(dependency));
                         } else {
-                            dependencyManagement_.put(dependency, dependency);
+                            deferred_.add(() -> dependencyManagement_.put(dependency, dependency));
                         }
                     } else if (collectDependencies_) {
-                        dependencies_.add(dependency);
+                        deferred_.add(() -> dependencies_.add(dependency));
                     }
                     resetState();
                 }
@@ -322,6 +318,33 @@ class Xml2MavenPom extends Xml2Data {
         characterData_ = null;
     }
 
+    private void mergeParent(String groupId, String artifactId, String version) {
+        var parent_dependency = new Dependency(resolveMavenProperties(groupId), resolveMavenProperties(artifactId), Version.parse(resolveMavenProperties(version)));
+        var parent = new DependencyResolver(resolution_, retriever_, repositories_, parent_dependency).getMavenPom(parent_);
+
+        // the entries of this POM take precedence, the
+        // parent POM itself is left untouched
+        parent.mavenProperties_.forEach(mavenProperties_::putIfAbsent);
+        parent.dependencyManagement_.forEach(dependencyManagement_::putIfAbsent);
+        dependencies_.addAll(parent.dependencies_);
+    }
+
+    private void mergeImport(PomDependency dependency) {
+        var import_dependency = new Dependency(resolveMavenProperties(dependency.groupId()), resolveMavenProperties(dependency.artifactId()), Version.parse(resolveMavenProperties(dependency.version())));
+        var imported_pom = new DependencyResolver(resolution_, retriever_, repositories_, import_dependency).getMavenPom(parent_);
+        var resolved_dependencies = new LinkedHashSet<PomDependency>();
+        for (var managed_dependency : imported_pom.dependencyManagement_.keySet()) {
+            if (!dependencyManagement_.containsKey(managed_dependency)) {
+                resolved_dependencies.add(imported_pom.resolveDependency(managed_dependency));
+            }
+        }
+
+        resolved_dependencies.removeAll(dependencyManagement_.keySet());
+        for (var resolved_dependency : resolved_dependencies) {
+            dependencyManagement_.put(resolved_dependency, resolved_dependency);
+        }
+    }
+
     private boolean isChildOfProject() {
         return "project".equals(elementStack_.peek());
     }
@@ -346,11 +369,13 @@ class Xml2MavenPom extends Xml2Data {
     }
 
     private void addProjectProperty(String name) {
-        mavenProperties_.put("project." + name, getCharacterData());
+        final var value = getCharacterData();
+        deferred_.add(() -> mavenProperties_.put("project." + name, value));
     }
 
     private void addProjectParentProperty(String name) {
-        mavenProperties_.put("project.parent." + name, getCharacterData());
+        final var value = getCharacterData();
+        deferred_.add(() -> mavenProperties_.put("project.parent." + name, value));
     }
 
     private String getCharacterData() {
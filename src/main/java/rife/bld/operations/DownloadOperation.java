@@ -42,13 +42,15 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
     private File libTestModulesDirectory_;
     private boolean downloadSources_ = false;
     private boolean downloadJavadoc_ = false;
+    private DependencyLock dependencyLock_ = null;
     private final DependencyTransferBatch transfers_ = new DependencyTransferBatch();
 
     /**
      * Performs the download operation.
      * <p>
-     * The artifact transfers of all the scopes are collected first and then
-     * performed together in a single parallel batch.
+     * The artifact transfers of each scope start as soon as that scope is
+     * resolved, while the next scopes are still being resolved. All the
+     * transfers are performed by a single parallel batch.
      *
      * @since 1.5
      */
@@ -62,17 +64,41 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
             System.out.println("Analyzing dependencies...");
         }
         executeReportUncoveredDependencies();
-        executeDownloadCompileDependencies();
-        executeDownloadProvidedDependencies();
-        executeDownloadRuntimeDependencies();
-        executeDownloadStandaloneDependencies();
-        executeDownloadTestDependencies();
-        executeTransferDependencies();
+        var resolution = new VersionResolution(properties());
+        transfers().start(resolution, artifactRetriever(), repositories(), dependencyLock());
+        try {
+            executeDownloadCompileDependencies();
+            executeDownloadProvidedDependencies();
+            executeDownloadRuntimeDependencies();
+            executeDownloadStandaloneDependencies();
+            executeDownloadTestDependencies();
+            executeTransferDependencies();
+        } finally {
+            transfers().cancel();
+        }
+        if (verbose() && resolution.adaptiveParallelism()) {
+            executeReportConcurrency();
+        }
         if (!silent()) {
             System.out.println("Downloading finished successfully.");
         }
     }
 
+    /**
+     * Part of the {@link #execute} operation, reports the number of
+     * concurrent requests that the adaptive parallelism settled on for each
+     * repository.
+     *
+     * @since 2.4.0
+     */
+    protected void executeReportConcurrency() {
+        var latencies = artifactRetriever().repositoryLatency();
+        for (var entry : artifactRetriever().repositoryConcurrency().entrySet()) {
+            System.out.println("Adaptive concurrency for '" + entry.getKey() + "': " + entry.getValue() +
+                               " requests, " + latencies.getOrDefault(entry.getKey(), 0L) + " ms average latency");
+        }
+    }
+
     /**
      * Part of the {@link #execute} operation, warns about version-less
      * dependencies that are not covered by a BOM in their scope.
@@ -133,7 +159,7 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
      * @since 1.5
      */
     protected void executeDownloadCompileDependencies() {
-        executeDownloadDependencies(libCompileDirectory(), libCompileModulesDirectory(), dependencies().resolveCompileDependencies(properties(), artifactRetriever(), repositories()));
+        executeDownloadDependencies(libCompileDirectory(), libCompileModulesDirectory(), dependencies().resolveCompileDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -142,7 +168,7 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
      * @since 1.8
      */
     protected void executeDownloadProvidedDependencies() {
-        executeDownloadDependencies(libProvidedDirectory(), libProvidedModulesDirectory(), dependencies().resolveProvidedDependencies(properties(), artifactRetriever(), repositories()));
+        executeDownloadDependencies(libProvidedDirectory(), libProvidedModulesDirectory(), dependencies().resolveProvidedDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -151,7 +177,7 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
      * @since 1.5
      */
     protected void executeDownloadRuntimeDependencies() {
-        executeDownloadDependencies(libRuntimeDirectory(), libRuntimeModulesDirectory(), dependencies().resolveRuntimeDependencies(properties(), artifactRetriever(), repositories()));
+        executeDownloadDependencies(libRuntimeDirectory(), libRuntimeModulesDirectory(), dependencies().resolveRuntimeDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -160,7 +186,7 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
      * @since 1.5
      */
     protected void executeDownloadStandaloneDependencies() {
-        executeDownloadDependencies(libStandaloneDirectory(), libStandaloneModulesDirectory(), dependencies().resolveStandaloneDependencies(properties(), artifactRetriever(), repositories()));
+        executeDownloadDependencies(libStandaloneDirectory(), libStandaloneModulesDirectory(), dependencies().resolveStandaloneDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -169,7 +195,7 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
      * @since 1.5
      */
     protected void executeDownloadTestDependencies() {
-        executeDownloadDependencies(libTestDirectory(), libTestModulesDirectory(), dependencies().resolveTestDependencies(properties(), artifactRetriever(), repositories()));
+        executeDownloadDependencies(libTestDirectory(), libTestModulesDirectory(), dependencies().resolveTestDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -201,12 +227,17 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
     /**
      * Part of the {@link #execute} operation, perform all the collected
      * artifact transfers of the {@linkplain #transfers() transfer batch}
-     * together in parallel.
+     * together in parallel, or wait for them to finish when the batch was
+     * already started.
      *
      * @since 2.4.0
      */
     protected void executeTransferDependencies() {
-        transfers().transfer(new VersionResolution(properties()), artifactRetriever(), repositories());
+        if (transfers().isStarted()) {
+            transfers().transfer();
+        } else {
+            transfers().transfer(new VersionResolution(properties()), artifactRetriever(), repositories(), dependencyLock());
+        }
     }
 
     /**
@@ -244,7 +275,8 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
             .libTestDirectory(project.libTestDirectory())
             .libTestModulesDirectory(project.libTestModulesDirectory())
             .downloadSources(project.downloadSources())
-            .downloadJavadoc(project.downloadJavadoc());
+            .downloadJavadoc(project.downloadJavadoc())
+            .dependencyLock(project.dependencyLock());
     }
 
     /**
@@ -455,6 +487,23 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
         return this;
     }
 
+    /**
+     * Provides the lock of the resolved dependencies to use.
+     * <p>
+     * The locked dependencies are used instead of resolving the scopes
+     * when they were locked for the current declarations, and the resolved
+     * scopes are locked otherwise.
+     *
+     * @param lock the dependency lock; or {@code null} to always resolve
+     *             the dependencies
+     * @return this operation instance
+     * @since 2.4.0
+     */
+    public DownloadOperation dependencyLock(DependencyLock lock) {
+        dependencyLock_ = lock;
+        return this;
+    }
+
     /**
      * Provides the artifact retriever to use.
      *
@@ -625,6 +674,17 @@ public class DownloadOperation extends AbstractOperation<DownloadOperation> {
         return downloadJavadoc_;
     }
 
+    /**
+     * Retrieves the lock of the resolved dependencies that is used.
+     *
+     * @return the dependency lock; or {@code null} when the dependencies
+     * are always resolved
+     * @since 2.4.0
+     */
+    public DependencyLock dependencyLock() {
+        return dependencyLock_;
+    }
+
     /**
      * Returns the artifact retriever that is used.
      *
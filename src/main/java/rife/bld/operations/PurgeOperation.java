@@ -42,6 +42,7 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
     private File libTestModulesDirectory_;
     private boolean preserveSources_ = false;
     private boolean preserveJavadoc_ = false;
+    private DependencyLock dependencyLock_ = null;
 
     /**
      * Performs the purge operation.
@@ -70,7 +71,7 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
      * @since 1.5
      */
     protected void executePurgeCompileDependencies() {
-        executePurgeDependencies(libCompileDirectory(), libCompileModulesDirectory(), dependencies().resolveCompileDependencies(properties(), artifactRetriever(), repositories()));
+        executePurgeDependencies(libCompileDirectory(), libCompileModulesDirectory(), dependencies().resolveCompileDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -79,7 +80,7 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
      * @since 1.8
      */
     protected void executePurgeProvidedDependencies() {
-        executePurgeDependencies(libProvidedDirectory(), libProvidedModulesDirectory(), dependencies().resolveProvidedDependencies(properties(), artifactRetriever(), repositories()));
+        executePurgeDependencies(libProvidedDirectory(), libProvidedModulesDirectory(), dependencies().resolveProvidedDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -88,7 +89,7 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
      * @since 1.5
      */
     protected void executePurgeRuntimeDependencies() {
-        executePurgeDependencies(libRuntimeDirectory(), libRuntimeModulesDirectory(), dependencies().resolveRuntimeDependencies(properties(), artifactRetriever(), repositories()));
+        executePurgeDependencies(libRuntimeDirectory(), libRuntimeModulesDirectory(), dependencies().resolveRuntimeDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -97,7 +98,7 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
      * @since 1.5
      */
     protected void executePurgeStandaloneDependencies() {
-        executePurgeDependencies(libStandaloneDirectory(), libStandaloneModulesDirectory(), dependencies().resolveStandaloneDependencies(properties(), artifactRetriever(), repositories()));
+        executePurgeDependencies(libStandaloneDirectory(), libStandaloneModulesDirectory(), dependencies().resolveStandaloneDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -106,7 +107,7 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
      * @since 1.5
      */
     protected void executePurgeTestDependencies() {
-        executePurgeDependencies(libTestDirectory(), libTestModulesDirectory(), dependencies().resolveTestDependencies(properties(), artifactRetriever(), repositories()));
+        executePurgeDependencies(libTestDirectory(), libTestModulesDirectory(), dependencies().resolveTestDependencies(properties(), artifactRetriever(), repositories(), dependencyLock()));
     }
 
     /**
@@ -193,7 +194,8 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
             .libTestDirectory(project.libTestDirectory())
             .libTestModulesDirectory(project.libTestModulesDirectory())
             .preserveSources(project.downloadSources())
-            .preserveJavadoc(project.downloadJavadoc());
+            .preserveJavadoc(project.downloadJavadoc())
+            .dependencyLock(project.dependencyLock());
     }
 
     /**
@@ -246,6 +248,23 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
         return this;
     }
 
+    /**
+     * Provides the lock of the resolved dependencies to use.
+     * <p>
+     * The locked dependencies are used instead of resolving the scopes
+     * when they were locked for the current declarations, and the resolved
+     * scopes are locked otherwise.
+     *
+     * @param lock the dependency lock; or {@code null} to always resolve
+     *             the dependencies
+     * @return this operation instance
+     * @since 2.4.0
+     */
+    public PurgeOperation dependencyLock(DependencyLock lock) {
+        dependencyLock_ = lock;
+        return this;
+    }
+
     /**
      * Provides repositories to resolve the dependencies against.
      *
@@ -574,6 +593,17 @@ public class PurgeOperation extends AbstractOperation<PurgeOperation> {
         return preserveJavadoc_;
     }
 
+    /**
+     * Retrieves the lock of the resolved dependencies that is used.
+     *
+     * @return the dependency lock; or {@code null} when the dependencies
+     * are always resolved
+     * @since 2.4.0
+     */
+    public DependencyLock dependencyLock() {
+        return dependencyLock_;
+    }
+
     /**
      * Returns the artifact retriever that is used.
      *
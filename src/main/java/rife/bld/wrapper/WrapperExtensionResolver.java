@@ -46,7 +46,7 @@ public class WrapperExtensionResolver {
 
         resolution_ = new VersionResolution(properties);
 
-        retriever_ = ArtifactRetriever.cachingInstance();
+        retriever_ = ArtifactRetriever.cachingInstance(properties);
         Repository.resolveMavenLocal(properties);
 
         destinationDirectory_ = destinationDirectory;
@@ -128,7 +128,8 @@ public class WrapperExtensionResolver {
     private void purgeExtensionDependencies(Set<String> filenames) {
         for (var file : destinationDirectory_.listFiles()) {
             if (file.getName().startsWith(Wrapper.WRAPPER_PREFIX) ||
-                file.getName().equals(Wrapper.BLD_CACHE)) {
+                file.getName().equals(Wrapper.BLD_CACHE) ||
+                file.getName().equals(DependencyLock.BLD_LOCK)) {
                 continue;
             }
             if (!filenames.contains(file.getName())) {
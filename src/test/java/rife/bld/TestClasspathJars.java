@@ -1198,8 +1198,8 @@ public class TestClasspathJars {
         return server;
     }
 
-    // the POM prefetcher can still have a speculative request in flight
-    // when resolution returns, count requests only after they settle
+    // requests can still be in flight on the server when resolution
+    // returns, count them only after they settle
     static int settledRequests(java.util.concurrent.atomic.AtomicInteger requests)
     throws InterruptedException {
         var last = requests.get();
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides a local repository server and POM fixtures for testing
+ * resolutions without relying on remote repositories.
+ */
+abstract class ResolutionTestHelper {
+    static HttpServer createRepositoryServer(Map<String, String> files, Map<String, Integer> requests)
+    throws IOException {
+        return createRepositoryServer(files, requests, 0, new AtomicInteger());
+    }
+
+    // delays each response so that concurrent requests overlap, and tracks
+    // how many of them were in progress at the same time
+    static HttpServer createRepositoryServer(Map<String, String> files, Map<String, Integer> requests, long delayMillis, AtomicInteger maxConcurrentRequests)
+    throws IOException {
+        var active_requests = new AtomicInteger();
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            maxConcurrentRequests.accumulateAndGet(active_requests.incrementAndGet(), Math::max);
+            try {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active_requests.decrementAndGet();
+            }
+
+            var path = exchange.getRequestURI().getPath().substring(1);
+            requests.merge(path, 1, Integer::sum);
+            var content = files.get(path);
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                var body = content.getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+
+    static Repository serverRepository(HttpServer server) {
+        return new Repository("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    static String pomPath(String artifact, String version) {
+        return "com/example/" + artifact + "/" + version + "/" + artifact + "-" + version + ".pom";
+    }
+
+    static String parent(String artifact, String version) {
+        return "<parent><groupId>com.example</groupId><artifactId>" + artifact + "</artifactId><version>" + version + "</version></parent>";
+    }
+
+    static String dependency(String artifact, String version) {
+        return "<dependency><groupId>com.example</groupId><artifactId>" + artifact + "</artifactId><version>" + version + "</version></dependency>";
+    }
+
+    static String pom(String artifact, String version, String parent, String dependencies) {
+        return """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project>
+                <modelVersion>4.0.0</modelVersion>
+                %s
+                <groupId>com.example</groupId>
+                <artifactId>%s</artifactId>
+                <version>%s</version>
+                <dependencies>%s</dependencies>
+            </project>""".formatted(parent, artifact, version, dependencies);
+    }
+
+    static String bom(String artifact, String version, String managed) {
+        return """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project>
+                <modelVersion>4.0.0</modelVersion>
+                <groupId>com.example</groupId>
+                <artifactId>%s</artifactId>
+                <version>%s</version>
+                <packaging>pom</packaging>
+                <dependencyManagement><dependencies>%s</dependencies></dependencyManagement>
+            </project>""".formatted(artifact, version, managed);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.TransferTestHelper.*;
+
+public class TestArtifactChecksums {
+    @Test
+    void testDownloadIsVerified() throws Exception {
+        var files = new HashMap<String, byte[]>();
+        files.put(JAR, CONTENT);
+        // checksum files can also contain the file name
+        files.put(JAR + ".sha1", (hash("SHA-1", CONTENT).toUpperCase() + "  lib-1.0.0.jar\n").getBytes());
+        var server = new ArtifactServer(files);
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(1, server.artifactRequests());
+            assertEquals(1, tmp.list().length);
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testMismatchIsRejected() throws Exception {
+        var files = new HashMap<String, byte[]>();
+        files.put(JAR, CONTENT);
+        files.put(JAR + ".sha256", hash("SHA-256", "other content".getBytes()).getBytes());
+        files.put(JAR + ".md5", hash("MD5", CONTENT).getBytes());
+        var server = new ArtifactServer(files);
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            // the strongest checksum is the one that's verified
+            assertThrows(IOException.class, () -> ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(0, tmp.list().length);
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testFailedChecksumRetrievalIsNotSkipped() throws Exception {
+        var files = new HashMap<String, byte[]>();
+        files.put(JAR, CONTENT);
+        files.put(JAR + ".sha256", hash("SHA-256", CONTENT).getBytes());
+        files.put(JAR + ".md5", hash("MD5", CONTENT).getBytes());
+        var server = new ArtifactServer(files).failPath(JAR + ".sha256");
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            // an error isn't mistaken for a checksum that isn't published
+            assertThrows(IOException.class, () -> ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(0, tmp.list().length);
+
+            // the next transfer retrieves the checksum again
+            server.recoverPath(JAR + ".sha256");
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testExistingFileIsVerifiedLocally() throws Exception {
+        var files = new HashMap<String, byte[]>();
+        files.put(JAR, CONTENT);
+        files.put(JAR + ".sha256", hash("SHA-256", CONTENT).getBytes());
+        var server = new ArtifactServer(files);
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            var jar = new File(tmp, "lib-1.0.0.jar");
+            FileUtils.writeBytes(CONTENT, jar);
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(0, server.artifactRequests());
+
+            // a corrupted file is replaced
+            FileUtils.writeString("corrupted", jar);
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(1, server.artifactRequests());
+            assertArrayEquals(CONTENT, FileUtils.readBytes(jar));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testDownloadWithoutChecksums() throws Exception {
+        var server = new ArtifactServer(Map.of(JAR, CONTENT));
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testVerifiedFilesAreTrustedAcrossBuilds() throws Exception {
+        var files = new HashMap<String, byte[]>();
+        files.put(JAR, CONTENT);
+        files.put(JAR + ".sha256", hash("SHA-256", CONTENT).getBytes());
+        var server = new ArtifactServer(files);
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        var cache = Files.createTempDirectory("cache").toFile();
+        try {
+            var jar = new File(tmp, "lib-1.0.0.jar");
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(2, server.requests());
+
+            // another build trusts the verified file without any request
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(2, server.requests());
+
+            // a modified file is verified again against the cached checksum and replaced
+            FileUtils.writeString("corrupted", jar);
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(jar));
+            assertEquals(3, server.requests());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+            FileUtils.deleteDirectory(cache);
+        }
+    }
+
+    @Test
+    void testChecksumIndexIsMergedAndPruned() throws Exception {
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            var index_file = new File(tmp, "checksums.properties");
+            var repository = new Repository("https://repo.example.com/");
+            var first = new File(tmp, "first.jar");
+            var second = new File(tmp, "second.jar");
+            FileUtils.writeString("first", first);
+            FileUtils.writeString("second", second);
+
+            // concurrent builds only write when they save and keep each other's entries
+            var build1 = new ChecksumIndex(index_file);
+            var build2 = new ChecksumIndex(index_file);
+            build1.verified(new RepositoryArtifact(repository, repository.location() + "first.jar"), first, "SHA-256:1");
+            build2.verified(new RepositoryArtifact(repository, repository.location() + "second.jar"), second, "SHA-256:2");
+            assertFalse(index_file.exists());
+            build1.save();
+            build2.save();
+            var build3 = new ChecksumIndex(index_file);
+            assertEquals("SHA-256:1", build3.verifiedChecksum(new RepositoryArtifact(repository, repository.location() + "first.jar"), first));
+            assertEquals("SHA-256:2", build3.verifiedChecksum(new RepositoryArtifact(repository, repository.location() + "second.jar"), second));
+
+            // the entries of files that don't exist anymore are pruned
+            assertTrue(first.delete());
+            FileUtils.writeString("updated", second);
+            build3.verified(new RepositoryArtifact(repository, repository.location() + "second.jar"), second, "SHA-256:3");
+            build3.save();
+            assertFalse(FileUtils.readString(index_file).contains("first.jar"));
+            assertEquals("SHA-256:3", new ChecksumIndex(index_file).verifiedChecksum(new RepositoryArtifact(repository, repository.location() + "second.jar"), second));
+        } finally {
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testUncachedRetrieverVerifiesEachTime() throws Exception {
+        var files = new HashMap<String, byte[]>();
+        files.put(JAR, CONTENT);
+        files.put(JAR + ".sha256", hash("SHA-256", CONTENT).getBytes());
+        var server = new ArtifactServer(files);
+        var tmp = Files.createTempDirectory("checksums").toFile();
+        try {
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertEquals(3, server.requests());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+}
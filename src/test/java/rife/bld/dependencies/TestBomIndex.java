@@ -0,0 +1,121 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+
+public class TestBomIndex {
+    private static final Map<String, String> BOMS = Map.of(
+        pomPath("bom-a", "1.0"), bom("bom-a", "1.0", dependency("lib", "1.0") + dependency("util", "1.0")),
+        pomPath("bom-b", "1.0"), bom("bom-b", "1.0", dependency("lib", "2.0") + dependency("tool", "1.0")),
+        pomPath("bom-c", "1.0"), bom("bom-c", "1.0", dependency("tool", "3.0")));
+
+    private static final List<Bom> ALL_BOMS = List.of(
+        new Bom("com.example", "bom-a", Version.parse("1.0")),
+        new Bom("com.example", "bom-b", Version.parse("1.0")),
+        new Bom("com.example", "bom-c", Version.parse("1.0")));
+
+    @Test
+    void testBomsAreIndexedOnce() throws Exception {
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(BOMS, requests);
+        server.start();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var properties = new HierarchicalProperties();
+            var retriever = ArtifactRetriever.cachingInstance();
+
+            var resolution = new VersionResolution(properties, retriever, repositories, ALL_BOMS);
+            assertEquals(Version.parse("1.0"), resolution.bomVersions().get("com.example:lib:jar:"));
+            assertEquals(Version.parse("1.0"), resolution.bomVersions().get("com.example:tool:jar:"));
+            assertEquals(Version.parse("1.0"), resolution.bomVersions().get("com.example:util:jar:"));
+            assertEquals(3, retriever.bomIndex().misses());
+
+            // the conflict reports and the other scopes reuse the index
+            var conflicts = VersionResolution.resolveBomVersionConflicts(properties, retriever, repositories, ALL_BOMS);
+            assertEquals("[BomVersionConflict[dependency=com.example:lib, bomVersions={com.example:bom-a=1.0, com.example:bom-b=2.0}], " +
+                         "BomVersionConflict[dependency=com.example:tool, bomVersions={com.example:bom-b=1.0, com.example:bom-c=3.0}]]", conflicts.toString());
+            var declared = VersionResolution.resolveDeclaredVersionConflicts(properties, retriever, repositories, ALL_BOMS,
+                List.of(new Dependency("com.example", "tool", Version.parse("2.0"))));
+            assertEquals("[DeclaredVersionConflict[dependency=com.example:tool, declaredVersion=2.0, bom=com.example:bom-b, bomVersion=1.0]]", declared.toString());
+            new VersionResolution(properties, retriever, repositories, ALL_BOMS.subList(1, 3));
+            assertEquals(3, retriever.bomIndex().misses());
+            assertEquals(8, retriever.bomIndex().hits());
+            for (var bom : BOMS.keySet()) {
+                assertEquals(Integer.valueOf(1), requests.get(bom), bom);
+            }
+
+            // version overrides apply to the BOMs, they're indexed separately
+            properties.put(VersionResolution.PROPERTY_OVERRIDE_PREFIX, "com.example:lib:5.0");
+            new VersionResolution(properties, retriever, repositories, ALL_BOMS);
+            assertEquals(6, retriever.bomIndex().misses());
+
+            // without caching the BOMs are retrieved each time
+            new VersionResolution(properties, ArtifactRetriever.instance(), repositories, ALL_BOMS);
+            new VersionResolution(properties, ArtifactRetriever.instance(), repositories, ALL_BOMS);
+            for (var bom : BOMS.keySet()) {
+                assertEquals(Integer.valueOf(3), requests.get(bom), bom);
+            }
+            assertNotSame(ArtifactRetriever.instance().bomIndex(), ArtifactRetriever.instance().bomIndex());
+            assertSame(retriever.bomIndex(), retriever.bomIndex());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testBomsAreRetrievedInParallel() throws Exception {
+        var max_in_progress = new AtomicInteger();
+        var server = createRepositoryServer(BOMS, new ConcurrentHashMap<>(), 200, max_in_progress);
+        server.start();
+        try {
+            var resolution = new VersionResolution(new HierarchicalProperties(), ArtifactRetriever.cachingInstance(), List.of(serverRepository(server)), ALL_BOMS);
+            assertTrue(max_in_progress.get() > 1, "the BOMs weren't retrieved in parallel");
+            // the precedence still follows the order of the BOMs
+            assertEquals(Version.parse("1.0"), resolution.bomVersions().get("com.example:tool:jar:"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedBomsAreEvicted() throws Exception {
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(BOMS, requests);
+        server.start();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var resolution = new VersionResolution(null);
+            var retriever = ArtifactRetriever.cachingInstance();
+            // only a single one of the BOMs fits
+            var index = new BomIndex(1000);
+
+            var first = index.get(resolution, retriever, repositories, ALL_BOMS.subList(0, 1));
+            assertEquals("1.0", first.get(0).get("com.example:lib:jar:").version().toString());
+            assertEquals(0, index.evictions());
+            index.get(resolution, retriever, repositories, ALL_BOMS.subList(1, 2));
+            assertEquals(1, index.evictions());
+            assertTrue(index.size() <= 1000);
+
+            // the evicted BOM is processed again and the result is complete
+            var again = index.get(resolution, retriever, repositories, ALL_BOMS.subList(0, 2));
+            assertEquals(3, index.misses());
+            assertEquals(1, index.hits());
+            assertEquals(first.get(0), again.get(0));
+            assertEquals("2.0", again.get(1).get("com.example:lib:jar:").version().toString());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
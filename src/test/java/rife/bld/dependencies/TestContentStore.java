@@ -0,0 +1,93 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.TransferTestHelper.*;
+
+public class TestContentStore {
+    @Test
+    void testStoredContentIsLinkedAcrossDirectories() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-1", JAR, SNAPSHOT_JAR));
+        var tmp = Files.createTempDirectory("store").toFile();
+        var cache = new File(tmp, "cache");
+        var compile = new File(tmp, "compile");
+        var runtime = new File(tmp, "runtime");
+        var other = new File(tmp, "other");
+        compile.mkdirs();
+        runtime.mkdirs();
+        other.mkdirs();
+        try {
+            // the jar, and its checksum after the missing SHA-256 checksum
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), compile));
+            assertEquals(3, server.requests());
+
+            // the same artifact is linked into another scope and another build
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), runtime));
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), other));
+            assertEquals(3, server.requests());
+
+            var compile_jar = new File(compile, "lib-1.0.0.jar");
+            var runtime_jar = new File(runtime, "lib-1.0.0.jar");
+            var other_jar = new File(other, "lib-1.0.0.jar");
+            assertArrayEquals(CONTENT, FileUtils.readBytes(runtime_jar));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(other_jar));
+            assertTrue(Files.isSameFile(compile_jar.toPath(), runtime_jar.toPath()));
+            assertTrue(Files.isSameFile(compile_jar.toPath(), other_jar.toPath()));
+            // the content is stored by the SHA-256 hash that was computed during the transfer
+            var content_hash = hash("SHA-256", CONTENT);
+            assertTrue(Files.isSameFile(compile_jar.toPath(), new File(cache, "store/" + content_hash.substring(0, 2) + "/" + content_hash).toPath()));
+
+            // content that was modified through a link isn't used anymore
+            FileUtils.writeString("corrupted", other_jar);
+            var test = new File(tmp, "test");
+            test.mkdirs();
+            assertTrue(ArtifactRetriever.persistentInstance(cache, 600).transferIntoDirectory(server.artifact(JAR), test));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(test, "lib-1.0.0.jar")));
+            assertEquals(4, server.requests());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testSnapshotsAreNotStored() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-1", JAR, SNAPSHOT_JAR));
+        var tmp = Files.createTempDirectory("store").toFile();
+        var cache = new File(tmp, "cache");
+        var compile = new File(tmp, "compile");
+        var runtime = new File(tmp, "runtime");
+        compile.mkdirs();
+        runtime.mkdirs();
+        try {
+            var retriever = ArtifactRetriever.persistentInstance(cache, 600);
+            assertTrue(retriever.transferIntoDirectory(server.artifact(SNAPSHOT_JAR), compile));
+            assertTrue(retriever.transferIntoDirectory(server.artifact(SNAPSHOT_JAR), runtime));
+            assertFalse(Files.isSameFile(new File(compile, "lib-1.0.0-SNAPSHOT.jar").toPath(), new File(runtime, "lib-1.0.0-SNAPSHOT.jar").toPath()));
+            assertFalse(new File(cache, "store").exists());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testContentHash() throws Exception {
+        var tmp = Files.createTempFile("content", ".jar").toFile();
+        try {
+            FileUtils.writeBytes(CONTENT, tmp);
+            assertEquals(hash("SHA-256", CONTENT), ContentStore.hash(tmp));
+        } finally {
+            tmp.delete();
+        }
+    }
+}
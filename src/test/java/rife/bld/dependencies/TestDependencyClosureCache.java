@@ -0,0 +1,196 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+public class TestDependencyClosureCache {
+    @Test
+    void testRootsAreSharedAcrossScopes() throws Exception {
+        var files = new HashMap<String, String>();
+        files.put(pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "1.0")));
+        files.put(pomPath("lib", "1.0"), pom("lib", "1.0", "", dependency("util", "1.0")));
+        files.put(pomPath("tool", "1.0"), pom("tool", "1.0", "", dependency("lib", "2.0")));
+        files.put(pomPath("lib", "2.0"), pom("lib", "2.0", "", ""));
+        files.put(pomPath("util", "1.0"), pom("util", "1.0", "", ""));
+        var server = createRepositoryServer(files, new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var properties = new HierarchicalProperties();
+            var scopes = new DependencyScopes();
+            scopes.scope(Scope.compile).include(new Dependency("com.example", "app", Version.parse("1.0")));
+            scopes.scope(Scope.runtime).include(new Dependency("com.example", "tool", Version.parse("1.0")));
+            scopes.scope(Scope.test).include(new Dependency("com.example", "tool", Version.parse("1.0")));
+
+            var retriever = ArtifactRetriever.cachingInstance();
+            var closures = retriever.closureCache();
+            var runtime = scopes.resolveRuntimeDependencies(properties, retriever, repositories);
+            assertEquals(0, closures.hits());
+            assertEquals(3, closures.misses());
+
+            // the test scope resolves the runtime root with the same transitive scopes
+            var test = scopes.resolveTestDependencies(properties, retriever, repositories);
+            assertEquals(1, closures.hits());
+            assertEquals(3, closures.misses());
+
+            // the results are identical to resolving without reuse
+            assertEquals(scopes.resolveRuntimeDependencies(properties, ArtifactRetriever.instance(), repositories).toString(), runtime.toString());
+            assertEquals(scopes.resolveTestDependencies(properties, ArtifactRetriever.instance(), repositories).toString(), test.toString());
+            assertEquals("[com.example:tool:1.0, com.example:lib:2.0]", test.toString());
+
+            assertEquals(runtime.toString(), scopes.resolveRuntimeDependencies(properties, retriever, repositories).toString());
+            assertEquals(4, closures.hits());
+            assertEquals(3, closures.misses());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCopiesAreBoundToRequestingRoot() throws Exception {
+        var server = createRepositoryServer(Map.of(
+            pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "1.0")),
+            pomPath("lib", "1.0"), pom("lib", "1.0", "", dependency("util", "1.0")),
+            pomPath("util", "1.0"), pom("util", "1.0", "", "")), new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var resolution = new VersionResolution(null);
+            var retriever = ArtifactRetriever.cachingInstance();
+            var resolver = new ParallelDependencyResolver(resolution, retriever, repositories);
+
+            var declared = new Dependency("com.example", "app", Version.parse("1.0")).excludeSources();
+            var first = resolver.resolveEachDependency(List.of(declared), compile).get(0);
+            first.get(new Dependency("com.example", "lib")).excludedClassifiers().add(Dependency.CLASSIFIER_JAVADOC);
+
+            var other = new Dependency("com.example", "app", Version.parse("1.0"));
+            var second = resolver.resolveEachDependency(List.of(other), compile).get(0);
+            assertEquals(1, retriever.closureCache().hits());
+            assertEquals(first.toString(), second.toString());
+            assertEquals(first.generateDependencyTree(), second.generateDependencyTree());
+
+            var root = second.get(other);
+            assertSame(other, root);
+            assertTrue(root.excludedClassifiers().isEmpty());
+            var lib = second.get(new Dependency("com.example", "lib"));
+            assertTrue(lib.excludedClassifiers().isEmpty());
+            assertSame(root, lib.parent());
+            assertSame(lib, second.get(new Dependency("com.example", "util")).parent());
+
+            // other exclusions or another retriever resolve the root again
+            var excluding = new Dependency("com.example", "app", Version.parse("1.0")).exclude("com.example", "util");
+            assertEquals("[com.example:app:1.0, com.example:lib:1.0]", resolver.resolveEachDependency(List.of(excluding), compile).get(0).toString());
+            assertEquals(1, retriever.closureCache().hits());
+            assertNull(ArtifactRetriever.instance().closureCache());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testSubgraphsAreSharedAcrossRoots() throws Exception {
+        var server = createRepositoryServer(Map.of(
+            pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "1.0")),
+            pomPath("tool", "1.0"), pom("tool", "1.0", "", dependency("lib", "1.0")),
+            pomPath("other", "1.0"), pom("other", "1.0", "", dependency("util", "2.0") + dependency("lib", "1.0")),
+            pomPath("lib", "1.0"), pom("lib", "1.0", "", dependency("util", "1.0")),
+            pomPath("util", "1.0"), pom("util", "1.0", "", ""),
+            pomPath("util", "2.0"), pom("util", "2.0", "", "")), new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var properties = new HierarchicalProperties();
+            properties.put(VersionResolution.PROPERTY_RESOLUTION_PARALLELISM, "1");
+            var resolution = new VersionResolution(properties);
+            var roots = List.of(
+                new Dependency("com.example", "app", Version.parse("1.0")),
+                new Dependency("com.example", "tool", Version.parse("1.0")).exclude("com.example", "util"),
+                new Dependency("com.example", "other", Version.parse("1.0")));
+
+            var retriever = ArtifactRetriever.cachingInstance();
+            var closures = retriever.closureCache();
+            var resolved = new ParallelDependencyResolver(resolution, retriever, repositories).resolveEachDependency(roots, compile);
+            // app expands lib and util 1.0, the other roots reuse lib
+            assertEquals(2, closures.childrenHits());
+            assertEquals(6, closures.childrenMisses());
+
+            // the exclusions of each path still apply and the order of each root is kept
+            var uncached = new ParallelDependencyResolver(resolution, ArtifactRetriever.instance(), repositories).resolveEachDependency(roots, compile);
+            assertEquals("[com.example:tool:1.0, com.example:lib:1.0]", resolved.get(1).toString());
+            assertEquals("[com.example:other:1.0, com.example:util:2.0, com.example:lib:1.0]", resolved.get(2).toString());
+            for (var i = 0; i < roots.size(); ++i) {
+                assertEquals(uncached.get(i).toString(), resolved.get(i).toString());
+                assertEquals(uncached.get(i).generateDependencyTree(), resolved.get(i).generateDependencyTree());
+            }
+            assertSame(resolved.get(2).get(new Dependency("com.example", "other")), resolved.get(2).get(new Dependency("com.example", "lib")).parent());
+
+            // the parallel expansion shares the same subgraphs
+            var parallel = ArtifactRetriever.cachingInstance();
+            var expanded = new ParallelDependencyResolver(new VersionResolution(null), parallel, repositories).resolveEachDependency(roots, compile);
+            assertEquals(resolved.toString(), expanded.toString());
+            assertTrue(parallel.closureCache().childrenHits() > 0);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedClosuresAreEvicted() {
+        var resolution = new VersionResolution(null);
+        var repositories = List.of(new Repository("https://repo.example.com/"));
+        var closures = new DependencyClosureCache(1024);
+        var app = new Dependency("com.example", "app", Version.parse("1.0"));
+        var tool = new Dependency("com.example", "tool", Version.parse("1.0"));
+        var other = new Dependency("com.example", "other", Version.parse("1.0"));
+        for (var root : List.of(app, tool)) {
+            var closure = new DependencySet();
+            closure.add(root);
+            closures.put(resolution, repositories, root, new Scope[]{compile}, closure);
+        }
+        assertNotNull(closures.get(resolution, repositories, app, compile));
+
+        // the closure of tool was used the longest ago
+        var closure = new DependencySet();
+        closure.add(other);
+        closures.put(resolution, repositories, other, new Scope[]{compile}, closure);
+        assertEquals(1, closures.evictions());
+        assertTrue(closures.size() <= 1024);
+        assertNull(closures.get(resolution, repositories, tool, compile));
+        assertNotNull(closures.get(resolution, repositories, app, compile));
+        assertNotNull(closures.get(resolution, repositories, other, compile));
+
+        // a closure that doesn't fit at all isn't kept
+        var large = new DependencySet();
+        for (var i = 0; i < 20; ++i) {
+            large.add(new Dependency("com.example", "lib" + i, Version.parse("1.0")));
+        }
+        var excluding = new Dependency("com.example", "app", Version.parse("1.0")).exclude("com.example", "util");
+        closures.put(resolution, repositories, excluding, new Scope[]{compile}, large);
+        assertNull(closures.get(resolution, repositories, excluding, compile));
+        assertNotNull(closures.get(resolution, repositories, app, compile));
+    }
+
+    @Test
+    void testResolutionKeyIsCreatedOnce() {
+        var properties = new HierarchicalProperties();
+        properties.put(VersionResolution.PROPERTY_OVERRIDE_PREFIX, "com.example:lib:2.0");
+        var resolution = new VersionResolution(properties);
+        assertSame(resolution.cacheKey(), resolution.cacheKey());
+        assertEquals(resolution.cacheKey(), new VersionResolution(properties).cacheKey());
+        assertEquals(resolution.cacheKey().hashCode(), new VersionResolution(properties).cacheKey().hashCode());
+        assertNotEquals(resolution.cacheKey(), new VersionResolution(null).cacheKey());
+    }
+}
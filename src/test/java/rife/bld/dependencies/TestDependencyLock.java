@@ -0,0 +1,317 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.bld.dependencies.exceptions.DependencyTransferException;
+import rife.ioc.HierarchicalProperties;
+import rife.tools.FileUtils;
+import rife.tools.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+
+public class TestDependencyLock {
+    @Test
+    void testLockedParents() throws Exception {
+        var tmp = Files.createTempDirectory("lock").toFile();
+        try {
+            var root = new Dependency("com.example", "root", new VersionNumber(1, 0, 0));
+            var child = new Dependency("com.example", "child", new VersionNumber(2, 0, 0), "tests", null, null, root);
+            var grandchild = new Dependency("com.example", "grandchild", new VersionNumber(3, 0, 0), null, null, null, child);
+            var dependencies = new DependencySet();
+            // the child isn't part of the locked set, it's stored as an ancestor
+            dependencies.add(grandchild);
+            dependencies.add(root);
+
+            new DependencyLock(new File(tmp, DependencyLock.BLD_LOCK)).put("abc", Scope.compile, dependencies);
+            var content = FileUtils.readString(new File(tmp, DependencyLock.BLD_LOCK));
+            assertEquals("""
+                compile=\\
+                    com.example:grandchild:3.0.0 2\\n\\
+                    com.example:root:1.0.0\\n\\
+                    ~com.example:child:2.0.0:tests 1
+                fingerprint=abc
+                """, content);
+            new DependencyLock(new File(tmp, DependencyLock.BLD_LOCK)).put("abc", Scope.compile, dependencies);
+            assertEquals(content, FileUtils.readString(new File(tmp, DependencyLock.BLD_LOCK)));
+
+            var lock = new DependencyLock(new File(tmp, DependencyLock.BLD_LOCK));
+            assertNull(lock.get("def", Scope.compile));
+            assertNull(lock.get("abc", Scope.runtime));
+            var locked = lock.get("abc", Scope.compile);
+            assertEquals(List.of(grandchild, root), List.copyOf(locked));
+
+            var locked_grandchild = locked.get(grandchild);
+            assertEquals("com.example:grandchild:3.0.0", locked_grandchild.toString());
+            assertEquals("com.example:child:2.0.0:tests", locked_grandchild.parent().toString());
+            assertSame(locked.get(root), locked_grandchild.parent().parent());
+            assertEquals(dependencies.generateDependencyTree(), locked.generateDependencyTree());
+
+            // another fingerprint discards the locked scopes
+            lock.put("def", Scope.runtime, new DependencySet());
+            assertNull(lock.get("def", Scope.compile));
+            assertTrue(lock.get("def", Scope.runtime).isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testLockedScopesAreNotResolved() throws Exception {
+        var files = new HashMap<String, String>();
+        files.put(pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "2.0")));
+        files.put(pomPath("lib", "2.0"), pom("lib", "2.0", "", ""));
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(files, requests);
+        server.start();
+        var tmp = Files.createTempDirectory("lock").toFile();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var scopes = new DependencyScopes();
+            scopes.scope(Scope.compile).include(new Dependency("com.example", "app", Version.parse("1.0")).excludeSources());
+            var properties = new HierarchicalProperties();
+
+            var lock = new DependencyLock(new File(tmp, DependencyLock.BLD_LOCK));
+            var resolved = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, lock);
+            assertEquals("[com.example:app:1.0, com.example:lib:2.0]", resolved.toString());
+            var resolve_requests = Map.copyOf(requests);
+            assertFalse(resolve_requests.isEmpty());
+
+            var locked = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock.file()));
+            assertEquals(resolved.toString(), locked.toString());
+            assertEquals(resolve_requests, requests);
+            assertTrue(locked.get(new Dependency("com.example", "app")).excludedClassifiers().contains(Dependency.CLASSIFIER_SOURCES));
+            assertEquals("com.example:app:1.0", locked.get(new Dependency("com.example", "lib")).parent().toString());
+
+            // changed declarations are resolved again
+            scopes.scope(Scope.compile).include(new Dependency("com.example", "lib", Version.parse("2.0")));
+            scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock.file()));
+            assertNotEquals(resolve_requests, requests);
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testLockedScopeEqualsResolvedScope() throws Exception {
+        var files = new HashMap<String, String>();
+        files.put(pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "2.0")));
+        files.put(pomPath("lib", "2.0"), pom("lib", "2.0", "", ""));
+        files.put(pomPath("tool", "1.0"), pom("tool", "1.0", "", dependency("util", "1.0")));
+        files.put(pomPath("util", "1.0"), pom("util", "1.0", "", ""));
+        var server = createRepositoryServer(files, new ConcurrentHashMap<>());
+        server.start();
+        var tmp = Files.createTempDirectory("lock").toFile();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var properties = new HierarchicalProperties();
+            var scopes = new DependencyScopes();
+            scopes.scope(Scope.compile)
+                .include(new Dependency("com.example", "app", Version.parse("1.0"), "jdk11").exclude("com.example", "other").excludeSources())
+                .include(new Dependency("com.example", "tool", Version.parse("1.0"), null, Dependency.TYPE_MODULAR_JAR).excludeJavadoc());
+
+            var retriever = ArtifactRetriever.cachingInstance();
+            var lock_file = new File(tmp, DependencyLock.BLD_LOCK);
+            scopes.resolveCompileDependencies(properties, retriever, repositories, new DependencyLock(lock_file));
+            var locked = scopes.resolveCompileDependencies(properties, retriever, repositories, new DependencyLock(lock_file));
+            var resolved = scopes.resolveCompileDependencies(properties, retriever, repositories);
+
+            assertEquals("[com.example:app:1.0:jdk11, com.example:lib:2.0, com.example:tool:1.0@modular-jar, com.example:util:1.0@modular-jar]", resolved.toString());
+            assertEquals(describe(resolved), describe(locked));
+            // the declared roots aren't modified by the locked resolution
+            var declared_app = scopes.scope(Scope.compile).get(new Dependency("com.example", "app", null, "jdk11"));
+            assertEquals(Set.of(Dependency.CLASSIFIER_SOURCES), declared_app.excludedClassifiers());
+            assertNotSame(declared_app, locked.get(declared_app));
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static List<String> describe(DependencySet dependencies) {
+        return dependencies.stream()
+            .map(dependency -> dependency + " classifier=" + dependency.classifier() + " type=" + dependency.type() +
+                               " parent=" + dependency.parent() + " exclusions=" + dependency.exclusions() +
+                               " excludedClassifiers=" + new TreeSet<>(dependency.excludedClassifiers()))
+            .toList();
+    }
+
+    @Test
+    void testChangedExclusionsAreResolved() throws Exception {
+        var files = new HashMap<String, String>();
+        files.put(pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "2.0") + dependency("other", "1.0")));
+        files.put(pomPath("lib", "2.0"), pom("lib", "2.0", "", ""));
+        files.put(pomPath("other", "1.0"), pom("other", "1.0", "", ""));
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(files, requests);
+        server.start();
+        var tmp = Files.createTempDirectory("lock").toFile();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var properties = new HierarchicalProperties();
+            var lock_file = new File(tmp, DependencyLock.BLD_LOCK);
+            var scopes = new DependencyScopes();
+            scopes.scope(Scope.compile).include(new Dependency("com.example", "app", Version.parse("1.0")));
+            var resolved = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock_file));
+            assertEquals("[com.example:app:1.0, com.example:lib:2.0, com.example:other:1.0]", resolved.toString());
+
+            // only an exclusion changed, the scope is resolved again
+            requests.clear();
+            var excluded = new DependencyScopes();
+            excluded.scope(Scope.compile).include(new Dependency("com.example", "app", Version.parse("1.0")).exclude("com.example", "other"));
+            var locked = excluded.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock_file));
+            assertEquals("[com.example:app:1.0, com.example:lib:2.0]", locked.toString());
+            assertEquals(1, requests.get(pomPath("app", "1.0")));
+
+            // and again once the exclusion is removed
+            requests.clear();
+            locked = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock_file));
+            assertEquals(resolved.toString(), locked.toString());
+            assertEquals(1, requests.get(pomPath("app", "1.0")));
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testOnlyChangedRootsAreResolved() throws Exception {
+        var files = new HashMap<String, String>();
+        files.put(pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "1.0")));
+        files.put(pomPath("lib", "1.0"), pom("lib", "1.0", "", ""));
+        files.put(pomPath("tool", "1.0"), pom("tool", "1.0", "", dependency("lib", "2.0")));
+        files.put(pomPath("tool", "1.1"), pom("tool", "1.1", "", dependency("lib", "2.0") + dependency("util", "1.0")));
+        files.put(pomPath("lib", "2.0"), pom("lib", "2.0", "", ""));
+        files.put(pomPath("util", "1.0"), pom("util", "1.0", "", ""));
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(files, requests);
+        server.start();
+        var tmp = Files.createTempDirectory("lock").toFile();
+        try {
+            var repositories = List.of(serverRepository(server));
+            var properties = new HierarchicalProperties();
+            var lock_file = new File(tmp, DependencyLock.BLD_LOCK);
+            var scopes = new DependencyScopes();
+            scopes.scope(Scope.compile)
+                .include(new Dependency("com.example", "app", Version.parse("1.0")))
+                .include(new Dependency("com.example", "tool", Version.parse("1.0")));
+            scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock_file));
+
+            // only the root whose version changed is resolved again
+            requests.clear();
+            var changed = new DependencyScopes();
+            changed.scope(Scope.compile)
+                .include(new Dependency("com.example", "app", Version.parse("1.0")))
+                .include(new Dependency("com.example", "tool", Version.parse("1.1")));
+            var locked = changed.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, new DependencyLock(lock_file));
+            assertNull(requests.get(pomPath("app", "1.0")));
+            assertEquals(1, requests.get(pomPath("tool", "1.1")));
+
+            // the conflicts between the roots are still resolved by merging them
+            var resolved = changed.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories);
+            assertEquals("[com.example:app:1.0, com.example:tool:1.1, com.example:lib:2.0, com.example:util:1.0]", resolved.toString());
+            assertEquals(resolved.toString(), locked.toString());
+
+            // the roots that weren't reused are discarded
+            var lock = new Properties();
+            try (var input = new FileInputStream(lock_file)) {
+                lock.load(input);
+            }
+            assertEquals(2, lock.stringPropertyNames().stream().filter(name -> name.startsWith("root.")).count());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testLockedArtifactsAreVerified() throws Exception {
+        var files = new ConcurrentHashMap<String, String>();
+        files.put(pomPath("app", "1.0"), pom("app", "1.0", "", dependency("lib", "2.0")));
+        files.put(pomPath("lib", "2.0"), pom("lib", "2.0", "", ""));
+        putJar(files, "app", "1.0", "app content");
+        putJar(files, "lib", "2.0", "lib content");
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(files, requests);
+        var mirror_requests = new ConcurrentHashMap<String, Integer>();
+        var mirror = createRepositoryServer(Map.copyOf(files), mirror_requests);
+        server.start();
+        mirror.start();
+        var tmp = Files.createTempDirectory("lock").toFile();
+        try {
+            var properties = new HierarchicalProperties();
+            var lock_file = new File(tmp, DependencyLock.BLD_LOCK);
+            var scopes = new DependencyScopes();
+            scopes.scope(Scope.compile).include(new Dependency("com.example", "app", Version.parse("1.0")));
+
+            var repositories = List.of(serverRepository(server));
+            var lock = new DependencyLock(lock_file);
+            var dependencies = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), repositories, lock);
+            new DependencyTransferBatch().add(dependencies, new File(tmp, "lib1"), null).transfer(new VersionResolution(null), ArtifactRetriever.instance(), repositories, lock);
+            var locked = new Properties();
+            try (var input = new FileInputStream(lock_file)) {
+                locked.load(input);
+            }
+            assertEquals(serverRepository(server).location() + " SHA-1:" + sha1("app content"), locked.getProperty("artifact.com.example:app:1.0"));
+            assertEquals(serverRepository(server).location() + " SHA-1:" + sha1("lib content"), locked.getProperty("artifact.com.example:lib:2.0"));
+
+            // on another machine the artifacts are transferred from the repository
+            // they're locked with, even when a mirror is declared before it, and
+            // verified without retrieving their checksums
+            requests.clear();
+            var mirrored = List.of(serverRepository(mirror), serverRepository(server));
+            lock = new DependencyLock(lock_file);
+            dependencies = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), mirrored, lock);
+            new DependencyTransferBatch().add(dependencies, new File(tmp, "lib2"), null).transfer(new VersionResolution(null), ArtifactRetriever.instance(), mirrored, lock);
+            assertEquals("app content", FileUtils.readString(new File(tmp, "lib2/app-1.0.jar")));
+            assertEquals(Set.of(jarPath("app", "1.0"), jarPath("lib", "2.0")), requests.keySet());
+            assertTrue(mirror_requests.keySet().stream().noneMatch(path -> path.contains(".jar")));
+            // the locked artifacts are kept for the new declarations
+            assertTrue(FileUtils.readString(lock_file).contains("artifact.com.example\\:lib\\:2.0="));
+
+            // an artifact that the repository replaced since it was locked isn't accepted
+            putJar(files, "lib", "2.0", "replaced content");
+            var replaced_lock = new DependencyLock(lock_file);
+            var replaced = scopes.resolveCompileDependencies(properties, ArtifactRetriever.instance(), mirrored, replaced_lock);
+            assertThrows(DependencyTransferException.class, () -> new DependencyTransferBatch().add(replaced, new File(tmp, "lib3"), null)
+                .transfer(new VersionResolution(null), ArtifactRetriever.instance(), List.of(serverRepository(server)), replaced_lock));
+            assertFalse(new File(tmp, "lib3/lib-2.0.jar").exists());
+        } finally {
+            server.stop(0);
+            mirror.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static String jarPath(String artifact, String version) {
+        return pomPath(artifact, version).replace(".pom", ".jar");
+    }
+
+    private static void putJar(Map<String, String> files, String artifact, String version, String content)
+    throws Exception {
+        files.put(jarPath(artifact, version), content);
+        files.put(jarPath(artifact, version) + ".sha1", sha1(content));
+    }
+
+    private static String sha1(String content)
+    throws Exception {
+        return StringUtils.encodeHexLower(MessageDigest.getInstance("SHA-1").digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -2349,7 +2349,7 @@ public class TestDependencyResolver {
     }
 
     @RetryTest(value = 3, delay = 2, withExceptions = IOException.class)
-    void testGetAllDependenciesParallelPomPrefetching() throws Exception {
+    void testGetAllDependenciesParallelExpansion() throws Exception {
         var max_concurrent_retrievals = new AtomicInteger();
         var server = createPomServer(max_concurrent_retrievals);
         server.start();
@@ -2357,7 +2357,7 @@ public class TestDependencyResolver {
             var repositories = List.of(new Repository("http://localhost:" + server.getAddress().getPort() + "/"));
             var root = new Dependency("com.example", "root", new VersionNumber(1, 0, 0));
 
-            // the caching retriever enables parallel POM prefetching
+            // the levels of the dependency graph are expanded in parallel
             var resolver = new DependencyResolver(VersionResolution.dummy(), ArtifactRetriever.cachingInstance(), repositories, root);
             assertEquals(StringUtils.convertLineSeparator("""
                 com.example:root:1.0.0
@@ -2375,7 +2375,7 @@ public class TestDependencyResolver {
     }
 
     @RetryTest(value = 3, delay = 2, withExceptions = IOException.class)
-    void testGetAllDependenciesSequentialWithoutCachingRetriever() throws Exception {
+    void testGetAllDependenciesParallelWithoutCachingRetriever() throws Exception {
         var max_concurrent_retrievals = new AtomicInteger();
         var server = createPomServer(max_concurrent_retrievals);
         server.start();
@@ -2383,9 +2383,28 @@ public class TestDependencyResolver {
             var repositories = List.of(new Repository("http://localhost:" + server.getAddress().getPort() + "/"));
             var root = new Dependency("com.example", "root", new VersionNumber(1, 0, 0));
 
-            // the uncached retriever disables prefetching, retrievals stay sequential
+            // the expansion doesn't rely on the retriever to cache the POMs
             var resolver = new DependencyResolver(VersionResolution.dummy(), ArtifactRetriever.instance(), repositories, root);
             assertEquals(8, resolver.getAllDependencies(compile).size());
+            assertTrue(max_concurrent_retrievals.get() > 1, "expected concurrent POM retrievals, max was " + max_concurrent_retrievals.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @RetryTest(value = 3, delay = 2, withExceptions = IOException.class)
+    void testGetAllDependenciesSequentialWithoutParallelism() throws Exception {
+        var max_concurrent_retrievals = new AtomicInteger();
+        var server = createPomServer(max_concurrent_retrievals);
+        server.start();
+        try {
+            var repositories = List.of(new Repository("http://localhost:" + server.getAddress().getPort() + "/"));
+            var root = new Dependency("com.example", "root", new VersionNumber(1, 0, 0));
+
+            var properties = new HierarchicalProperties();
+            properties.put(VersionResolution.PROPERTY_RESOLUTION_PARALLELISM, "1");
+            var resolver = new DependencyResolver(new VersionResolution(properties), ArtifactRetriever.cachingInstance(), repositories, root);
+            assertEquals(8, resolver.getAllDependencies(compile).size());
             assertEquals(1, max_concurrent_retrievals.get(), "expected sequential POM retrievals, max was " + max_concurrent_retrievals.get());
         } finally {
             server.stop(0);
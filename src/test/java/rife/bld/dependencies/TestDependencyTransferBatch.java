@@ -6,11 +6,14 @@ package rife.bld.dependencies;
 
 import org.junit.jupiter.api.Test;
 import rife.bld.dependencies.exceptions.DependencyTransferException;
+import rife.ioc.HierarchicalProperties;
 import rife.tools.FileUtils;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -75,6 +78,116 @@ public class TestDependencyTransferBatch {
         }
     }
 
+    @Test
+    void testStartedTransfers() throws Exception {
+        var server = createTransferServer(new AtomicInteger());
+        server.start();
+        var tmp1 = Files.createTempDirectory("transfers1").toFile();
+        var tmp2 = Files.createTempDirectory("transfers2").toFile();
+        try {
+            var set1 = createTransferDependencies(1, 3);
+            var set2 = createTransferDependencies(4, 6);
+            var repositories = List.of(transferRepository(server));
+            var resolution = new VersionResolution(null);
+
+            var batch = new DependencyTransferBatch()
+                .add(set1, tmp1, tmp1)
+                .start(resolution, ArtifactRetriever.instance(), repositories);
+
+            // the transfers that were added before starting are performed
+            // without waiting for the batch to be transferred
+            var deadline = System.currentTimeMillis() + 10000;
+            while (!new File(tmp1, "artifact3-1.0.0.jar").exists() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(new File(tmp1, "artifact1-1.0.0.jar").exists());
+            assertTrue(new File(tmp1, "artifact3-1.0.0.jar").exists());
+
+            batch.add(set2, tmp2, tmp2)
+                 .add(set1, tmp1, tmp1);
+            assertTrue(batch.isStarted());
+            // the context can't differ from the one that the batch was started with
+            assertThrows(IllegalStateException.class, () -> batch.transfer(resolution, ArtifactRetriever.instance(), repositories));
+            var artifacts = batch.transfer();
+
+            // the artifacts are returned in the order they were added
+            assertEquals(6, artifacts.size());
+            assertTransferredArtifacts(set1, artifacts.subList(0, 3), tmp1);
+            assertTransferredArtifacts(set2, artifacts.subList(3, 6), tmp2);
+
+            // the batch isn't started anymore after the transfer
+            var set3 = createTransferDependencies(7, 8);
+            batch.add(set3, tmp1, tmp1);
+            assertFalse(new File(tmp1, "artifact7-1.0.0.jar").exists());
+            assertFalse(batch.isStarted());
+            assertThrows(IllegalStateException.class, batch::transfer);
+            batch.cancel();
+            assertTrue(batch.transfer(resolution, ArtifactRetriever.instance(), repositories).isEmpty());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp1);
+            FileUtils.deleteDirectory(tmp2);
+        }
+    }
+
+    @Test
+    void testStartedTransfersUseBoundedWorkers() throws Exception {
+        var max_concurrent_transfers = new AtomicInteger();
+        var server = createTransferServer(max_concurrent_transfers);
+        server.start();
+        var tmp = Files.createTempDirectory("transfers").toFile();
+        try {
+            var properties = new HierarchicalProperties();
+            properties.put(VersionResolution.PROPERTY_TRANSFER_PARALLELISM, "2");
+            var resolution = new VersionResolution(properties);
+            var dependencies = createTransferDependencies(1, 12);
+            var batch = new DependencyTransferBatch()
+                .start(resolution, ArtifactRetriever.instance(), List.of(transferRepository(server)))
+                .add(dependencies, tmp, tmp);
+
+            // the transfers that are waiting to start don't occupy threads
+            assertTrue(batchThreads() <= 2, "expected at most 2 transfer threads, found " + batchThreads());
+
+            var artifacts = batch.transfer();
+            assertTransferredArtifacts(dependencies, artifacts, tmp);
+            assertTrue(max_concurrent_transfers.get() <= 2, "transfer parallelism was exceeded: " + max_concurrent_transfers.get());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testCancelWaitsForStartedTransfers() throws Exception {
+        var server = createTransferServer(new AtomicInteger());
+        server.start();
+        var tmp = Files.createTempDirectory("transfers").toFile();
+        try {
+            var properties = new HierarchicalProperties();
+            properties.put(VersionResolution.PROPERTY_TRANSFER_PARALLELISM, "4");
+            var batch = new DependencyTransferBatch()
+                .start(new VersionResolution(properties), ArtifactRetriever.instance(), List.of(transferRepository(server)))
+                .add(createTransferDependencies(1, 8), tmp, tmp);
+            Thread.sleep(100);
+
+            // nothing is written anymore once the batch is cancelled
+            batch.cancel();
+            var files = new TreeSet<>(Arrays.asList(tmp.list()));
+            Thread.sleep(500);
+            assertEquals(files, new TreeSet<>(Arrays.asList(tmp.list())));
+            assertFalse(batch.isStarted());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static long batchThreads() {
+        return Thread.getAllStackTraces().values().stream()
+            .filter(stack -> Arrays.stream(stack).anyMatch(frame -> frame.getClassName().startsWith(DependencyTransferBatch.class.getName())))
+            .count();
+    }
+
     @Test
     void testTransferModularJarsIntoModulesDirectory() throws Exception {
         var server = createTransferServer(new AtomicInteger());
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+/**
+ * Resolves a large synthetic dependency graph from a local repository and
+ * verifies that the traversal order is the one that bld has always produced.
+ */
+public class TestDependencyTraversal {
+    private static final int NODE_COUNT = 5000;
+
+    private static List<Integer> dependenciesOf(int node) {
+        // a tree with an additional cross-link per node, these create
+        // diamonds and cycles that are already queued or resolved
+        var result = new LinkedHashSet<Integer>();
+        if (2 * node + 1 < NODE_COUNT) result.add(2 * node + 1);
+        if (2 * node + 2 < NODE_COUNT) result.add(2 * node + 2);
+        var cross = (node * 31 + 7) % NODE_COUNT;
+        if (cross != node) result.add(cross);
+        return new ArrayList<>(result);
+    }
+
+    private static String name(int node) {
+        return "node" + node;
+    }
+
+    // the traversal as it was originally implemented, with a list as queue
+    private static List<String> expectedOrder() {
+        var result = new LinkedHashSet<Integer>();
+        result.add(0);
+        var queue = new ArrayList<Integer>();
+        Set<Integer> next = new LinkedHashSet<>(dependenciesOf(0));
+        while (next != null) {
+            queue.forEach(next::remove);
+            queue.addAll(next);
+            next = null;
+            while (!queue.isEmpty()) {
+                var candidate = queue.remove(0);
+                if (result.add(candidate)) {
+                    next = new LinkedHashSet<>(dependenciesOf(candidate));
+                    break;
+                }
+            }
+        }
+        return result.stream().map(it -> "com.example:" + name(it) + ":1.0.0").toList();
+    }
+
+    @Test
+    void testLargeGraphOrdering() throws Exception {
+        var tmp = Files.createTempDirectory("traversal").toFile();
+        try {
+            for (var node = 0; node < NODE_COUNT; ++node) {
+                var dependencies = new StringBuilder();
+                for (var dependency : dependenciesOf(node)) {
+                    dependencies.append(dependency(name(dependency), "1.0.0"));
+                }
+                var file = new File(tmp, pomPath(name(node), "1.0.0"));
+                file.getParentFile().mkdirs();
+                FileUtils.writeString(pom(name(node), "1.0.0", "", dependencies.toString()), file);
+            }
+
+            var resolver = new DependencyResolver(new VersionResolution(null), ArtifactRetriever.instance(),
+                List.of(new Repository(tmp.getAbsolutePath())), new Dependency("com.example", name(0), new VersionNumber(1, 0, 0)));
+            var dependencies = resolver.getAllDependencies(compile);
+
+            assertEquals(NODE_COUNT, dependencies.size());
+            assertEquals(expectedOrder(), dependencies.stream().map(Dependency::toString).toList());
+        } finally {
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testConflictingVersionsAreNotExpanded() throws Exception {
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(Map.of(
+            pomPath("app", "1.0"), pom("app", "1.0", "", dependency("liba", "1.0") + dependency("libb", "1.0")),
+            pomPath("liba", "1.0"), pom("liba", "1.0", "", dependency("util", "1.0")),
+            pomPath("libb", "1.0"), pom("libb", "1.0", "", dependency("util", "2.0")),
+            pomPath("util", "1.0"), pom("util", "1.0", "", ""),
+            pomPath("util", "2.0"), pom("util", "2.0", "", "")), requests);
+        server.start();
+        try {
+            var resolver = new DependencyResolver(new VersionResolution(null), ArtifactRetriever.instance(),
+                List.of(serverRepository(server)), new Dependency("com.example", "app", Version.parse("1.0")));
+            assertEquals("[com.example:app:1.0, com.example:liba:1.0, com.example:libb:1.0, com.example:util:1.0]", resolver.getAllDependencies(compile).toString());
+            // the version that the traversal doesn't keep is never retrieved
+            assertNull(requests.get(pomPath("util", "2.0")));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
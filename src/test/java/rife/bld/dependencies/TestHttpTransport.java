@@ -0,0 +1,107 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestHttpTransport {
+    @Test
+    void testConnectionsAreReused() throws Exception {
+        var connections = ConcurrentHashMap.<Integer>newKeySet();
+        var headers = new ConcurrentHashMap<String, String>();
+        var server = createServer(connections, headers);
+        server.start();
+        try {
+            var repository = serverRepository(server);
+            for (var i = 0; i < 10; ++i) {
+                assertEquals("content", HttpTransport.readString(new RepositoryArtifact(repository, repository.location() + "ok/" + i)));
+            }
+            var response = HttpTransport.open(new RepositoryArtifact(repository, repository.location() + "ok/jar"));
+            try (var body = response.body()) {
+                assertEquals("content", new String(body.readAllBytes()));
+            }
+            assertEquals(7, response.contentLength());
+
+            // all the requests were sent over a single kept-alive connection
+            assertEquals(1, connections.size());
+            assertTrue(headers.get("User-Agent").contains("bld"));
+            assertNull(headers.get("Authorization"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCredentials() throws Exception {
+        var headers = new ConcurrentHashMap<String, String>();
+        var server = createServer(ConcurrentHashMap.newKeySet(), headers);
+        server.start();
+        try {
+            var repository = serverRepository(server).withCredentials("user", "pass");
+            HttpTransport.readString(new RepositoryArtifact(repository, repository.location() + "ok/pom"));
+            assertEquals("Basic dXNlcjpwYXNz", headers.get("Authorization"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testStatusExceptions() throws Exception {
+        var server = createServer(ConcurrentHashMap.newKeySet(), new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var repository = serverRepository(server);
+            assertThrows(FileNotFoundException.class, () -> HttpTransport.readString(new RepositoryArtifact(repository, repository.location() + "missing")));
+            assertThrows(FileNotFoundException.class, () -> HttpTransport.open(new RepositoryArtifact(repository, repository.location() + "missing")));
+            var exception = assertThrows(IOException.class, () -> HttpTransport.readString(new RepositoryArtifact(repository, repository.location() + "failing")));
+            assertFalse(exception instanceof FileNotFoundException);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static Repository serverRepository(HttpServer server) {
+        return new Repository("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    private static HttpServer createServer(Set<Integer> connections, Map<String, String> headers)
+    throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            for (var name : new String[]{"User-Agent", "Authorization"}) {
+                var value = exchange.getRequestHeaders().getFirst(name);
+                if (value != null) {
+                    headers.put(name, value);
+                }
+            }
+
+            var path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/ok/")) {
+                var body = "content".getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } else if (path.equals("/failing")) {
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInFlightRequests {
+    private static final String POM = "com/example/lib/1.0.0/lib-1.0.0.pom";
+    private static final String JAR = "com/example/lib/1.0.0/lib-1.0.0.jar";
+
+    @Test
+    void testConcurrentRequestsArePerformedOnce() throws Exception {
+        var requests = new InFlightRequests<String, String>();
+        var performed = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var results = new ArrayList<Future<String>>();
+            for (var i = 0; i < 4; ++i) {
+                results.add(executor.submit(() -> requests.perform("key", () -> {
+                    performed.incrementAndGet();
+                    release.await();
+                    return "result";
+                })));
+            }
+
+            // wait for the other callers to join the request in progress
+            var deadline = System.currentTimeMillis() + 10000;
+            while (requests.shared() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (var result : results) {
+                assertEquals("result", result.get());
+            }
+            assertEquals(1, performed.get());
+            assertEquals(1, requests.performed());
+            assertEquals(3, requests.shared());
+
+            // a request that arrives afterwards is performed again
+            assertEquals("again", requests.perform("key", () -> "again"));
+            assertEquals(2, requests.performed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureIsShared() throws Exception {
+        var requests = new InFlightRequests<String, String>();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var first = executor.submit(() -> requests.perform("key", () -> {
+                started.countDown();
+                release.await();
+                throw new IOException("failed");
+            }));
+            started.await();
+            var second = executor.submit(() -> requests.perform("key", () -> "not performed"));
+
+            var deadline = System.currentTimeMillis() + 10000;
+            while (requests.shared() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            var e1 = assertThrows(Exception.class, first::get);
+            var e2 = assertThrows(Exception.class, second::get);
+            assertTrue(e1.getCause() instanceof IOException);
+            assertSame(e1.getCause(), e2.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentRetrievalsAndTransfersAreShared() throws Exception {
+        var pom_requests = new AtomicInteger();
+        var jar_requests = new AtomicInteger();
+        var server = createServer(pom_requests, jar_requests);
+        server.start();
+        var tmp = Files.createTempDirectory("inflight").toFile();
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var repository = new Repository("http://localhost:" + server.getAddress().getPort() + "/");
+            var retriever = ArtifactRetriever.cachingInstance();
+
+            var retrievals = new ArrayList<Future<String>>();
+            for (var i = 0; i < 4; ++i) {
+                retrievals.add(executor.submit(() -> retriever.readString(new RepositoryArtifact(repository, repository.location() + POM))));
+            }
+            for (var retrieval : retrievals) {
+                assertEquals("<project/>", retrieval.get());
+            }
+            assertEquals(1, pom_requests.get());
+            assertEquals(3, retriever.sharedRetrievals());
+
+            var transfers = new ArrayList<Future<Boolean>>();
+            for (var i = 0; i < 4; ++i) {
+                transfers.add(executor.submit(() -> retriever.transferIntoDirectory(new RepositoryArtifact(repository, repository.location() + JAR), tmp)));
+            }
+            for (var transfer : transfers) {
+                assertTrue(transfer.get());
+            }
+            assertEquals(1, jar_requests.get());
+            assertEquals(3, retriever.sharedTransfers());
+            assertEquals("jar content", FileUtils.readString(new File(tmp, "lib-1.0.0.jar")));
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static HttpServer createServer(AtomicInteger pomRequests, AtomicInteger jarRequests)
+    throws Exception {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            var path = exchange.getRequestURI().getPath().substring(1);
+            byte[] body = null;
+            if (path.equals(POM)) {
+                pomRequests.incrementAndGet();
+                body = "<project/>".getBytes();
+            } else if (path.equals(JAR)) {
+                jarRequests.incrementAndGet();
+                body = "jar content".getBytes();
+            }
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                try {
+                    // keep the request in progress while the others arrive
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.bld.dependencies.exceptions.DependencyException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+public class TestMavenPomCache {
+    private static final String SHARED_PARENT = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <project>
+            <modelVersion>4.0.0</modelVersion>
+            <groupId>com.example</groupId>
+            <artifactId>shared-parent</artifactId>
+            <version>1.0.0</version>
+            <packaging>pom</packaging>
+            <properties><liba.version>2.0.0</liba.version></properties>
+            <dependencyManagement><dependencies>
+                <dependency><groupId>com.example</groupId><artifactId>liba</artifactId><version>${liba.version}</version></dependency>
+            </dependencies></dependencyManagement>
+        </project>""";
+
+    @Test
+    void testSharedParentIsParsedOnce() throws Exception {
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(Map.of(
+            pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", dependency("childa", "1.0.0") + dependency("childb", "1.0.0")),
+            pomPath("shared-parent", "1.0.0"), SHARED_PARENT,
+            pomPath("childa", "1.0.0"), pom("childa", "1.0.0", parent("shared-parent", "1.0.0"), "<dependency><groupId>com.example</groupId><artifactId>liba</artifactId></dependency>"),
+            pomPath("childb", "1.0.0"), pom("childb", "1.0.0", parent("shared-parent", "1.0.0"), ""),
+            pomPath("liba", "2.0.0"), pom("liba", "2.0.0", parent("shared-parent", "1.0.0"), "")), requests);
+        server.start();
+        try {
+            var resolution = new VersionResolution(null);
+            var dependencies = new DependencyResolver(resolution, ArtifactRetriever.instance(), List.of(serverRepository(server)),
+                new Dependency("com.example", "tool", new VersionNumber(1, 0, 0))).getAllDependencies(compile);
+
+            assertEquals("""
+                com.example:tool:1.0.0
+                com.example:childa:1.0.0
+                com.example:childb:1.0.0
+                com.example:liba:2.0.0""", String.join("\n", dependencies.stream().map(Dependency::toString).toList()));
+
+            // the parent is retrieved once even though three POMs use it,
+            // concurrently while the graph is expanded, and the retriever
+            // doesn't cache anything, the traversal then finds all four
+            // dependency POMs in the cache
+            assertEquals(1, requests.get(pomPath("shared-parent", "1.0.0")));
+            assertEquals(6, resolution.pomCacheHits());
+            assertEquals(5, resolution.pomCacheMisses());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCachedPomIsBoundToRequestingDependency() throws Exception {
+        var server = createRepositoryServer(Map.of(
+            pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", dependency("liba", "1.0.0"))), new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var resolution = new VersionResolution(null);
+            var repositories = List.of(serverRepository(server));
+            var tool = new Dependency("com.example", "tool", new VersionNumber(1, 0, 0));
+            var other = new Dependency("com.example", "other", new VersionNumber(1, 0, 0));
+
+            var resolver = new DependencyResolver(resolution, ArtifactRetriever.instance(), repositories, tool);
+            var first = resolver.getMavenPom(tool).getDependencies(compile);
+            var second = resolver.getMavenPom(other).getDependencies(compile);
+
+            assertSame(tool, first.iterator().next().parent());
+            assertSame(other, second.iterator().next().parent());
+            assertEquals(1, resolution.pomCacheHits());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCyclicParentsAreReported() throws Exception {
+        var server = createRepositoryServer(Map.of(
+            pomPath("tool", "1.0.0"), pom("tool", "1.0.0", parent("parenta", "1.0.0"), ""),
+            pomPath("parenta", "1.0.0"), pom("parenta", "1.0.0", parent("parentb", "1.0.0"), ""),
+            pomPath("parentb", "1.0.0"), pom("parentb", "1.0.0", parent("parenta", "1.0.0"), "")), new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var resolver = new DependencyResolver(new VersionResolution(null), ArtifactRetriever.instance(), List.of(serverRepository(server)),
+                new Dependency("com.example", "tool", new VersionNumber(1, 0, 0)));
+            var e = assertThrows(DependencyException.class, () -> resolver.getAllDependencies(compile));
+            assertTrue(e.getMessage().contains("com.example:parenta:1.0.0 -> com.example:parentb:1.0.0 -> com.example:parenta:1.0.0"), e.getMessage());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCyclicParentsAcrossThreadsAreReported() throws Exception {
+        // the delay makes each thread parse one of the parents while
+        // the other thread parses the other one
+        var server = createRepositoryServer(Map.of(
+            pomPath("toola", "1.0.0"), pom("toola", "1.0.0", parent("parenta", "1.0.0"), ""),
+            pomPath("toolb", "1.0.0"), pom("toolb", "1.0.0", parent("parentb", "1.0.0"), ""),
+            pomPath("parenta", "1.0.0"), pom("parenta", "1.0.0", parent("parentb", "1.0.0"), ""),
+            pomPath("parentb", "1.0.0"), pom("parentb", "1.0.0", parent("parenta", "1.0.0"), "")), new ConcurrentHashMap<>(), 500, new AtomicInteger());
+        server.start();
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var resolution = new VersionResolution(null);
+            var repositories = List.of(serverRepository(server));
+            var futures = List.of("toola", "toolb").stream().map(artifact -> executor.submit(() ->
+                new DependencyResolver(resolution, ArtifactRetriever.instance(), repositories,
+                    new Dependency("com.example", artifact, new VersionNumber(1, 0, 0))).getAllDependencies(compile))).toList();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+                for (var future : futures) {
+                    var e = assertThrows(ExecutionException.class, future::get);
+                    assertInstanceOf(DependencyException.class, e.getCause());
+                    assertTrue(e.getCause().getMessage().contains("Cyclic POM references"), e.getCause().getMessage());
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCyclicBomImportsAreReported() throws Exception {
+        var server = createRepositoryServer(Map.of(
+            pomPath("tool", "1.0.0"), pom("tool", "1.0.0", parent("bom1", "1.0.0"), ""),
+            pomPath("bom1", "1.0.0"), bom("bom1", "1.0.0", bomImport("bom2")),
+            pomPath("bom2", "1.0.0"), bom("bom2", "1.0.0", bomImport("bom1"))), new ConcurrentHashMap<>());
+        server.start();
+        try {
+            var resolver = new DependencyResolver(new VersionResolution(null), ArtifactRetriever.instance(), List.of(serverRepository(server)),
+                new Dependency("com.example", "tool", new VersionNumber(1, 0, 0)));
+            var e = assertThrows(DependencyException.class, () -> resolver.getAllDependencies(compile));
+            assertTrue(e.getMessage().contains("com.example:bom1:1.0.0 -> com.example:bom2:1.0.0 -> com.example:bom1:1.0.0"), e.getMessage());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String bomImport(String artifact) {
+        return "<dependency><groupId>com.example</groupId><artifactId>" + artifact + "</artifactId><version>1.0.0</version><type>pom</type><scope>import</scope></dependency>";
+    }
+}
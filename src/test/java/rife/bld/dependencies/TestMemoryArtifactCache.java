@@ -0,0 +1,93 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMemoryArtifactCache {
+    private static final Repository REPOSITORY = new Repository("https://repo.example.com/");
+
+    @Test
+    void testHitsAndMisses() {
+        var cache = new MemoryArtifactCache(1024 * 1024, false);
+        assertNull(cache.get(artifact("a.pom")));
+        cache.put(artifact("a.pom"), "<project>a</project>");
+        assertEquals("<project>a</project>", cache.get(artifact("a.pom")));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0, cache.evictions());
+        assertTrue(cache.size() > 0);
+
+        // replacing an entry doesn't count its previous size
+        var size = cache.size();
+        cache.put(artifact("a.pom"), "<project>a</project>");
+        assertEquals(size, cache.size());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        var content = "x".repeat(1000);
+        var cache = new MemoryArtifactCache(3000, false);
+        cache.put(artifact("a.pom"), content);
+        cache.put(artifact("b.pom"), content);
+        assertNotNull(cache.get(artifact("a.pom")));
+
+        // b wasn't used since a was, so it's evicted first
+        cache.put(artifact("c.pom"), content);
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get(artifact("b.pom")));
+        assertEquals(content, cache.get(artifact("a.pom")));
+        assertEquals(content, cache.get(artifact("c.pom")));
+        assertTrue(cache.size() <= 3000);
+
+        // content that can never fit isn't kept
+        cache.put(artifact("d.pom"), "y".repeat(4000));
+        assertNull(cache.get(artifact("d.pom")));
+        assertEquals(content, cache.get(artifact("c.pom")));
+    }
+
+    @Test
+    void testCompressedContent() {
+        var content = "<dependency><groupId>com.example</groupId></dependency>\n".repeat(200) + "é中";
+        var plain = new MemoryArtifactCache(1024 * 1024, false);
+        var compressed = new MemoryArtifactCache(1024 * 1024, true);
+        plain.put(artifact("a.pom"), content);
+        compressed.put(artifact("a.pom"), content);
+        assertEquals(content, plain.get(artifact("a.pom")));
+        assertEquals(content, compressed.get(artifact("a.pom")));
+        assertTrue(compressed.size() < plain.size() / 4);
+
+        // short content that doesn't compress is kept as is
+        compressed.put(artifact("b.sha1"), "da39a3ee");
+        assertEquals("da39a3ee", compressed.get(artifact("b.sha1")));
+    }
+
+    @Test
+    void testRetrieverProperties() {
+        assertEquals(0, ArtifactRetriever.instance().memoryCacheSize());
+
+        var properties = new HierarchicalProperties();
+        properties.put(ArtifactRetriever.PROPERTY_MEMORY_CACHE_SIZE, "200");
+        var retriever = ArtifactRetriever.cachingInstance(properties);
+        retriever.cache(artifact("a.pom"), "x".repeat(100));
+        assertNull(retriever.getCached(artifact("a.pom")));
+        assertEquals(1, retriever.memoryCacheMisses());
+
+        properties.put(ArtifactRetriever.PROPERTY_MEMORY_CACHE_SIZE, "lots");
+        properties.put(ArtifactRetriever.PROPERTY_MEMORY_CACHE_COMPRESSED, "true");
+        retriever = ArtifactRetriever.cachingInstance(properties);
+        retriever.cache(artifact("a.pom"), "x".repeat(100));
+        assertEquals("x".repeat(100), retriever.getCached(artifact("a.pom")));
+        assertEquals(1, retriever.memoryCacheHits());
+        assertEquals(0, retriever.memoryCacheEvictions());
+    }
+
+    private static RepositoryArtifact artifact(String path) {
+        return new RepositoryArtifact(REPOSITORY, REPOSITORY.location() + path);
+    }
+}
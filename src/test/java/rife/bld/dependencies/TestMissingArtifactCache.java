@@ -0,0 +1,129 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+import rife.tools.exceptions.FileUtilsErrorException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+/**
+ * Repositories that don't contain an artifact are only probed once by
+ * caching retrievers, while transient failures are always retried.
+ */
+public class TestMissingArtifactCache {
+    private static final Dependency TOOL = new Dependency("com.example", "tool", new VersionNumber(1, 0, 0));
+
+    @Test
+    void testNotFoundIsProbedOnce() throws Exception {
+        var empty_requests = new ConcurrentHashMap<String, Integer>();
+        var empty = createRepositoryServer(Map.of(), empty_requests);
+        var serving = createRepositoryServer(Map.of(pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", "")), new ConcurrentHashMap<>());
+        empty.start();
+        serving.start();
+        try {
+            var retriever = ArtifactRetriever.cachingInstance();
+            var repositories = List.of(serverRepository(empty), serverRepository(serving));
+            for (var i = 0; i < 3; ++i) {
+                var resolver = new DependencyResolver(new VersionResolution(null), retriever, repositories, TOOL);
+                assertEquals(1, resolver.getAllDependencies(compile).size());
+            }
+            assertEquals(1, empty_requests.get(pomPath("tool", "1.0.0")));
+        } finally {
+            empty.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testNotFoundIsProbedEachTimeWithoutCaching() throws Exception {
+        var empty_requests = new ConcurrentHashMap<String, Integer>();
+        var empty = createRepositoryServer(Map.of(), empty_requests);
+        var serving = createRepositoryServer(Map.of(pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", "")), new ConcurrentHashMap<>());
+        empty.start();
+        serving.start();
+        try {
+            var repositories = List.of(serverRepository(empty), serverRepository(serving));
+            for (var i = 0; i < 3; ++i) {
+                var resolver = new DependencyResolver(new VersionResolution(null), ArtifactRetriever.instance(), repositories, TOOL);
+                assertEquals(1, resolver.getAllDependencies(compile).size());
+            }
+            assertEquals(3, empty_requests.get(pomPath("tool", "1.0.0")));
+        } finally {
+            empty.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testTransientFailureIsRetried() throws Exception {
+        var failing_requests = new AtomicInteger();
+        var failing = createFailingServer(failing_requests);
+        var serving = createRepositoryServer(Map.of(pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", "")), new ConcurrentHashMap<>());
+        failing.start();
+        serving.start();
+        try {
+            var retriever = ArtifactRetriever.cachingInstance();
+            var repositories = List.of(serverRepository(failing), serverRepository(serving));
+            for (var i = 0; i < 3; ++i) {
+                var resolver = new DependencyResolver(new VersionResolution(null), retriever, repositories, TOOL);
+                assertEquals(1, resolver.getAllDependencies(compile).size());
+            }
+            assertEquals(3, failing_requests.get());
+        } finally {
+            failing.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testNotFoundPersistsWithinTtl() throws Exception {
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var empty = createRepositoryServer(Map.of(), requests);
+        empty.start();
+        var tmp = Files.createTempDirectory("missing").toFile();
+        try {
+            var repository = serverRepository(empty);
+            var artifact = new RepositoryArtifact(repository, repository.location() + pomPath("tool", "1.0.0"));
+
+            assertThrows(FileUtilsErrorException.class, () -> ArtifactRetriever.persistentInstance(tmp, 3600).readString(artifact));
+            assertThrows(FileUtilsErrorException.class, () -> ArtifactRetriever.persistentInstance(tmp, 3600).readString(artifact));
+            assertEquals(1, requests.get(pomPath("tool", "1.0.0")));
+            assertTrue(new PersistentArtifactCache(tmp, 3600).isMissing(artifact));
+
+            // an expired not-found result probes the repository again
+            assertThrows(FileUtilsErrorException.class, () -> ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(2, requests.get(pomPath("tool", "1.0.0")));
+        } finally {
+            empty.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static HttpServer createFailingServer(AtomicInteger requests)
+    throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestParallelExecution {
+    @Test
+    void testResultsKeepTheirOrder() {
+        var running = new AtomicInteger();
+        var max_running = new AtomicInteger();
+        var tasks = new ArrayList<Supplier<Integer>>();
+        for (var i = 0; i < 20; ++i) {
+            var value = i;
+            tasks.add(() -> {
+                max_running.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20 - value);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return value;
+            });
+        }
+
+        var results = ParallelExecution.execute(tasks, 4);
+        for (var i = 0; i < 20; ++i) {
+            assertEquals(i, results.get(i));
+        }
+        assertTrue(max_running.get() > 1);
+        assertTrue(max_running.get() <= 4, "parallelism was exceeded: " + max_running.get());
+    }
+
+    @Test
+    void testFirstFailureInOrderIsRethrown() {
+        var tasks = new ArrayList<Supplier<Integer>>();
+        tasks.add(() -> 1);
+        tasks.add(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalArgumentException("second");
+        });
+        tasks.add(() -> {
+            throw new IllegalStateException("third");
+        });
+
+        var e = assertThrows(IllegalArgumentException.class, () -> ParallelExecution.execute(tasks, 3));
+        assertEquals("second", e.getMessage());
+    }
+
+    @Test
+    void testNestedExecutions() {
+        // nested executions can't exhaust the threads of the shared executor
+        var outer = new ArrayList<Supplier<Integer>>();
+        for (var i = 0; i < 50; ++i) {
+            outer.add(() -> {
+                var inner = new ArrayList<Supplier<Integer>>();
+                for (var j = 0; j < 10; ++j) {
+                    inner.add(() -> 1);
+                }
+                return ParallelExecution.execute(inner, 10).stream().mapToInt(Integer::intValue).sum();
+            });
+        }
+        assertEquals(500, ParallelExecution.execute(outer, 50).stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testSequentialExecution() {
+        var thread = Thread.currentThread();
+        List<Supplier<Boolean>> tasks = List.of(() -> Thread.currentThread() == thread, () -> Thread.currentThread() == thread);
+        assertEquals(List.of(true, true), ParallelExecution.execute(tasks, 1));
+        assertTrue(ParallelExecution.execute(List.<Supplier<Boolean>>of(), 4).isEmpty());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+import rife.tools.FileUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPersistentArtifactCache {
+    @Test
+    void testReleasePomPersistsAcrossRetrievers() throws Exception {
+        var requests = new AtomicInteger();
+        var server = createCountingServer(requests);
+        server.start();
+        var tmp = Files.createTempDirectory("persistent").toFile();
+        try {
+            var artifact = new RepositoryArtifact(serverRepository(server), serverRepository(server).location() + "com/example/tool/1.0.0/tool-1.0.0.pom");
+
+            assertEquals(artifact.location(), ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(1, requests.get());
+
+            // a new retriever, like the one of a later build, reuses the persisted content
+            assertEquals(artifact.location(), ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(1, requests.get());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testMetadataExpires() throws Exception {
+        var requests = new AtomicInteger();
+        var server = createCountingServer(requests);
+        server.start();
+        var tmp = Files.createTempDirectory("persistent").toFile();
+        try {
+            var artifact = new RepositoryArtifact(serverRepository(server), serverRepository(server).location() + "com/example/tool/maven-metadata.xml");
+
+            ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact);
+            ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact);
+            assertEquals(2, requests.get());
+
+            ArtifactRetriever.persistentInstance(tmp, 3600).readString(artifact);
+            assertEquals(2, requests.get());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testMutableArtifacts() {
+        var repository = new Repository("https://repo.example.com/");
+        assertTrue(PersistentArtifactCache.isMutable(new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/maven-metadata.xml")));
+        assertTrue(PersistentArtifactCache.isMutable(new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/1.0-SNAPSHOT/tool-1.0-SNAPSHOT.pom")));
+        assertFalse(PersistentArtifactCache.isMutable(new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/1.0-SNAPSHOT/tool-1.0-20260101.120000-1.pom")));
+        assertFalse(PersistentArtifactCache.isMutable(new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/1.0.0/tool-1.0.0.pom")));
+        assertFalse(PersistentArtifactCache.isMutable(new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/1.0.0/tool-1.0.0.jar.sha256")));
+    }
+
+    @Test
+    void testCachingInstanceFromProperties() throws Exception {
+        var requests = new AtomicInteger();
+        var server = createCountingServer(requests);
+        server.start();
+        var tmp = Files.createTempDirectory("persistent").toFile();
+        try {
+            var artifact = new RepositoryArtifact(serverRepository(server), serverRepository(server).location() + "com/example/tool/1.0.0/tool-1.0.0.pom");
+
+            var properties = new HierarchicalProperties();
+            properties.put(ArtifactRetriever.PROPERTY_PERSISTENT_CACHE_DIRECTORY, tmp.getAbsolutePath());
+            // the cache isn't persistent unless it's enabled
+            ArtifactRetriever.cachingInstance(properties).readString(artifact);
+            ArtifactRetriever.cachingInstance(properties).readString(artifact);
+            assertEquals(2, requests.get());
+            assertEquals(0, tmp.list().length);
+
+            properties.put(ArtifactRetriever.PROPERTY_PERSISTENT_CACHE, "true");
+            ArtifactRetriever.cachingInstance(properties).readString(artifact);
+            ArtifactRetriever.cachingInstance(properties).readString(artifact);
+            assertEquals(3, requests.get());
+            assertTrue(new PersistentArtifactCache(tmp, 0).cacheFile(artifact).exists());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testExpiredMetadataIsRevalidated() throws Exception {
+        var version = new AtomicInteger(1);
+        var full_responses = new AtomicInteger();
+        var not_modified_responses = new AtomicInteger();
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            var etag = "\"v" + version.get() + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                not_modified_responses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                full_responses.incrementAndGet();
+                var body = ("metadata " + version.get()).getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        var tmp = Files.createTempDirectory("persistent").toFile();
+        try {
+            var artifact = new RepositoryArtifact(serverRepository(server), serverRepository(server).location() + "com/example/tool/maven-metadata.xml");
+
+            assertEquals("metadata 1", ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(1, full_responses.get());
+
+            // the expired metadata is only retrieved again when it changed
+            assertEquals("metadata 1", ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(1, full_responses.get());
+            assertEquals(1, not_modified_responses.get());
+
+            version.set(2);
+            assertEquals("metadata 2", ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(2, full_responses.get());
+            assertEquals("metadata 2", ArtifactRetriever.persistentInstance(tmp, 0).readString(artifact));
+            assertEquals(2, not_modified_responses.get());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testReleasesDontStoreValidators() throws Exception {
+        var tmp = Files.createTempDirectory("persistent").toFile();
+        try {
+            var repository = new Repository("https://repo.example.com/");
+            var cache = new PersistentArtifactCache(tmp, 0);
+            var release = new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/1.0.0/tool-1.0.0.pom");
+            cache.put(release, new HttpTransport.Content("pom", "\"v1\"", null));
+            assertFalse(cache.validatorsFile(release).exists());
+            assertNull(cache.getRevalidatable(release));
+
+            var metadata = new RepositoryArtifact(repository, "https://repo.example.com/com/example/tool/maven-metadata.xml");
+            cache.put(metadata, new HttpTransport.Content("metadata", null, "Wed, 21 Oct 2026 07:28:00 GMT"));
+            assertEquals(new HttpTransport.Content("metadata", null, "Wed, 21 Oct 2026 07:28:00 GMT"), cache.getRevalidatable(metadata));
+
+            // validators are ignored when they don't belong to the content
+            FileUtils.writeString("other", cache.cacheFile(metadata));
+            assertNull(cache.getRevalidatable(metadata));
+        } finally {
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static Repository serverRepository(HttpServer server) {
+        return new Repository("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    private static HttpServer createCountingServer(AtomicInteger requests)
+    throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            var body = ("http://localhost:" + server.getAddress().getPort() + exchange.getRequestURI().getPath()).getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.TransferTestHelper.*;
+
+public class TestRepositoryPermits {
+    private static final Repository REPOSITORY1 = new Repository("https://repo1.example.com/");
+    private static final Repository REPOSITORY2 = new Repository("https://repo2.example.com/");
+
+    @Test
+    void testLimitPerRepository() throws Exception {
+        var permits = new RepositoryPermits(2);
+        var holder = new Thread[1];
+        var acquired = new RepositoryPermits.Permit[3];
+        holder[0] = new Thread(() -> {
+            try {
+                acquired[0] = permits.acquire(REPOSITORY1);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        holder[0].start();
+        holder[0].join();
+
+        acquired[1] = permits.acquire(REPOSITORY1);
+        // the other repository has its own permits
+        try (var other = permits.tryAcquire(REPOSITORY2)) {
+            assertNotNull(other);
+        }
+
+        var waiting = new Thread(() -> assertNull(permits.tryAcquire(REPOSITORY1)));
+        waiting.start();
+        waiting.join();
+
+        acquired[0].close();
+        var released = new Thread(() -> {
+            var permit = permits.tryAcquire(REPOSITORY1);
+            assertNotNull(permit);
+            permit.close();
+        });
+        released.start();
+        released.join();
+        acquired[1].close();
+    }
+
+    @Test
+    void testPermitsAreReentrant() throws Exception {
+        var permits = new RepositoryPermits(1);
+        try (var permit = permits.acquire(REPOSITORY1)) {
+            // the thread that holds a permit doesn't wait for another one
+            try (var nested = permits.acquire(REPOSITORY1)) {
+                assertNotNull(nested);
+            }
+            assertNotNull(permits.tryAcquire(REPOSITORY1));
+        }
+
+        var other = new Thread(() -> {
+            var permit = permits.tryAcquire(REPOSITORY1);
+            assertNotNull(permit);
+            permit.close();
+        });
+        other.start();
+        other.join();
+    }
+
+    @Test
+    void testPermitsCanBeClosedByAnotherThread() throws Exception {
+        var clock = new AtomicLong();
+        var permits = new RepositoryPermits(1, false, Map.of(), clock::get);
+        var permit = permits.acquire(REPOSITORY1);
+        assertTrue(permits.isHeld(REPOSITORY1));
+
+        clock.addAndGet(5_000_000L);
+        var closer = new Thread(permit::close);
+        closer.start();
+        closer.join();
+
+        // the latency is measured with the clock of the permits
+        assertEquals(5L, permits.latencies().get(REPOSITORY1.location()));
+
+        // the acquiring thread doesn't hold the permit anymore
+        assertFalse(permits.isHeld(REPOSITORY1));
+        try (var next = permits.tryAcquire(REPOSITORY1)) {
+            assertNotNull(next);
+            assertNull(acquireInOtherThread(permits));
+        }
+    }
+
+    @Test
+    void testAdaptiveLimit() throws Exception {
+        // the clock doesn't advance, so the throughput of each window is the same
+        var permits = new RepositoryPermits(8, true, Map.of(), () -> 0L);
+        assertTrue(permits.isAdaptive());
+
+        // all the initial permits are used and the throughput holds up
+        var used = new ArrayList<RepositoryPermits.Permit>();
+        for (var i = 0; i < RepositoryPermits.ADAPTIVE_INITIAL_LIMIT; ++i) {
+            used.add(acquireInOtherThread(permits));
+        }
+        assertNull(acquireInOtherThread(permits));
+        for (var permit : used) {
+            permit.close();
+        }
+        assertEquals(RepositoryPermits.ADAPTIVE_INITIAL_LIMIT + 1, permits.limits().get(REPOSITORY1.location()));
+
+        // a failed request halves the limit
+        var failed = acquireInOtherThread(permits);
+        failed.failed();
+        failed.close();
+        assertEquals((RepositoryPermits.ADAPTIVE_INITIAL_LIMIT + 1) / 2, permits.limits().get(REPOSITORY1.location()));
+    }
+
+    @Test
+    void testAdaptiveLimitOnlyGrowsWhenUsed() throws Exception {
+        var permits = new RepositoryPermits(8, true, Map.of(), () -> 0L);
+        for (var i = 0; i < 20; ++i) {
+            acquireInOtherThread(permits).close();
+        }
+        assertEquals(RepositoryPermits.ADAPTIVE_INITIAL_LIMIT, permits.limits().get(REPOSITORY1.location()));
+
+        // the limit isn't adapted when it's fixed
+        permits = new RepositoryPermits(8);
+        var failed = acquireInOtherThread(permits);
+        failed.failed();
+        failed.close();
+        assertEquals(8, permits.limits().get(REPOSITORY1.location()));
+    }
+
+    @Test
+    void testAdaptiveProperties() {
+        var properties = new HierarchicalProperties();
+        assertFalse(new VersionResolution(properties).adaptiveParallelism());
+        assertFalse(ArtifactRetriever.cachingInstance(properties).isAdaptiveConcurrency());
+
+        properties.put(VersionResolution.PROPERTY_TRANSFER_PARALLELISM, "auto");
+        var resolution = new VersionResolution(properties);
+        assertTrue(resolution.adaptiveParallelism());
+        assertTrue(resolution.transferParallelism() > 6);
+        assertEquals(6, resolution.resolutionParallelism());
+        assertTrue(ArtifactRetriever.cachingInstance(properties).isAdaptiveConcurrency());
+    }
+
+    @Test
+    void testRetrieverLimitsConcurrentRequests() throws Exception {
+        var max_concurrent_transfers = new AtomicInteger();
+        var server = createTransferServer(max_concurrent_transfers);
+        server.start();
+        var tmp = Files.createTempDirectory("permits").toFile();
+        try {
+            var properties = new HierarchicalProperties();
+            properties.put(ArtifactRetriever.PROPERTY_REPOSITORY_CONCURRENCY, "2");
+            properties.put(VersionResolution.PROPERTY_TRANSFER_PARALLELISM, "8");
+            var dependencies = createTransferDependencies(1, 8);
+            var artifacts = new DependencyTransferBatch()
+                .add(dependencies, tmp, tmp)
+                .transfer(new VersionResolution(properties), ArtifactRetriever.cachingInstance(properties), List.of(transferRepository(server)));
+
+            assertTransferredArtifacts(dependencies, artifacts, tmp);
+            assertTrue(max_concurrent_transfers.get() <= 2, "repository concurrency was exceeded: " + max_concurrent_transfers.get());
+        } finally {
+            server.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testRepositoryLimitProperties() {
+        var properties = new HierarchicalProperties();
+        properties.put("bld.repo.myrepo", REPOSITORY1.location());
+        properties.put("bld.repo.myrepo" + Repository.PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX, "3");
+        properties.put("bld.repo.myrepo" + Repository.PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX, "2.5");
+        properties.put("bld.repo.other", REPOSITORY2.location());
+        properties.put("bld.repo.other" + Repository.PROPERTY_BLD_REPO_REQUESTS_PER_SECOND_SUFFIX, "fast");
+        properties.put("bld.repo.unknown" + Repository.PROPERTY_BLD_REPO_MAX_CONCURRENT_REQUESTS_SUFFIX, "3");
+
+        var limits = RepositoryPermits.parseLimits(properties);
+        assertEquals(Map.of(REPOSITORY1.location(), new RepositoryPermits.Limits(3, 2.5)), limits);
+        assertTrue(RepositoryPermits.parseLimits(null).isEmpty());
+    }
+
+    @Test
+    void testConcurrentRequestsPerRepository() throws Exception {
+        var permits = new RepositoryPermits(8, false, Map.of(REPOSITORY1.location(), new RepositoryPermits.Limits(2, 0)));
+        var first = acquireInOtherThread(permits);
+        var second = acquireInOtherThread(permits);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(acquireInOtherThread(permits));
+        assertEquals(2, permits.limits().get(REPOSITORY1.location()));
+        first.close();
+        second.close();
+
+        // the adaptive limit also never exceeds the limit of the repository
+        permits = new RepositoryPermits(8, true, Map.of(REPOSITORY1.location(), new RepositoryPermits.Limits(2, 0)));
+        acquireInOtherThread(permits).close();
+        assertEquals(2, permits.limits().get(REPOSITORY1.location()));
+    }
+
+    @Test
+    void testRequestsPerSecond() throws Exception {
+        var clock = new AtomicLong();
+        var permits = new RepositoryPermits(8, false, Map.of(REPOSITORY1.location(), new RepositoryPermits.Limits(0, 20)), clock::get);
+        // the bucket allows a burst of one second of requests
+        for (var i = 0; i < 20; ++i) {
+            acquireInOtherThread(permits).close();
+        }
+        assertNull(acquireInOtherThread(permits));
+
+        // a token is added every 50 milliseconds
+        clock.addAndGet(25_000_000L);
+        assertNull(acquireInOtherThread(permits));
+        clock.addAndGet(25_000_000L);
+        acquireInOtherThread(permits).close();
+        assertNull(acquireInOtherThread(permits));
+
+        // a thread that holds a permit takes a token for each of its requests too
+        clock.addAndGet(50_000_000L);
+        try (var held = permits.acquire(REPOSITORY1)) {
+            assertNotNull(held);
+            assertNull(permits.tryAcquire(REPOSITORY1));
+            clock.addAndGet(50_000_000L);
+            assertNotNull(permits.tryAcquire(REPOSITORY1));
+            assertNull(permits.tryAcquire(REPOSITORY1));
+        }
+    }
+
+    @Test
+    void testHeldPermitsRespectThePause() throws Exception {
+        var clock = new AtomicLong();
+        var permits = new RepositoryPermits(8, false, Map.of(), clock::get);
+        try (var held = permits.acquire(REPOSITORY1)) {
+            held.failed(new HttpTransport.ThrottledException("throttled", 300));
+            assertNull(permits.tryAcquire(REPOSITORY1));
+            clock.addAndGet(300_000_000L);
+            assertNotNull(permits.tryAcquire(REPOSITORY1));
+        }
+    }
+
+    @Test
+    void testThrottledRequestsPause() throws Exception {
+        var permits = new RepositoryPermits(8);
+        var throttled = permits.acquire(REPOSITORY1);
+        throttled.failed(new HttpTransport.ThrottledException("throttled", 300));
+        throttled.close();
+        assertNull(acquireInOtherThread(permits));
+
+        var start = System.nanoTime();
+        permits.acquire(REPOSITORY1).close();
+        assertTrue(System.nanoTime() - start >= 250_000_000L, "the pause wasn't respected");
+    }
+
+    @Test
+    void testRetryAfter() {
+        assertEquals(2000, HttpTransport.retryAfter("2"));
+        assertEquals(1000, HttpTransport.retryAfter(null));
+        assertEquals(1000, HttpTransport.retryAfter("soon"));
+        assertEquals(0, HttpTransport.retryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    void testThrottledRetrievalIsRetried() throws Exception {
+        var requests = new AtomicInteger();
+        var retried_at = new AtomicLong();
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                retried_at.set(System.nanoTime());
+                var body = "<project/>".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            var repository = transferRepository(server);
+            var start = System.nanoTime();
+            var content = ArtifactRetriever.cachingInstance().readString(new RepositoryArtifact(repository, repository.location() + "a.pom"));
+            assertEquals("<project/>", content);
+            assertEquals(2, requests.get());
+            assertTrue(retried_at.get() - start >= 900_000_000L, "the retry didn't wait for the requested delay");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testChecksumOfDownloadDoesNotWaitForOtherThreads() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR)).delayArtifacts(300);
+        var tmp = Files.createTempDirectory("permits").toFile();
+        try {
+            var properties = new HierarchicalProperties();
+            properties.put(ArtifactRetriever.PROPERTY_REPOSITORY_CONCURRENCY, "1");
+            var retriever = ArtifactRetriever.cachingInstance(properties);
+            var downloading = new File(tmp, "downloading");
+            var existing = new File(tmp, "existing");
+            downloading.mkdirs();
+            existing.mkdirs();
+            FileUtils.writeString("corrupted", new File(existing, "lib-1.0.0.jar"));
+
+            // the first thread holds the only permit while its download starts,
+            // the second one retrieves the checksum of its existing file and
+            // waits for that permit before the first one needs the checksum too
+            var failures = new CopyOnWriteArrayList<Throwable>();
+            var download = transferInThread(retriever, server.artifact(JAR), downloading, failures);
+            while (server.artifactRequests() == 0) {
+                Thread.sleep(10);
+            }
+            var check = transferInThread(retriever, server.artifact(JAR), existing, failures);
+            download.join(10_000);
+            check.join(10_000);
+            assertFalse(download.isAlive() || check.isAlive(), "the transfers are deadlocked");
+            assertTrue(failures.isEmpty(), failures.toString());
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(downloading, "lib-1.0.0.jar")));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(existing, "lib-1.0.0.jar")));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static Thread transferInThread(ArtifactRetriever retriever, RepositoryArtifact artifact, File directory, List<Throwable> failures) {
+        var thread = new Thread(() -> {
+            try {
+                assertTrue(retriever.transferIntoDirectory(artifact, directory));
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static RepositoryPermits.Permit acquireInOtherThread(RepositoryPermits permits) throws Exception {
+        var permit = new RepositoryPermits.Permit[1];
+        var thread = new Thread(() -> permit[0] = permits.tryAcquire(REPOSITORY1));
+        thread.start();
+        thread.join();
+        return permit[0];
+    }
+}
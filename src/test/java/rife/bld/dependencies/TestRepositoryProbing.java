@@ -0,0 +1,137 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+public class TestRepositoryProbing {
+    private static final Dependency TOOL = new Dependency("com.example", "tool", new VersionNumber(1, 0, 0));
+
+    @Test
+    void testProperties() {
+        assertEquals(RepositoryProbing.sequential, VersionResolution.dummy().repositoryProbing());
+        assertEquals(250, VersionResolution.dummy().hedgeDelay());
+
+        var properties = new HierarchicalProperties();
+        properties.put(VersionResolution.PROPERTY_REPOSITORY_PROBING, "Hedged");
+        properties.put(VersionResolution.PROPERTY_HEDGE_DELAY, "50");
+        var resolution = new VersionResolution(properties);
+        assertEquals(RepositoryProbing.hedged, resolution.repositoryProbing());
+        assertEquals(50, resolution.hedgeDelay());
+
+        properties.put(VersionResolution.PROPERTY_REPOSITORY_PROBING, "sideways");
+        properties.put(VersionResolution.PROPERTY_HEDGE_DELAY, "soon");
+        resolution = new VersionResolution(properties);
+        assertEquals(RepositoryProbing.sequential, resolution.repositoryProbing());
+        assertEquals(250, resolution.hedgeDelay());
+    }
+
+    @Test
+    void testSequentialProbing() throws Exception {
+        var active = new AtomicInteger();
+        var max_active = new AtomicInteger();
+        var slow = createServer(Map.of(), 300, active, max_active);
+        var serving = createServer(Map.of(pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", "")), 0, active, max_active);
+        slow.start();
+        serving.start();
+        try {
+            assertEquals(1, resolve(resolution("sequential", 50), List.of(serverRepository(slow), serverRepository(serving))).size());
+            assertEquals(1, max_active.get());
+        } finally {
+            slow.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testHedgedProbing() throws Exception {
+        var active = new AtomicInteger();
+        var max_active = new AtomicInteger();
+        var slow = createServer(Map.of(), 300, active, max_active);
+        var serving = createServer(Map.of(pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", "")), 0, active, max_active);
+        slow.start();
+        serving.start();
+        try {
+            // the serving repository is probed while the slow one is still pending
+            assertEquals(1, resolve(resolution("hedged", 50), List.of(serverRepository(slow), serverRepository(serving))).size());
+            assertEquals(2, max_active.get());
+        } finally {
+            slow.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testParallelProbingKeepsPrecedence() throws Exception {
+        var active = new AtomicInteger();
+        var max_active = new AtomicInteger();
+        var slow = createServer(Map.of(
+            pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", dependency("liba", "1.0.0")),
+            pomPath("liba", "1.0.0"), pom("liba", "1.0.0", "", "")), 300, active, max_active);
+        var fast = createServer(Map.of(
+            pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", "")), 0, active, max_active);
+        slow.start();
+        fast.start();
+        try {
+            // the slower repository is listed first, its POM is the one that's used
+            assertEquals(2, resolve(resolution("parallel", 50), List.of(serverRepository(slow), serverRepository(fast))).size());
+            assertTrue(max_active.get() > 1);
+        } finally {
+            slow.stop(0);
+            fast.stop(0);
+        }
+    }
+
+    private static VersionResolution resolution(String probing, long hedgeDelay) {
+        var properties = new HierarchicalProperties();
+        properties.put(VersionResolution.PROPERTY_REPOSITORY_PROBING, probing);
+        properties.put(VersionResolution.PROPERTY_HEDGE_DELAY, String.valueOf(hedgeDelay));
+        properties.put(VersionResolution.PROPERTY_RESOLUTION_PARALLELISM, "1");
+        return new VersionResolution(properties);
+    }
+
+    private static DependencySet resolve(VersionResolution resolution, List<Repository> repositories) {
+        return new DependencyResolver(resolution, ArtifactRetriever.instance(), repositories, TOOL).getAllDependencies(compile);
+    }
+
+    private static HttpServer createServer(Map<String, String> files, long delay, AtomicInteger active, AtomicInteger maxActive)
+    throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+
+            var content = files.get(exchange.getRequestURI().getPath().substring(1));
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                var body = content.getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+public class TestRepositoryRoutes {
+    private static final Map<String, String> POMS = Map.of(
+        pomPath("tool", "1.0.0"), pom("tool", "1.0.0", "", ""),
+        pomPath("other", "1.0.0"), pom("other", "1.0.0", "", ""));
+
+    @Test
+    void testServingRepositoryIsProbedFirstForThePrefix() {
+        var routes = new RepositoryRoutes(null);
+        var nexus = new Repository("https://nexus.ourco.com/");
+        var mirror = new Repository("https://mirror.ourco.com/");
+        var declared = List.of(nexus, mirror, Repository.MAVEN_CENTRAL);
+        var artifacts = declared.stream().map(r -> new RepositoryArtifact(r, r.location())).toList();
+
+        routes.served("com.fasterxml.jackson.core", Repository.MAVEN_CENTRAL, List.of(nexus, mirror), declared);
+        assertEquals(List.of(Repository.MAVEN_CENTRAL, nexus, mirror), repositories(routes.order("com.fasterxml.jackson.core", artifacts)));
+        // the other groupIds of the prefix are probed in the same repository first
+        assertEquals(List.of(Repository.MAVEN_CENTRAL, nexus, mirror), repositories(routes.order("com.fasterxml.jackson.dataformat", artifacts)));
+        // prefixes of a single segment are never routed
+        assertSame(artifacts, routes.order("com.example", artifacts));
+
+        // a repository that wasn't known to miss the prefix keeps its place before the learned one
+        var other = new Repository("https://other.ourco.com/");
+        var other_artifacts = List.of(new RepositoryArtifact(other, other.location()), new RepositoryArtifact(Repository.MAVEN_CENTRAL, Repository.MAVEN_CENTRAL.location()));
+        assertSame(other_artifacts, routes.order("com.fasterxml.jackson.core", other_artifacts));
+    }
+
+    @Test
+    void testServingOutOfDeclaredOrderIsNotLearned() {
+        var routes = new RepositoryRoutes(null);
+        var nexus = new Repository("https://nexus.ourco.com/");
+        var declared = List.of(nexus, Repository.MAVEN_CENTRAL);
+        var artifacts = declared.stream().map(r -> new RepositoryArtifact(r, r.location())).toList();
+
+        // nexus wasn't probed, so it might still host the artifacts
+        routes.served("com.ourco.foo", Repository.MAVEN_CENTRAL, List.of(), declared);
+        assertSame(artifacts, routes.order("com.ourco.foo", artifacts));
+    }
+
+    @Test
+    void testPrefixesServedByDifferentRepositoriesAreNotRouted() {
+        var routes = new RepositoryRoutes(null);
+        var nexus = new Repository("https://nexus.ourco.com/");
+        var mirror = new Repository("https://mirror.ourco.com/");
+        var declared = List.of(nexus, mirror, Repository.MAVEN_CENTRAL);
+        var artifacts = declared.stream().map(r -> new RepositoryArtifact(r, r.location())).toList();
+
+        routes.served("com.ourco.foo", mirror, List.of(nexus), declared);
+        routes.served("com.ourco.bar", Repository.MAVEN_CENTRAL, List.of(nexus, mirror), declared);
+        // the groupIds themselves keep their own route
+        assertEquals(List.of(mirror, nexus, Repository.MAVEN_CENTRAL), repositories(routes.order("com.ourco.foo", artifacts)));
+        assertEquals(List.of(Repository.MAVEN_CENTRAL, nexus, mirror), repositories(routes.order("com.ourco.bar", artifacts)));
+        assertSame(artifacts, routes.order("com.ourco.baz", artifacts));
+    }
+
+    @Test
+    void testLocalRepositoriesKeepTheirPlace() {
+        var routes = new RepositoryRoutes(null);
+        var local = new Repository("file:///tmp/repository/");
+        var nexus = new Repository("https://nexus.ourco.com/");
+        var declared = List.of(local, nexus, Repository.MAVEN_CENTRAL);
+        var artifacts = declared.stream().map(r -> new RepositoryArtifact(r, r.location())).toList();
+
+        routes.served("com.ourco.foo", Repository.MAVEN_CENTRAL, List.of(local, nexus), declared);
+        assertEquals(List.of(local, Repository.MAVEN_CENTRAL, nexus), repositories(routes.order("com.ourco.foo", artifacts)));
+
+        // local repositories are never learned
+        routes.served("com.ourco.bar", local, List.of(), declared);
+        assertEquals(List.of(local, Repository.MAVEN_CENTRAL, nexus), repositories(routes.order("com.ourco.bar", artifacts)));
+    }
+
+    @Test
+    void testDeclaredOrderDeterminesTheResult() throws Exception {
+        var mirror_requests = new ConcurrentHashMap<String, Integer>();
+        var mirror = createRepositoryServer(Map.of(pomPath("other", "1.0.0"), pom("other", "1.0.0", "", "")), mirror_requests);
+        var serving_requests = new ConcurrentHashMap<String, Integer>();
+        var serving = createRepositoryServer(POMS, serving_requests);
+        mirror.start();
+        serving.start();
+        try {
+            var retriever = ArtifactRetriever.cachingInstance();
+            resolve(retriever, List.of(serverRepository(serving)), "tool");
+
+            // the repository that served the groupId before isn't preferred
+            // over the first declared repository that hosts the artifact
+            resolve(retriever, List.of(serverRepository(mirror), serverRepository(serving)), "other");
+            assertEquals(1, mirror_requests.get(pomPath("other", "1.0.0")));
+            assertNull(serving_requests.get(pomPath("other", "1.0.0")));
+        } finally {
+            mirror.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testMissingRepositoryIsProbedLast() throws Exception {
+        var empty_requests = new ConcurrentHashMap<String, Integer>();
+        var empty = createRepositoryServer(Map.of(), empty_requests);
+        var serving = createRepositoryServer(POMS, new ConcurrentHashMap<>());
+        empty.start();
+        serving.start();
+        try {
+            var retriever = ArtifactRetriever.cachingInstance();
+            var repositories = List.of(serverRepository(empty), serverRepository(serving));
+            resolve(retriever, repositories, "tool");
+            assertEquals(1, empty_requests.get(pomPath("tool", "1.0.0")));
+
+            // another artifact of the same groupId skips the repository
+            // that missed the first one
+            resolve(retriever, repositories, "other");
+            assertNull(empty_requests.get(pomPath("other", "1.0.0")));
+        } finally {
+            empty.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    @Test
+    void testRoutesPersistAcrossRetrievers() throws Exception {
+        var empty_requests = new ConcurrentHashMap<String, Integer>();
+        var empty = createRepositoryServer(Map.of(), empty_requests);
+        var serving = createRepositoryServer(POMS, new ConcurrentHashMap<>());
+        empty.start();
+        serving.start();
+        var tmp = Files.createTempDirectory("routes").toFile();
+        try {
+            var repositories = List.of(serverRepository(empty), serverRepository(serving));
+            resolve(ArtifactRetriever.persistentInstance(tmp, 600), repositories, "tool");
+            assertTrue(new File(tmp, "routes.properties").exists());
+
+            resolve(ArtifactRetriever.persistentInstance(tmp, 600), repositories, "other");
+            assertNull(empty_requests.get(pomPath("other", "1.0.0")));
+        } finally {
+            empty.stop(0);
+            serving.stop(0);
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testSavesAreMergedWithOtherBuilds() throws Exception {
+        var tmp = Files.createTempDirectory("routes").toFile();
+        try {
+            var file = new File(tmp, "routes.properties");
+            var nexus = new Repository("https://nexus.ourco.com/");
+            var declared = List.of(nexus, Repository.MAVEN_CENTRAL);
+            var artifacts = declared.stream().map(r -> new RepositoryArtifact(r, r.location())).toList();
+
+            var routes1 = new RepositoryRoutes(file);
+            var routes2 = new RepositoryRoutes(file);
+            routes1.served("com.ourco.foo", Repository.MAVEN_CENTRAL, List.of(nexus), declared);
+            routes1.served("com.ourco.bar", Repository.MAVEN_CENTRAL, List.of(nexus), declared);
+            routes2.served("org.other.baz", Repository.MAVEN_CENTRAL, List.of(nexus), declared);
+            // the routes are only written when they're saved
+            assertFalse(file.exists());
+
+            routes1.save();
+            routes2.save();
+            // the routes that changed since another build saved them are replaced
+            routes1.served("com.ourco.bar", nexus, List.of(), declared);
+            routes1.save();
+
+            var routes = new RepositoryRoutes(file);
+            assertEquals(Repository.MAVEN_CENTRAL, routes.order("com.ourco.foo", artifacts).get(0).repository());
+            assertEquals(Repository.MAVEN_CENTRAL, routes.order("org.other.baz", artifacts).get(0).repository());
+            assertSame(artifacts, routes.order("com.ourco.bar", artifacts));
+            // the prefix that both repositories served isn't routed anymore
+            assertSame(artifacts, routes.order("com.ourco.qux", artifacts));
+        } finally {
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testUncachedRetrieverDoesNotRoute() throws Exception {
+        var empty_requests = new ConcurrentHashMap<String, Integer>();
+        var empty = createRepositoryServer(Map.of(), empty_requests);
+        var serving = createRepositoryServer(POMS, new ConcurrentHashMap<>());
+        empty.start();
+        serving.start();
+        try {
+            var repositories = List.of(serverRepository(empty), serverRepository(serving));
+            resolve(ArtifactRetriever.instance(), repositories, "tool");
+            resolve(ArtifactRetriever.instance(), repositories, "other");
+            assertEquals(1, empty_requests.get(pomPath("other", "1.0.0")));
+        } finally {
+            empty.stop(0);
+            serving.stop(0);
+        }
+    }
+
+    private static List<Repository> repositories(List<RepositoryArtifact> artifacts) {
+        return artifacts.stream().map(RepositoryArtifact::repository).toList();
+    }
+
+    private static void resolve(ArtifactRetriever retriever, List<Repository> repositories, String artifact) {
+        var dependency = new Dependency("com.example", artifact, new VersionNumber(1, 0, 0));
+        assertEquals(1, new DependencyResolver(new VersionResolution(null), retriever, repositories, dependency).getAllDependencies(compile).size());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.TransferTestHelper.*;
+
+public class TestResumableTransfer {
+    @Test
+    void testPartialFileIsResumed() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR));
+        var tmp = Files.createTempDirectory("resumable").toFile();
+        try {
+            FileUtils.writeBytes(Arrays.copyOf(CONTENT, 1000), new File(tmp, "lib-1.0.0.jar.part"));
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(List.of("bytes=1000-"), server.ranges());
+            assertFalse(new File(tmp, "lib-1.0.0.jar.part").exists());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testWrongPartialFileIsStartedOver() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR));
+        var tmp = Files.createTempDirectory("resumable").toFile();
+        try {
+            FileUtils.writeBytes(new byte[1000], new File(tmp, "lib-1.0.0.jar.part"));
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(List.of("bytes=1000-", "none"), server.ranges());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testServerWithoutRanges() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR)).supportsRanges(false);
+        var tmp = Files.createTempDirectory("resumable").toFile();
+        try {
+            FileUtils.writeBytes(Arrays.copyOf(CONTENT, 1000), new File(tmp, "lib-1.0.0.jar.part"));
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testInterruptedTransferIsResumed() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR)).interruptNext();
+        var tmp = Files.createTempDirectory("resumable").toFile();
+        try {
+            assertThrows(IOException.class, () -> ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            // the bytes that were received before the connection dropped are kept
+            var part_length = new File(tmp, "lib-1.0.0.jar.part").length();
+            assertTrue(part_length > 0 && part_length <= CONTENT.length / 2, "unexpected partial file length " + part_length);
+            assertFalse(new File(tmp, "lib-1.0.0.jar").exists());
+
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(List.of("none", "bytes=" + part_length + "-"), server.ranges());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testSnapshotIsNotResumed() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", SNAPSHOT_JAR));
+        var tmp = Files.createTempDirectory("resumable").toFile();
+        try {
+            FileUtils.writeBytes(Arrays.copyOf(CONTENT, 1000), new File(tmp, "lib-1.0.0-SNAPSHOT.jar.part"));
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(SNAPSHOT_JAR), tmp));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0-SNAPSHOT.jar")));
+            assertEquals(List.of("none"), server.ranges());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+}
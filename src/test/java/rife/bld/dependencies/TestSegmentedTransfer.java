@@ -0,0 +1,103 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+import rife.ioc.HierarchicalProperties;
+import rife.tools.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.TransferTestHelper.*;
+
+public class TestSegmentedTransfer {
+    @Test
+    void testProperties() {
+        assertEquals(16 * 1024 * 1024, VersionResolution.dummy().segmentedTransferThreshold());
+        assertEquals(4, VersionResolution.dummy().transferSegments());
+
+        var resolution = resolution("1000", "8");
+        assertEquals(1000, resolution.segmentedTransferThreshold());
+        assertEquals(8, resolution.transferSegments());
+
+        resolution = resolution("large", "many");
+        assertEquals(16 * 1024 * 1024, resolution.segmentedTransferThreshold());
+        assertEquals(4, resolution.transferSegments());
+    }
+
+    @Test
+    void testLargeArtifactIsSegmented() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR));
+        var tmp = Files.createTempDirectory("segmented").toFile();
+        try {
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp, resolution("65536", "4")));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(Set.of("none", "bytes=65536-131071", "bytes=131072-196607", "bytes=196608-262143"), Set.copyOf(server.ranges()));
+            assertEquals(List.of("lib-1.0.0.jar"), List.of(tmp.list()));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testSmallArtifactIsNotSegmented() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR));
+        var tmp = Files.createTempDirectory("segmented").toFile();
+        try {
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp, resolution(String.valueOf(CONTENT.length + 1), "4")));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(List.of("none"), server.ranges());
+
+            // a single segment disables segmented transfers
+            server.ranges().clear();
+            new File(tmp, "lib-1.0.0.jar").delete();
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp, resolution("1024", "1")));
+            assertEquals(List.of("none"), server.ranges());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testServerWithoutRanges() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR)).supportsRanges(false);
+        var tmp = Files.createTempDirectory("segmented").toFile();
+        try {
+            assertTrue(ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp, resolution("1024", "4")));
+            assertArrayEquals(CONTENT, FileUtils.readBytes(new File(tmp, "lib-1.0.0.jar")));
+            assertEquals(List.of("none"), server.ranges());
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    void testFailedSegmentDiscardsPartialFile() throws Exception {
+        var server = new ArtifactServer(artifactFiles("SHA-256", JAR)).failRange("bytes=131072-196607");
+        var tmp = Files.createTempDirectory("segmented").toFile();
+        try {
+            assertThrows(IOException.class, () -> ArtifactRetriever.instance().transferIntoDirectory(server.artifact(JAR), tmp, resolution("65536", "4")));
+            assertEquals(0, tmp.list().length);
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(tmp);
+        }
+    }
+
+    private static VersionResolution resolution(String threshold, String segments) {
+        var properties = new HierarchicalProperties();
+        properties.put(VersionResolution.PROPERTY_SEGMENTED_TRANSFER_THRESHOLD, threshold);
+        properties.put(VersionResolution.PROPERTY_TRANSFER_SEGMENTS, segments);
+        return new VersionResolution(properties);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2001-2026 Geert Bevin (gbevin[remove] at uwyn dot com)
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ */
+package rife.bld.dependencies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static rife.bld.dependencies.ResolutionTestHelper.*;
+import static rife.bld.dependencies.Scope.compile;
+
+public class TestXml2MavenPom {
+    private static final String PARENT = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <project>
+            <groupId>com.example</groupId>
+            <artifactId>base</artifactId>
+            <version>3.0.0</version>
+            <dependencyManagement><dependencies>
+                <dependency><groupId>com.example</groupId><artifactId>libc</artifactId><version>${libc.version}</version><scope>runtime</scope></dependency>
+                <dependency><groupId>com.example</groupId><artifactId>bom</artifactId><version>${bom.version}</version><type>pom</type><scope>import</scope></dependency>
+            </dependencies></dependencyManagement>
+            <dependencies>
+                <dependency><groupId>com.example</groupId><artifactId>libd</artifactId><version>${project.version}</version></dependency>
+            </dependencies>
+            <properties>
+                <libc.version>4.0.0</libc.version>
+                <bom.version>5.0.0</bom.version>
+            </properties>
+        </project>""";
+
+    private static final String BOM = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <project>
+            <groupId>com.example</groupId>
+            <artifactId>bom</artifactId>
+            <version>5.0.0</version>
+            <packaging>pom</packaging>
+            <dependencyManagement><dependencies>
+                <dependency><groupId>com.example</groupId><artifactId>libe</artifactId><version>${project.version}</version></dependency>
+                <dependency><groupId>com.example</groupId><artifactId>libc</artifactId><version>9.0.0</version></dependency>
+            </dependencies></dependencyManagement>
+        </project>""";
+
+    // the properties are declared after everything that uses them
+    private static final String CHILD = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <project>
+            <parent><groupId>com.example</groupId><artifactId>base</artifactId><version>${base.version}</version></parent>
+            <artifactId>tool</artifactId>
+            <version>1.0.0</version>
+            <dependencies>
+                <dependency><groupId>com.example</groupId><artifactId>liba</artifactId><version>${liba.version}</version></dependency>
+                <dependency><groupId>${project.groupId}</groupId><artifactId>libb</artifactId><version>${project.parent.version}</version><scope>test</scope></dependency>
+                <dependency><groupId>com.example</groupId><artifactId>libc</artifactId></dependency>
+                <dependency><groupId>com.example</groupId><artifactId>libe</artifactId></dependency>
+                <dependency><groupId>com.example</groupId><artifactId>libf</artifactId><version>1.0.0</version><optional>${optional.libf}</optional></dependency>
+            </dependencies>
+            <properties>
+                <base.version>3.0.0</base.version>
+                <liba.version>2.0.0</liba.version>
+                <optional.libf>true</optional.libf>
+            </properties>
+        </project>""";
+
+    @Test
+    void testPropertiesDeclaredAfterUse() throws Exception {
+        var requests = new ConcurrentHashMap<String, Integer>();
+        var server = createRepositoryServer(Map.of(
+            pomPath("tool", "1.0.0"), CHILD,
+            pomPath("base", "3.0.0"), PARENT,
+            pomPath("bom", "5.0.0"), BOM), requests);
+        server.start();
+        try {
+            var tool = new Dependency("com.example", "tool", new VersionNumber(1, 0, 0));
+            var pom = new DependencyResolver(new VersionResolution(null), ArtifactRetriever.instance(), List.of(serverRepository(server)), tool).getMavenPom(tool);
+
+            assertEquals("""
+                com.example:libd:1.0.0
+                com.example:liba:2.0.0
+                com.example:libe:5.0.0""", toString(pom.getDependencies(compile)));
+            assertEquals("""
+                com.example:libc:4.0.0
+                com.example:libe:5.0.0""", toString(pom.getManagedDependencies()));
+
+            // each POM is only retrieved once
+            assertEquals(1, requests.get(pomPath("tool", "1.0.0")));
+            assertEquals(1, requests.get(pomPath("base", "3.0.0")));
+            assertEquals(1, requests.get(pomPath("bom", "5.0.0")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String toString(Collection<PomDependency> dependencies) {
+        return String.join("\n", dependencies.stream().map(d -> d.groupId() + ":" + d.artifactId() + ":" + d.version()).toList());
+    }
+}
@@ -4,23 +4,216 @@
  */
 package rife.bld.dependencies;
 
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static rife.tools.StringUtils.encodeHexLower;
 
 /**
  * Provides a local artifact server and dependency fixtures for testing
  * transfers without relying on remote repositories.
  */
 abstract class TransferTestHelper {
+    static final String JAR = "com/example/lib/1.0.0/lib-1.0.0.jar";
+    static final String SNAPSHOT_JAR = "com/example/lib/1.0.0-SNAPSHOT/lib-1.0.0-SNAPSHOT.jar";
+    static final byte[] CONTENT = createContent(256 * 1024);
+
+    private static byte[] createContent(int length) {
+        var content = new byte[length];
+        for (var i = 0; i < content.length; ++i) {
+            content[i] = (byte) (i * 31 + 7);
+        }
+        return content;
+    }
+
+    static String hash(String algorithm, byte[] content) {
+        try {
+            return encodeHexLower(MessageDigest.getInstance(algorithm).digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the content of each artifact, with the checksum of the algorithm
+    static Map<String, byte[]> artifactFiles(String algorithm, String... paths) {
+        var extension = switch (algorithm) {
+            case "SHA-256" -> ".sha256";
+            case "SHA-1" -> ".sha1";
+            default -> ".md5";
+        };
+        var files = new ConcurrentHashMap<String, byte[]>();
+        for (var path : paths) {
+            files.put(path, CONTENT);
+            files.put(path + extension, hash(algorithm, CONTENT).getBytes());
+        }
+        return files;
+    }
+
+    /**
+     * A local server for artifact files that supports range requests, it
+     * records the requests and can make them fail.
+     */
+    static class ArtifactServer {
+        private final HttpServer server_;
+        private final Map<String, byte[]> files_;
+        private final AtomicInteger requests_ = new AtomicInteger();
+        private final AtomicInteger artifactRequests_ = new AtomicInteger();
+        private final List<String> ranges_ = new CopyOnWriteArrayList<>();
+        private final Set<String> failingRanges_ = ConcurrentHashMap.newKeySet();
+        private final Set<String> failingPaths_ = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean interrupt_ = new AtomicBoolean();
+        private volatile boolean supportsRanges_ = true;
+        private volatile long artifactDelay_ = 0;
+
+        ArtifactServer(Map<String, byte[]> files)
+        throws IOException {
+            files_ = files;
+            server_ = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server_.createContext("/", this::handle);
+            server_.setExecutor(Executors.newCachedThreadPool());
+            server_.start();
+        }
+
+        private void handle(HttpExchange exchange)
+        throws IOException {
+            requests_.incrementAndGet();
+            var path = exchange.getRequestURI().getPath().substring(1);
+            if (failingPaths_.contains(path)) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            var body = files_.get(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            if (path.endsWith(".sha256") || path.endsWith(".sha1") || path.endsWith(".md5")) {
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+                return;
+            }
+
+            artifactRequests_.incrementAndGet();
+            if (artifactDelay_ > 0) {
+                try {
+                    Thread.sleep(artifactDelay_);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            var range = exchange.getRequestHeaders().getFirst("Range");
+            ranges_.add(range == null ? "none" : range);
+            if (range != null && failingRanges_.contains(range)) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+
+            var first = 0;
+            var last = body.length - 1;
+            if (supportsRanges_) {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            }
+            if (supportsRanges_ && range != null) {
+                var bounds = range.substring("bytes=".length()).split("-");
+                first = Integer.parseInt(bounds[0]);
+                if (bounds.length > 1) {
+                    last = Integer.parseInt(bounds[1]);
+                }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last + "/" + body.length);
+                exchange.sendResponseHeaders(206, last + 1 - first);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+            }
+            try {
+                if (interrupt_.getAndSet(false)) {
+                    // send half the content and drop the connection
+                    exchange.getResponseBody().write(body, first, (last + 1 - first) / 2);
+                    exchange.getResponseBody().flush();
+                } else {
+                    exchange.getResponseBody().write(body, first, last + 1 - first);
+                }
+            } catch (IOException e) {
+                // the client can stop reading, like after the first segment
+            }
+            exchange.close();
+        }
+
+        ArtifactServer supportsRanges(boolean supportsRanges) {
+            supportsRanges_ = supportsRanges;
+            return this;
+        }
+
+        // delays the responses to the requests for the artifact files themselves
+        ArtifactServer delayArtifacts(long millis) {
+            artifactDelay_ = millis;
+            return this;
+        }
+
+        ArtifactServer failRange(String range) {
+            failingRanges_.add(range);
+            return this;
+        }
+
+        ArtifactServer failPath(String path) {
+            failingPaths_.add(path);
+            return this;
+        }
+
+        ArtifactServer recoverPath(String path) {
+            failingPaths_.remove(path);
+            return this;
+        }
+
+        ArtifactServer interruptNext() {
+            interrupt_.set(true);
+            return this;
+        }
+
+        // all the requests, including the ones for checksums
+        int requests() {
+            return requests_.get();
+        }
+
+        // the requests for the artifact files themselves
+        int artifactRequests() {
+            return artifactRequests_.get();
+        }
+
+        // the range of each artifact request, or none
+        List<String> ranges() {
+            return ranges_;
+        }
+
+        RepositoryArtifact artifact(String path) {
+            var repository = new Repository("http://localhost:" + server_.getAddress().getPort() + "/");
+            return new RepositoryArtifact(repository, repository.location() + path);
+        }
+
+        void stop() {
+            server_.stop(0);
+        }
+    }
+
     static HttpServer createTransferServer(AtomicInteger maxConcurrentTransfers)
     throws IOException {
         var active_transfers = new AtomicInteger();
@@ -29,17 +222,25 @@ abstract class TransferTestHelper {
             var active = active_transfers.incrementAndGet();
             maxConcurrentTransfers.accumulateAndGet(active, Math::max);
             try {
-                // delay the response so that parallel transfers overlap
+                // delay the response so that parallel transfers overlap, the
+                // transfer stops being active before the client can receive
+                // the response and send the next request
                 Thread.sleep(200);
+                active_transfers.decrementAndGet();
 
-                var body = exchange.getRequestURI().getPath().getBytes();
-                exchange.sendResponseHeaders(200, body.length);
-                exchange.getResponseBody().write(body);
+                // the artifacts don't provide checksums
+                var path = exchange.getRequestURI().getPath();
+                if (path.endsWith(".sha256") || path.endsWith(".sha1") || path.endsWith(".md5")) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    var body = path.getBytes();
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                }
                 exchange.close();
             } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } finally {
                 active_transfers.decrementAndGet();
+                Thread.currentThread().interrupt();
             }
         });
         server.setExecutor(Executors.newCachedThreadPool());